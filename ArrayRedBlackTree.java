@@ -0,0 +1,1626 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ArrayRedBlackTree<V extends Comparable<V>, D> implements Iterable<Map.Entry<V, D>> {
+
+	/*
+		####################
+		# Nodes of the Tree
+		####################
+	*/
+
+	// Nodes live in parallel arrays indexed by slot instead of one object per entry.
+	// Slot 0 is the black sentinel standing in for every null child, so links never need a null check.
+	// Freed slots are chained through the left links and handed out again before the arrays grow.
+
+	private static final int NIL = 0;
+
+	private int[] parent = null, left = null, right = null, size = null;
+	private long[] red = null;
+	private Object[] values = null, data = null;
+
+	private int root = NIL, next = 1, free = NIL;
+	private final LongAdder comparisons = new LongAdder();
+
+	// Writers hold the write lock. Readers in has() and get() walk the arrays without locking and
+	// validate the stamp afterwards, retrying and finally falling back to the read lock if a writer got in.
+	private final StampedLock lock = new StampedLock();
+	private static final int OPTIMISTIC_RETRIES = 3, OPTIMISTIC_DEPTH = 128;
+
+	public ArrayRedBlackTree() { this(16); }
+
+	public ArrayRedBlackTree(int capacity) {
+		capacity = Math.max(2, capacity + 1);
+		this.parent = new int[capacity];
+		this.left = new int[capacity];
+		this.right = new int[capacity];
+		this.size = new int[capacity];
+		this.red = new long[(capacity + 63) >>> 6];
+		this.values = new Object[capacity];
+		this.data = new Object[capacity];
+	}
+
+	public ArrayRedBlackTree(V... values) {
+		this(values.length);
+		this.build(values, null);
+	}
+
+	/* Slots */
+
+	private int allocate(V value, D data) {
+		int at = this.free;
+		if (at != NIL) this.free = this.left[at];
+		else {
+			if (this.next == this.values.length) this.grow();
+			at = this.next++;
+		}
+		this.values[at] = value;
+		this.data[at] = data;
+		this.parent[at] = this.left[at] = this.right[at] = NIL;
+		this.size[at] = 1;
+		this.setRed(at, true);
+		return at;
+	}
+
+	private void release(int at) {
+		this.values[at] = this.data[at] = null;
+		this.parent[at] = this.right[at] = NIL;
+		this.size[at] = 0;
+		this.setRed(at, false);
+		this.left[at] = this.free;
+		this.free = at;
+	}
+
+	private void grow() {
+		int capacity = this.values.length << 1;
+		this.parent = Arrays.copyOf(this.parent, capacity);
+		this.left = Arrays.copyOf(this.left, capacity);
+		this.right = Arrays.copyOf(this.right, capacity);
+		this.size = Arrays.copyOf(this.size, capacity);
+		this.red = Arrays.copyOf(this.red, (capacity + 63) >>> 6);
+		this.values = Arrays.copyOf(this.values, capacity);
+		this.data = Arrays.copyOf(this.data, capacity);
+	}
+
+	/* Entry */
+
+	// Entries handed out by navigation and iteration point at their slot and remember its key, so setValue
+	// writes through to the tree for as long as the slot still holds that key. Once the key is removed the
+	// entry keeps the key and data it last saw.
+
+	private class Entry implements Map.Entry<V, D> {
+		private final int at;
+		private final V value;
+		private D data = null;
+
+		private Entry(int at) {
+			this.at = at;
+			this.value = ArrayRedBlackTree.this.value(at);
+			this.data = ArrayRedBlackTree.this.data(at);
+		}
+
+		private boolean linked() { return ArrayRedBlackTree.this.values[this.at] == this.value; }
+
+		public V getKey() { return this.value; }
+
+		public D getValue() {
+			if (this.linked()) this.data = ArrayRedBlackTree.this.data(this.at);
+			return this.data;
+		}
+
+		public D setValue(D data) {
+			long stamp = ArrayRedBlackTree.this.lock.writeLock();
+			try {
+				if (this.linked()) {
+					this.data = ArrayRedBlackTree.this.data(this.at);
+					ArrayRedBlackTree.this.data[this.at] = data;
+				}
+			} finally {
+				ArrayRedBlackTree.this.lock.unlockWrite(stamp);
+			}
+			D old = this.data;
+			this.data = data;
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			D data = this.getValue();
+			return ((this.value == null) ? (e.getKey() == null) : this.value.equals(e.getKey()))
+					&& ((data == null) ? (e.getValue() == null) : data.equals(e.getValue()));
+		}
+
+		public int hashCode() {
+			D data = this.getValue();
+			return ((this.value == null) ? 0 : this.value.hashCode()) ^ ((data == null) ? 0 : data.hashCode());
+		}
+
+		public String toString() { return this.value + "=" + this.getValue(); }
+	}
+
+	/* Slot Fields */
+
+	private V value(int at) { return (V) this.values[at]; }
+
+	private D data(int at) { return (D) this.data[at]; }
+
+	private boolean isRed(int at) { return (this.red[at >>> 6] & (1L << at)) != 0; }
+
+	private boolean isBlack(int at) { return (this.red[at >>> 6] & (1L << at)) == 0; }
+
+	private void setRed(int at, boolean red) {
+		if (red) this.red[at >>> 6] |= (1L << at);
+		else this.red[at >>> 6] &= ~(1L << at);
+	}
+
+	/*
+		###############
+		# Finding Node
+		###############
+	*/
+
+	public boolean has(V... values) {
+		for (int i = 0; i < values.length; i++)
+			if (this.contains(values[i])) return true;
+		return false;
+	}
+
+	private boolean contains(V value) {
+		for (int retry = 0; retry < OPTIMISTIC_RETRIES; retry++) {
+			long stamp = this.lock.tryOptimisticRead();
+			if (stamp == 0) continue;
+			try {
+				boolean found = this.notNull(this.readNode(value));
+				if (this.lock.validate(stamp)) return found;
+			} catch (RuntimeException e) {}
+		}
+
+		long stamp = this.lock.readLock();
+		try {
+			return this.notNull(this.getNode(value));
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	public D get(V value) {
+		for (int retry = 0; retry < OPTIMISTIC_RETRIES; retry++) {
+			long stamp = this.lock.tryOptimisticRead();
+			if (stamp == 0) continue;
+			try {
+				int at = this.readNode(value);
+				D data = this.isNull(at) ? null : this.data(at);
+				if (this.lock.validate(stamp)) return data;
+			} catch (RuntimeException e) {}
+		}
+
+		long stamp = this.lock.readLock();
+		try {
+			int at = this.getNode(value);
+			return this.isNull(at) ? null : this.data(at);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/* Optimistic Read */
+
+	// May run alongside a writer, so it bounds its walk. A writer growing the arrays can hand it a slot
+	// past the ones it read, which throws and is retried. Anything it returns is only trusted once the
+	// stamp validates.
+
+	private int readNode(V value) {
+		int at = this.root;
+		for (int depth = 0; this.notNull(at) && (depth < OPTIMISTIC_DEPTH); depth++) {
+			if (this.values[at] == value) return at;
+			int c = this.compare(value, this.value(at));
+			if (c < 0) at = this.left[at];
+			else if (c > 0) at = this.right[at];
+			else return at;
+		}
+		return NIL;
+	}
+
+	/* Get Node */
+
+	private int getNode(V value) {
+		int at = this.root;
+		while (this.notNull(at)) {
+			Object v = this.values[at];
+			if (v == value) return at;
+			int c = this.compare(value, (V) v);
+			if (c < 0) at = this.left[at];
+			else if (c > 0) at = this.right[at];
+			else return at;
+		}
+		return NIL;
+	}
+
+	/* Minimum and Maximum Value Node */
+
+	private int minNode(int at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(this.left[at])) at = this.left[at];
+		return at;
+	}
+
+	private int maxNode(int at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(this.right[at])) at = this.right[at];
+		return at;
+	}
+
+	/* Ceiling and Floor Node */
+
+	// Smallest node above value, or at it when inclusive. The sentinel if there is none.
+
+	private int ceilingNode(V value, boolean inclusive) {
+		int at = this.root, best = NIL;
+		while (this.notNull(at)) {
+			int c = this.compare(value, this.value(at));
+			if ((c == 0) && inclusive) return at;
+			if (c < 0) {
+				best = at;
+				at = this.left[at];
+			} else at = this.right[at];
+		}
+		return best;
+	}
+
+	// Largest node below value, or at it when inclusive. The sentinel if there is none.
+
+	private int floorNode(V value, boolean inclusive) {
+		int at = this.root, best = NIL;
+		while (this.notNull(at)) {
+			int c = this.compare(value, this.value(at));
+			if ((c == 0) && inclusive) return at;
+			if (c > 0) {
+				best = at;
+				at = this.right[at];
+			} else at = this.left[at];
+		}
+		return best;
+	}
+
+	/* Next and Previous Node */
+
+	// In order neighbours through the parent links, the sentinel past either end.
+
+	private int nextNode(int at) {
+		if (this.notNull(this.right[at])) return this.minNode(this.right[at]);
+		int p = this.parent[at];
+		while (this.notNull(p) && (at == this.right[p])) {
+			at = p;
+			p = this.parent[p];
+		}
+		return p;
+	}
+
+	private int previousNode(int at) {
+		if (this.notNull(this.left[at])) return this.maxNode(this.left[at]);
+		int p = this.parent[at];
+		while (this.notNull(p) && (at == this.left[p])) {
+			at = p;
+			p = this.parent[p];
+		}
+		return p;
+	}
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	public boolean insert(V... values) {
+		boolean _return = true;
+		for (int i = 0; i < values.length; i++)
+			if (!this.insert(values[i], null)) _return = false;
+		return _return;
+	}
+
+	public boolean insert(V value, D data) {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.notNull(this.insertBelow(this.root, value, data));
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	// Inserts or updates value under at, the root or a slot whose subtree spans value. Returns the slot
+	// holding value, or the sentinel when it was already there with the same data.
+
+	private int insertBelow(int at, V value, D data) {
+		int p = NIL, c = 0;
+
+		while (this.notNull(at)) {
+			p = at;
+			c = (this.values[at] == value) ? 0 : this.compare(value, this.value(at));
+			if (c == 0) {
+				if (this.data[at] != data) {
+					this.data[at] = data;
+					return at;
+				}
+				return NIL;
+			}
+			at = (c < 0) ? this.left[at] : this.right[at];
+		}
+
+		int i = this.allocate(value, data);
+		this.parent[i] = p;
+		if (this.isNull(p)) this.root = i;
+		else if (c < 0) this.left[p] = i;
+		else this.right[p] = i;
+
+		for (int n = p; this.notNull(n); n = this.parent[n]) this.size[n]++;
+
+		this.reColor(i);
+		return i;
+	}
+
+	/* Insert All */
+
+	// Inserts a batch of keys, data lined up with keys or null, under one write lock, the same way
+	// RedBlackTree does. Keys that aren't strictly ascending are sorted first, and a repeated key keeps its
+	// last data. Returns false if any key was already there with the same data.
+	//
+	// A batch of at least 1/MERGE_RATIO of the tree is merged with the tree's slots in order and relinked
+	// balanced once, in O(n + k). A run wholly past either end of the tree is built on its own and joined
+	// on in O(k + log n). Otherwise a batch of at least 1/FINGER_RATIO descends from the last key it placed
+	// instead of from the root, and a sparser one descends from the root.
+
+	private static final int MERGE_RATIO = 4, FINGER_RATIO = 32;
+
+	public boolean insertAll(V[] keys, D[] data) {
+		if ((data != null) && (data.length != keys.length)) throw new IllegalArgumentException("keys and data differ in length");
+		long stamp = this.lock.writeLock();
+		try {
+			int[] order = this.sortedOrder(keys);
+			int n = (order == null) ? keys.length : order.length;
+
+			if (((long) n * MERGE_RATIO) >= this.size()) return this.merge(keys, data, order, n);
+			if ((n > 0) && this.joinRun(keys, data, order, n)) return true;
+			boolean close = ((long) n * FINGER_RATIO) >= this.size();
+
+			boolean _return = true;
+			int finger = NIL;
+			for (int j = 0; j < n; j++) {
+				int i = (order == null) ? j : order[j];
+				int at = this.insertBelow(close ? this.fingerFor(finger, keys[i]) : this.root, keys[i], (data == null) ? null : data[i]);
+				if (this.isNull(at)) _return = false;
+				else finger = at;
+			}
+			return _return;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	// Lowest slot from the finger up whose subtree spans value, which comes after the finger's value.
+	// A subtree reached through right links ends where the first left link above it does.
+
+	private int fingerFor(int finger, V value) {
+		if (this.isNull(finger)) return this.root;
+		int at = finger;
+		while (true) {
+			int n = at, p = this.parent[at];
+			while (this.notNull(p) && (this.right[p] == n)) {
+				n = p;
+				p = this.parent[p];
+			}
+			if (this.isNull(p) || (this.compare(value, this.value(p)) < 0)) return at;
+			at = p;
+		}
+	}
+
+	/*
+		##############
+		# Bulk Build
+		##############
+	*/
+
+	// Builds a perfectly balanced tree in O(n) from keys in ascending order, data lined up with keys or null.
+	// Input that isn't strictly ascending is sorted first, and a repeated key keeps its last data like insert
+	// would. Slots are handed out in pre order, so the arrays start exactly full.
+
+	public static <V extends Comparable<V>, D> ArrayRedBlackTree<V, D> fromSorted(V[] keys, D[] data) {
+		ArrayRedBlackTree<V, D> tree = new ArrayRedBlackTree<V, D>(keys.length);
+		tree.build(keys, data);
+		return tree;
+	}
+
+	private void build(V[] keys, D[] data) {
+		if ((data != null) && (data.length != keys.length)) throw new IllegalArgumentException("keys and data differ in length");
+		int[] order = this.sortedOrder(keys);
+		int n = (order == null) ? keys.length : order.length;
+		this.root = this.build(keys, data, order, 0, n - 1, NIL, 0, this.redDepth(n));
+	}
+
+	// Middle key becomes the root of each range, so every level but the last is full.
+	// Only the last level is red, and only when it isn't full, so every path has the same black height.
+
+	private int build(V[] keys, D[] data, int[] order, int lo, int hi, int parent, int depth, int red) {
+		if (lo > hi) return NIL;
+		int mid = (lo + hi) >>> 1, i = (order == null) ? mid : order[mid];
+
+		int at = this.allocate(keys[i], (data == null) ? null : data[i]);
+		this.parent[at] = parent;
+		this.setRed(at, depth == red);
+		int l = this.build(keys, data, order, lo, mid - 1, at, depth + 1, red);
+		this.left[at] = l;
+		int r = this.build(keys, data, order, mid + 1, hi, at, depth + 1, red);
+		this.right[at] = r;
+		this.updateSize(at);
+		return at;
+	}
+
+	// Lays the tree's slots and the batch out in order, updating the slots the batch repeats, and
+	// relinks them like build, so entries already handed out keep their slots.
+
+	private boolean merge(V[] keys, D[] data, int[] order, int n) {
+		int[] slots = new int[this.size() + n];
+		boolean _return = true;
+		int at = this.minNode(this.root), m = 0;
+
+		for (int j = 0; j < n; j++) {
+			int i = (order == null) ? j : order[j], c = 1;
+			D d = (data == null) ? null : data[i];
+			while (this.notNull(at) && ((c = this.compare(keys[i], this.value(at))) > 0)) {
+				slots[m++] = at;
+				at = this.nextNode(at);
+			}
+			if (this.notNull(at) && (c == 0)) {
+				if (this.data[at] == d) _return = false;
+				this.data[at] = d;
+				slots[m++] = at;
+				at = this.nextNode(at);
+			} else slots[m++] = this.allocate(keys[i], d);
+		}
+		for (; this.notNull(at); at = this.nextNode(at)) slots[m++] = at;
+
+		this.root = this.relink(slots, 0, m - 1, NIL, 0, this.redDepth(m));
+		return _return;
+	}
+
+	private int relink(int[] slots, int lo, int hi, int parent, int depth, int red) {
+		if (lo > hi) return NIL;
+		int mid = (lo + hi) >>> 1, at = slots[mid];
+		this.parent[at] = parent;
+		this.setRed(at, depth == red);
+		this.left[at] = this.relink(slots, lo, mid - 1, at, depth + 1, red);
+		this.right[at] = this.relink(slots, mid + 1, hi, at, depth + 1, red);
+		this.updateSize(at);
+		return at;
+	}
+
+	/* Join */
+
+	// Builds a run that lies wholly past either end of the tree into a tree of its own, and joins the two
+	// through the run's first or last key. Returns false, having done nothing, for any other batch.
+
+	private boolean joinRun(V[] keys, D[] data, int[] order, int n) {
+		int first = (order == null) ? 0 : order[0], last = (order == null) ? (n - 1) : order[n - 1];
+		boolean after = this.compare(keys[first], this.value(this.maxNode(this.root))) > 0;
+		if (!after && (this.compare(keys[last], this.value(this.minNode(this.root))) >= 0)) return false;
+
+		int p = after ? first : last;
+		int pivot = this.allocate(keys[p], (data == null) ? null : data[p]);
+		int run = after ? this.build(keys, data, order, 1, n - 1, NIL, 0, this.redDepth(n - 1)) : this.build(keys, data, order, 0, n - 2, NIL, 0, this.redDepth(n - 1));
+		if (after) this.join(this.root, pivot, run);
+		else this.join(run, pivot, this.root);
+		return true;
+	}
+
+	// Every value in l is below the pivot and every value in r above it. The pivot goes in red down the
+	// spine of the taller tree, in place of the first black slot as black high as the other tree, which
+	// keeps every black height, and reColor fixes a red parent like after an insert.
+
+	private void join(int l, int pivot, int r) {
+		int hl = this.blackHeight(l), hr = this.blackHeight(r), at, p = NIL;
+
+		if (hl >= hr) {
+			for (at = l; (hl > hr) || this.isRed(at); at = this.right[at]) {
+				if (this.isBlack(at)) hl--;
+				p = at;
+			}
+			this.left[pivot] = at;
+			this.right[pivot] = r;
+			if (this.notNull(p)) this.right[p] = pivot;
+			this.root = this.isNull(p) ? pivot : l;
+		} else {
+			for (at = r; (hr > hl) || this.isRed(at); at = this.left[at]) {
+				if (this.isBlack(at)) hr--;
+				p = at;
+			}
+			this.left[pivot] = l;
+			this.right[pivot] = at;
+			if (this.notNull(p)) this.left[p] = pivot;
+			this.root = this.isNull(p) ? pivot : r;
+		}
+
+		this.parent[this.root] = NIL;
+		this.parent[pivot] = p;
+		this.setRed(pivot, true);
+		if (this.notNull(this.left[pivot])) this.parent[this.left[pivot]] = pivot;
+		if (this.notNull(this.right[pivot])) this.parent[this.right[pivot]] = pivot;
+		for (int n = pivot; this.notNull(n); n = this.parent[n]) this.updateSize(n);
+
+		this.reColor(pivot);
+	}
+
+	// Black slots from at down to a leaf, the same down every path.
+
+	private int blackHeight(int at) {
+		int h = 0;
+		for (; this.notNull(at); at = this.left[at])
+			if (this.isBlack(at)) h++;
+		return h;
+	}
+
+	// Null if keys are already strictly ascending, otherwise the indexes of the keys in ascending order
+	// with only the last of each repeated key kept.
+
+	private int[] sortedOrder(final V[] keys) {
+		int i = 1;
+		while ((i < keys.length) && (this.compare(keys[i - 1], keys[i]) < 0)) i++;
+		if (i >= keys.length) return null;
+
+		Integer[] sorted = new Integer[keys.length];
+		for (i = 0; i < keys.length; i++) sorted[i] = i;
+		// Stable, so equal keys stay in input order
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) { return ArrayRedBlackTree.this.compare(keys[a], keys[b]); }
+		});
+
+		int[] order = new int[keys.length];
+		int n = 0;
+		for (i = 0; i < sorted.length; i++) {
+			if ((n > 0) && (this.compare(keys[order[n - 1]], keys[sorted[i]]) == 0)) order[n - 1] = sorted[i];
+			else order[n++] = sorted[i];
+		}
+		return Arrays.copyOf(order, n);
+	}
+
+	// Depth of the last level if it isn't full, otherwise -1.
+
+	private int redDepth(int n) {
+		int full = 31 - Integer.numberOfLeadingZeros(n + 1);
+		return ((n + 1) == (1 << full)) ? -1 : full;
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	public boolean remove(V... values) {
+		long stamp = this.lock.writeLock();
+		try {
+			boolean _return = true;
+			for (int i = 0; i < values.length; i++) {
+				int r = this.getNode(values[i]);
+				if (this.isNull(r)) {
+					_return = false;
+					continue;
+				}
+				this.removeNode(r);
+			}
+			return _return;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	private void removeNode(int r) {
+		boolean removedBlack = this.isBlack(r);
+		int from = NIL;
+
+		if (this.isNull(this.left[r])) {
+			from = this.right[r];
+			this.transplant(r, this.right[r]);
+		} else if (this.isNull(this.right[r])) {
+			from = this.left[r];
+			this.transplant(r, this.left[r]);
+		} else {
+			int s = this.minNode(this.right[r]);
+			removedBlack = this.isBlack(s);
+			from = this.right[s];
+
+			if (this.parent[s] == r) this.parent[from] = s;
+			else {
+				this.transplant(s, this.right[s]);
+				this.right[s] = this.right[r];
+				this.parent[this.right[s]] = s;
+			}
+
+			this.transplant(r, s);
+			this.left[s] = this.left[r];
+			this.parent[this.left[s]] = s;
+			this.setRed(s, this.isRed(r));
+		}
+
+		// The sentinel carries the parent of an emptied position through the fix-up
+		for (int n = this.parent[from]; this.notNull(n); n = this.parent[n]) this.updateSize(n);
+		if (removedBlack) this.reColorRemoved(from);
+
+		this.parent[NIL] = NIL;
+		this.release(r);
+	}
+
+	/* Replace the Subtree at a Node */
+
+	private void transplant(int at, int with) {
+		int p = this.parent[at];
+		if (this.isNull(p)) this.root = with;
+		else if (this.left[p] == at) this.left[p] = with;
+		else this.right[p] = with;
+		this.parent[with] = p;
+	}
+
+	/*
+		###############
+		# Re-colour
+		###############
+	*/
+
+	private void reColor(int node) {
+		while (this.isRed(this.parent[node])) {
+			int parent = this.parent[node],
+					grandparent = this.parent[parent];
+
+			if (this.left[grandparent] == parent) {
+				int uncle = this.right[grandparent];
+
+				if (this.isRed(uncle)) {
+					this.setRed(parent, false);
+					this.setRed(uncle, false);
+					this.setRed(grandparent, true);
+					node = grandparent;
+					continue;
+				}
+
+				if (this.right[parent] == node) {
+					this.rotateLeft(parent);
+					parent = node;
+				}
+				this.setRed(parent, false);
+				this.setRed(grandparent, true);
+				this.rotateRight(grandparent);
+				break;
+			} else {
+				int uncle = this.left[grandparent];
+
+				if (this.isRed(uncle)) {
+					this.setRed(parent, false);
+					this.setRed(uncle, false);
+					this.setRed(grandparent, true);
+					node = grandparent;
+					continue;
+				}
+
+				if (this.left[parent] == node) {
+					this.rotateRight(parent);
+					parent = node;
+				}
+				this.setRed(parent, false);
+				this.setRed(grandparent, true);
+				this.rotateLeft(grandparent);
+				break;
+			}
+		}
+		this.setRed(this.root, false);
+	}
+
+	private void reColorRemoved(int node) {
+		while ((node != this.root) && this.isBlack(node)) {
+			int parent = this.parent[node];
+
+			if (this.left[parent] == node) {
+				int sibling = this.right[parent];
+
+				if (this.isRed(sibling)) {
+					this.setRed(sibling, false);
+					this.setRed(parent, true);
+					this.rotateLeft(parent);
+					sibling = this.right[parent];
+				}
+
+				if (this.isBlack(this.left[sibling]) && this.isBlack(this.right[sibling])) {
+					this.setRed(sibling, true);
+					node = parent;
+				} else {
+					if (this.isBlack(this.right[sibling])) {
+						this.setRed(this.left[sibling], false);
+						this.setRed(sibling, true);
+						this.rotateRight(sibling);
+						sibling = this.right[parent];
+					}
+					this.setRed(sibling, this.isRed(parent));
+					this.setRed(parent, false);
+					this.setRed(this.right[sibling], false);
+					this.rotateLeft(parent);
+					node = this.root;
+				}
+			} else {
+				int sibling = this.left[parent];
+
+				if (this.isRed(sibling)) {
+					this.setRed(sibling, false);
+					this.setRed(parent, true);
+					this.rotateRight(parent);
+					sibling = this.left[parent];
+				}
+
+				if (this.isBlack(this.left[sibling]) && this.isBlack(this.right[sibling])) {
+					this.setRed(sibling, true);
+					node = parent;
+				} else {
+					if (this.isBlack(this.left[sibling])) {
+						this.setRed(this.right[sibling], false);
+						this.setRed(sibling, true);
+						this.rotateLeft(sibling);
+						sibling = this.left[parent];
+					}
+					this.setRed(sibling, this.isRed(parent));
+					this.setRed(parent, false);
+					this.setRed(this.left[sibling], false);
+					this.rotateRight(parent);
+					node = this.root;
+				}
+			}
+		}
+		this.setRed(node, false);
+	}
+
+	/*
+		###############
+		# Rotation
+		###############
+	*/
+
+	private void rotateLeft(int at) {
+		int at_right = this.right[at];
+
+		// Attach Secondary Nodes
+		this.right[at] = this.left[at_right];
+		if (this.notNull(this.right[at])) this.parent[this.right[at]] = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_right);
+
+		this.left[at_right] = at;
+		this.parent[at] = at_right;
+
+		// Update Sizes
+		this.updateSize(at);
+		this.updateSize(at_right);
+	}
+
+	private void rotateRight(int at) {
+		int at_left = this.left[at];
+
+		// Attach Secondary Nodes
+		this.left[at] = this.right[at_left];
+		if (this.notNull(this.left[at])) this.parent[this.left[at]] = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_left);
+
+		this.right[at_left] = at;
+		this.parent[at] = at_left;
+
+		// Update Sizes
+		this.updateSize(at);
+		this.updateSize(at_left);
+	}
+
+	/*
+		############
+		# Snapshot
+		############
+	*/
+
+	// Same file format as RedBlackTree, so a snapshot written by either loads into the other: a magic
+	// number, a format version, the kind of tree and the entry count, then every node in pre order as a
+	// byte saying which children it has, whether it has data and its colour, followed by its key and data.
+	// Loading hands out slots in file order, so the arrays come back exactly full and in pre order.
+
+	private static final int SNAPSHOT_MAGIC = 0x54524545, SNAPSHOT_VERSION = 1, SNAPSHOT_KIND = 2, SNAPSHOT_DEPTH = 128;
+	private static final int SNAPSHOT_LEFT = 1, SNAPSHOT_RIGHT = 2, SNAPSHOT_DATA = 4, SNAPSHOT_BLACK = 8;
+
+	public void writeSnapshot(Path path, Serializer<? super V> keys, Serializer<? super D> data) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		long stamp = this.lock.readLock();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeShort(SNAPSHOT_VERSION);
+			out.writeByte(SNAPSHOT_KIND);
+			out.writeInt(this.size());
+			if (this.notNull(this.root)) this.writeSnapshot(out, this.root, keys, data);
+			out.flush();
+			channel.force(true);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(path);
+	}
+
+	// Forces the directory holding path, so the rename survives a crash as well as the file. Windows
+	// can't open a directory as a channel, and there the rename is left to the file system.
+
+	private static void syncDirectory(Path path) throws IOException {
+		FileChannel directory;
+		try {
+			directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ);
+		} catch (IOException e) {
+			return;
+		}
+		try (directory) {
+			directory.force(true);
+		}
+	}
+
+	private void writeSnapshot(DataOutput out, int at, Serializer<? super V> keys, Serializer<? super D> data) throws IOException {
+		boolean hasData = this.data[at] != null;
+		if (hasData && (data == null)) throw new IllegalArgumentException("tree has data but no data serializer was given");
+		out.writeByte((this.notNull(this.left[at]) ? SNAPSHOT_LEFT : 0) | (this.notNull(this.right[at]) ? SNAPSHOT_RIGHT : 0) | (hasData ? SNAPSHOT_DATA : 0) | (this.isBlack(at) ? SNAPSHOT_BLACK : 0));
+		keys.write(out, this.value(at));
+		if (hasData) data.write(out, this.data(at));
+		if (this.notNull(this.left[at])) this.writeSnapshot(out, this.left[at], keys, data);
+		if (this.notNull(this.right[at])) this.writeSnapshot(out, this.right[at], keys, data);
+	}
+
+	// Maps the whole file and reads it front to back once. Snapshots over 2 GB can't be mapped in one piece.
+
+	public static <V extends Comparable<V>, D> ArrayRedBlackTree<V, D> loadSnapshot(Path path, Serializer<? extends V> keys, Serializer<? extends D> data) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException("snapshot is too large to map: " + path);
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (in.getInt() != SNAPSHOT_MAGIC) throw new IOException("not a tree snapshot: " + path);
+			int version = in.getShort();
+			if (version != SNAPSHOT_VERSION) throw new IOException("unsupported snapshot version " + version + ": " + path);
+			if (in.get() != SNAPSHOT_KIND) throw new IOException("snapshot is of another kind of tree: " + path);
+
+			int n = in.getInt();
+			if (n < 0) throw new IOException("snapshot is corrupt: " + path);
+			ArrayRedBlackTree<V, D> tree = new ArrayRedBlackTree<V, D>(n);
+			if (n > 0) tree.root = tree.readSnapshot(in, NIL, keys, data, 0);
+			if ((tree.size() != n) || in.hasRemaining()) throw new IOException("snapshot is corrupt: " + path);
+			return tree;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("snapshot is truncated: " + path, e);
+		}
+	}
+
+	private int readSnapshot(ByteBuffer in, int parent, Serializer<? extends V> keys, Serializer<? extends D> data, int depth) throws IOException {
+		// A balanced tree is never this deep, so only a damaged file gets here
+		if (depth > SNAPSHOT_DEPTH) throw new IOException("snapshot is corrupt");
+
+		int flags = in.get();
+		if (((flags & SNAPSHOT_DATA) != 0) && (data == null)) throw new IOException("snapshot has data but no data serializer was given");
+		V value = keys.read(in);
+		int at = this.allocate(value, ((flags & SNAPSHOT_DATA) != 0) ? data.read(in) : null);
+		this.parent[at] = parent;
+		if ((flags & SNAPSHOT_LEFT) != 0) this.left[at] = this.readSnapshot(in, at, keys, data, depth + 1);
+		if ((flags & SNAPSHOT_RIGHT) != 0) this.right[at] = this.readSnapshot(in, at, keys, data, depth + 1);
+		this.setRed(at, (flags & SNAPSHOT_BLACK) == 0);
+		this.updateSize(at);
+		return at;
+	}
+
+	/*
+		##############
+		# Navigation
+		##############
+	*/
+
+	// Nearest entries to a value in one descent, null if there is none. Like the iterators they hand out
+	// entries that write through to their slot, and a polled entry keeps the key and data it was taken with.
+
+	public Map.Entry<V, D> floorEntry(V value) { return this.nearestEntry(FLOOR, value); }
+
+	public Map.Entry<V, D> lowerEntry(V value) { return this.nearestEntry(LOWER, value); }
+
+	public Map.Entry<V, D> ceilingEntry(V value) { return this.nearestEntry(CEILING, value); }
+
+	public Map.Entry<V, D> higherEntry(V value) { return this.nearestEntry(HIGHER, value); }
+
+	public Map.Entry<V, D> firstEntry() { return this.nearestEntry(FIRST, null); }
+
+	public Map.Entry<V, D> lastEntry() { return this.nearestEntry(LAST, null); }
+
+	private static final int FLOOR = 0, LOWER = 1, CEILING = 2, HIGHER = 3, FIRST = 4, LAST = 5;
+
+	// A slot is only a number, so the entry is read out of it under the same read lock that found it.
+
+	private Map.Entry<V, D> nearestEntry(int kind, V value) {
+		long stamp = this.lock.readLock();
+		try {
+			return this.entry(this.find(kind, value));
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private int nearest(int kind, V value) {
+		long stamp = this.lock.readLock();
+		try {
+			return this.find(kind, value);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private int find(int kind, V value) {
+		switch (kind) {
+			case FLOOR: return this.floorNode(value, true);
+			case LOWER: return this.floorNode(value, false);
+			case CEILING: return this.ceilingNode(value, true);
+			case HIGHER: return this.ceilingNode(value, false);
+			case FIRST: return this.minNode(this.root);
+			default: return this.maxNode(this.root);
+		}
+	}
+
+	private Entry entry(int at) { return this.isNull(at) ? null : new Entry(at); }
+
+	/* Poll */
+
+	// Removes the node the descent found, without searching for its value again.
+
+	public Map.Entry<V, D> pollFirstEntry() { return this.poll(true); }
+
+	public Map.Entry<V, D> pollLastEntry() { return this.poll(false); }
+
+	private Map.Entry<V, D> poll(boolean first) {
+		long stamp = this.lock.writeLock();
+		try {
+			int at = first ? this.minNode(this.root) : this.maxNode(this.root);
+			Entry _return = this.entry(at);
+			if (this.notNull(at)) this.removeNode(at);
+			return _return;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+		##############
+		# Iteration
+		##############
+	*/
+
+	// Cursors step from slot to slot through the parent links, so they keep O(1) state and hand out
+	// entries that write through to their slot. They find their first slot under the read lock but step
+	// without it, so only iterate while no other thread is writing.
+
+	/* Ranges */
+
+	// Lazy views of the entries between lo and hi. A null bound leaves that end open. Each iterator
+	// finds its first slot in one descent and then steps slot to slot, so k entries cost O(log n + k).
+
+	public Iterable<Map.Entry<V, D>> range(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor((lo == null) ? this.nearest(FIRST, null) : this.nearest(loInclusive ? CEILING : HIGHER, lo), true, hi, hiInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> headRange(V hi, boolean inclusive) { return this.range(null, true, hi, inclusive); }
+
+	public Iterable<Map.Entry<V, D>> tailRange(V lo, boolean inclusive) { return this.range(lo, inclusive, null, true); }
+
+	// Same entries from hi down to lo.
+
+	public Iterable<Map.Entry<V, D>> descendingRange(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor((hi == null) ? this.nearest(LAST, null) : this.nearest(hiInclusive ? FLOOR : LOWER, hi), false, lo, loInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> descendingHeadRange(V hi, boolean inclusive) { return this.descendingRange(null, true, hi, inclusive); }
+
+	public Iterable<Map.Entry<V, D>> descendingTailRange(V lo, boolean inclusive) { return this.descendingRange(lo, inclusive, null, true); }
+
+	// Below this a split costs more than walking the slots
+	private static final int SPLIT_SIZE = 1024;
+
+	public Iterator<Map.Entry<V, D>> iterator() { return new Cursor(this.nearest(FIRST, null), true); }
+
+	public Iterator<Map.Entry<V, D>> descendingIterator() { return new Cursor(this.nearest(LAST, null), false); }
+
+	public Spliterator<Map.Entry<V, D>> spliterator() { return new Splitter(this.minNode(this.root), 0, this.size()); }
+
+	public Stream<Map.Entry<V, D>> stream() { return StreamSupport.stream(this.spliterator(), false); }
+
+	public Stream<Map.Entry<V, D>> parallelStream() { return StreamSupport.stream(this.spliterator(), true); }
+
+	private class Cursor implements Iterator<Map.Entry<V, D>> {
+		private int next = NIL;
+		private Entry last = null;
+		private boolean ascending = true;
+		// Bound the cursor stops at, null to run to the end of the tree
+		private V stop = null;
+		private boolean stopInclusive = true;
+
+		private Cursor(int first, boolean ascending) { this(first, ascending, null, true); }
+
+		private Cursor(int first, boolean ascending, V stop, boolean stopInclusive) {
+			this.ascending = ascending;
+			this.stop = stop;
+			this.stopInclusive = stopInclusive;
+			this.next = this.inBounds(first) ? first : NIL;
+		}
+
+		private boolean inBounds(int at) {
+			if (ArrayRedBlackTree.this.isNull(at)) return false;
+			if (this.stop == null) return true;
+			int c = ArrayRedBlackTree.this.compare(ArrayRedBlackTree.this.value(at), this.stop);
+			if (!this.ascending) c = -c;
+			return (c < 0) || ((c == 0) && this.stopInclusive);
+		}
+
+		public boolean hasNext() { return ArrayRedBlackTree.this.notNull(this.next); }
+
+		public Map.Entry<V, D> next() {
+			if (ArrayRedBlackTree.this.isNull(this.next)) throw new NoSuchElementException();
+			this.last = ArrayRedBlackTree.this.entry(this.next);
+			this.next = this.ascending ? ArrayRedBlackTree.this.nextNode(this.next) : ArrayRedBlackTree.this.previousNode(this.next);
+			if (!this.inBounds(this.next)) this.next = NIL;
+			return this.last;
+		}
+
+		// Removal relinks whole slots, never moves keys between them, so the slot handed out last is
+		// unlinked directly, without searching for its key again, and the next slot stays valid.
+
+		public void remove() {
+			if (this.last == null) throw new IllegalStateException();
+			long stamp = ArrayRedBlackTree.this.lock.writeLock();
+			try {
+				// Unless another remove has already taken it out
+				if (this.last.linked()) ArrayRedBlackTree.this.removeNode(this.last.at);
+			} finally {
+				ArrayRedBlackTree.this.lock.unlockWrite(stamp);
+			}
+			this.last = null;
+		}
+	}
+
+	// Covers the slots ranked from up to to. Splitting hands the first half off and moves this one to
+	// the middle slot, found by descending the subtree sizes, so both halves know their exact size.
+
+	private class Splitter implements Spliterator<Map.Entry<V, D>> {
+		private int next = NIL, from = 0, to = 0;
+
+		private Splitter(int first, int from, int to) {
+			this.next = first;
+			this.from = from;
+			this.to = to;
+		}
+
+		public boolean tryAdvance(Consumer<? super Map.Entry<V, D>> action) {
+			if (this.from >= this.to) return false;
+			int at = this.next;
+			this.next = ArrayRedBlackTree.this.nextNode(at);
+			this.from++;
+			action.accept(ArrayRedBlackTree.this.entry(at));
+			return true;
+		}
+
+		public void forEachRemaining(Consumer<? super Map.Entry<V, D>> action) {
+			while (this.tryAdvance(action));
+		}
+
+		public Spliterator<Map.Entry<V, D>> trySplit() {
+			if ((this.to - this.from) < SPLIT_SIZE) return null;
+			int mid = (this.from + this.to) >>> 1;
+			Splitter prefix = new Splitter(this.next, this.from, mid);
+			this.next = ArrayRedBlackTree.this.selectNode(mid);
+			this.from = mid;
+			return prefix;
+		}
+
+		public long estimateSize() { return this.to - this.from; }
+
+		public int characteristics() { return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL; }
+
+		public Comparator<? super Map.Entry<V, D>> getComparator() { return Map.Entry.<V, D>comparingByKey(); }
+	}
+
+	/*
+		####################
+		# Order Statistics
+		####################
+	*/
+
+	/* Rank */
+
+	// Like the navigation methods these descend under the read lock, so a writer can't move slots mid walk.
+
+	public int rank(V value) {
+		long stamp = this.lock.readLock();
+		try {
+			return this.rank(value, false);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private int rank(V value, boolean inclusive) {
+		int r = 0, at = this.root;
+		while (this.notNull(at)) {
+			int c = this.compare(value, this.value(at));
+			if (c < 0) at = this.left[at];
+			else if (c > 0) {
+				r += this.size[this.left[at]] + 1;
+				at = this.right[at];
+			} else return r + this.size[this.left[at]] + (inclusive ? 1 : 0);
+		}
+		return r;
+	}
+
+	/* Select */
+
+	public V select(int k) {
+		long stamp = this.lock.readLock();
+		try {
+			int at = this.selectNode(k);
+			return this.isNull(at) ? null : this.value(at);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private int selectNode(int k) {
+		if ((k < 0) || (k >= this.size())) return NIL;
+		int at = this.root;
+		while (this.notNull(at)) {
+			int l = this.size[this.left[at]];
+			if (k < l) at = this.left[at];
+			else if (k > l) {
+				k -= l + 1;
+				at = this.right[at];
+			} else return at;
+		}
+		return NIL;
+	}
+
+	/* Count Range */
+
+	public int countRange(V lo, V hi) {
+		long stamp = this.lock.readLock();
+		try {
+			if (this.compare(lo, hi) > 0) return 0;
+			return this.rank(hi, true) - this.rank(lo, false);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/*
+		##########
+		# Print
+		##########
+	*/
+
+	/* Post Order */
+
+	public void printPostOrder() { System.out.println(this.postOrder()); }
+
+	public String postOrder() { return this.traversal(POST_ORDER); }
+
+	public void writePostOrder(Appendable out) throws IOException { this.writePostOrder(out, EntryFormatter.standard()); }
+
+	public void writePostOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, POST_ORDER, format); }
+
+	/* In Order */
+
+	public void printInOrder() { System.out.println(this.inOrder()); }
+
+	public String inOrder() { return this.traversal(IN_ORDER); }
+
+	public void writeInOrder(Appendable out) throws IOException { this.writeInOrder(out, EntryFormatter.standard()); }
+
+	public void writeInOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, IN_ORDER, format); }
+
+	/* Pre Order */
+
+	public void printPreOrder() { System.out.println(this.preOrder()); }
+
+	public String preOrder() { return this.traversal(PRE_ORDER); }
+
+	public void writePreOrder(Appendable out) throws IOException { this.writePreOrder(out, EntryFormatter.standard()); }
+
+	public void writePreOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, PRE_ORDER, format); }
+
+	/* Write Traversal */
+
+	// Every traversal goes through write, which walks an explicit stack of slots instead of recursing and
+	// appends straight to the output.
+
+	private static final int PRE_ORDER = 0, IN_ORDER = 1, POST_ORDER = 2;
+
+	private String traversal(int order) {
+		StringBuilder out = new StringBuilder();
+		try {
+			this.write(out, order, EntryFormatter.standard());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	private void write(Appendable out, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		long stamp = this.lock.readLock();
+		try {
+			this.write(out, this.root, order, format);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private void write(Appendable out, int at, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		// A red-black tree is at most 2 log2(n + 1) deep, which a few dozen slots always cover
+		int[] stack = new int[2 * (32 - Integer.numberOfLeadingZeros(this.size() + 1)) + 2];
+		int top = 0;
+		boolean first = true;
+
+		if (order == PRE_ORDER) {
+			if (this.notNull(at)) stack[top++] = at;
+			while (top > 0) {
+				at = stack[--top];
+				if (!first) out.append(' ');
+				format.format(out, this.value(at), this.data(at));
+				first = false;
+				if (this.notNull(this.right[at])) stack[top++] = this.right[at];
+				if (this.notNull(this.left[at])) stack[top++] = this.left[at];
+			}
+		} else if (order == IN_ORDER) {
+			while (this.notNull(at) || (top > 0)) {
+				for (; this.notNull(at); at = this.left[at]) stack[top++] = at;
+				at = stack[--top];
+				if (!first) out.append(' ');
+				format.format(out, this.value(at), this.data(at));
+				first = false;
+				at = this.right[at];
+			}
+		} else {
+			// A slot is written once the walk comes back up from its right subtree, or finds none.
+			int last = NIL;
+			while (this.notNull(at) || (top > 0)) {
+				for (; this.notNull(at); at = this.left[at]) stack[top++] = at;
+				int t = stack[top - 1];
+				if (this.notNull(this.right[t]) && (this.right[t] != last)) {
+					at = this.right[t];
+					continue;
+				}
+				top--;
+				if (!first) out.append(' ');
+				format.format(out, this.value(t), this.data(t));
+				first = false;
+				last = t;
+			}
+		}
+	}
+
+	/* Print Tree */
+
+	// Both renderers write whole lines to an Appendable and keep only the slots they are about to draw.
+	// maxDepth limits the levels drawn and maxWidth clips every line, so a deep or wide tree renders in
+	// memory bounded by the limits instead of by 2^height. They draw the same as RedBlackTree.
+
+	public void print() {
+		try {
+			this.print(System.out, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void print(Appendable out, int maxDepth, int maxWidth) throws IOException {
+		long stamp = this.lock.readLock();
+		try {
+			this.render(out, this.root, maxDepth, maxWidth);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private void render(Appendable out, int at, int maxDepth, int maxWidth) throws IOException {
+		if (this.isNull(at) || (maxDepth <= 0) || (maxWidth <= 0)) return;
+
+		// Count the levels to draw and find the widest box, walking parent links so nothing is stacked
+		int levels = 0, widest = 0, depth = 0, n = at;
+		walk: while (true) {
+			levels = Math.max(levels, depth + 1);
+			widest = Math.max(widest, this.label(n).length() + 4);
+			if ((depth + 1 < maxDepth) && this.notNull(this.left[n])) {
+				n = this.left[n];
+				depth++;
+				continue;
+			}
+			if ((depth + 1 < maxDepth) && this.notNull(this.right[n])) {
+				n = this.right[n];
+				depth++;
+				continue;
+			}
+			while (n != at) {
+				int p = this.parent[n];
+				depth--;
+				if ((n == this.left[p]) && this.notNull(this.right[p])) {
+					n = this.right[p];
+					depth++;
+					continue walk;
+				}
+				n = p;
+			}
+			break;
+		}
+		if ((widest % 2) == 1) widest++;
+
+		Row row = new Row(out, Math.min(this.slotWidth(0, levels, widest), maxWidth));
+		ArrayList<Cell> cells = new ArrayList<Cell>(), next = new ArrayList<Cell>();
+		cells.add(new Cell(at, 0, false));
+
+		for (int i = 0; i < levels; i++) {
+			long perpiece = this.slotWidth(i, levels, widest), hpw = (perpiece / 2) - 1;
+
+			// Split Node, drawn once for every parent with a child on this level
+			if (i > 0) {
+				for (int k = 0; k < cells.size(); k++) {
+					Cell s = cells.get(k);
+					boolean left = !s.right,
+									right = s.right || (((k + 1) < cells.size()) && cells.get(k + 1).right && (cells.get(k + 1).start == (s.start + perpiece)));
+					if (left && right) k++;
+
+					row.pad(s.right ? (s.start - perpiece) : s.start);
+					row.put(' ');
+					if (left) {
+						row.repeat(' ', hpw);
+						row.put('┌');
+						row.repeat('─', hpw);
+					} else row.repeat(' ', perpiece - 1);
+					row.put(left ? (right ? '┴' : '┘') : '└');
+					if (right) {
+						row.repeat('─', hpw);
+						row.put('┐');
+						row.repeat(' ', hpw);
+					} else row.repeat(' ', perpiece - 1);
+				}
+				row.end();
+			}
+
+			// Upper part of the Box, the printable node and the lower part of the Box
+			for (Cell s : cells) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put('┌');
+				row.repeat('─', s.label.length() - 2);
+				row.put('┐');
+			}
+			row.end();
+			for (Cell s : cells) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put(s.label);
+			}
+			row.end();
+			for (Cell s : cells) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put('└');
+				row.repeat('─', s.label.length() - 2);
+				row.put('┘');
+			}
+			row.end();
+
+			// Children that start past the right edge, and everything under them, are never drawn
+			if ((i + 1) < levels) {
+				long half = this.slotWidth(i + 1, levels, widest);
+				for (Cell s : cells) {
+					if (this.notNull(this.left[s.at])) next.add(new Cell(this.left[s.at], s.start, false));
+					if (this.notNull(this.right[s.at]) && ((s.start + half) < maxWidth)) next.add(new Cell(this.right[s.at], s.start + half, true));
+				}
+			}
+			ArrayList<Cell> tmp = cells;
+			cells = next;
+			next = tmp;
+			next.clear();
+		}
+	}
+
+	// Width of one cell on level i. Past 2^30 cells the true width can't be on screen, so it is capped
+	// at a value no line reaches and no start position can overflow.
+
+	private long slotWidth(int i, int levels, int widest) {
+		int shift = levels - 1 - i;
+		return (shift >= 30) ? (1L << 62) : (((long) (widest + 4)) << shift);
+	}
+
+	private String label(int at) {
+		String d = null;
+		try { d = this.data[at].toString(); } catch (Exception e) {}
+		return this.values[at].toString() + ((d == null) ? "" : (" | " + d)) + " : " + (this.isBlack(at) ? "B" : "R");
+	}
+
+	// A slot placed on a line, named apart from the array slots it draws.
+
+	private class Cell {
+		private final int at;
+		private final String label;
+		private final long start;
+		private final boolean right;
+
+		private Cell(int at, long start, boolean right) {
+			this.at = at;
+			this.label = "│ " + ArrayRedBlackTree.this.label(at) + " │";
+			this.start = start;
+			this.right = right;
+		}
+	}
+
+	// One output line, built in a reused buffer and clipped to the line width before it is written.
+
+	private static class Row {
+		private final Appendable out;
+		private final StringBuilder line = new StringBuilder();
+		private final long width;
+		private long column = 0;
+
+		private Row(Appendable out, long width) {
+			this.out = out;
+			this.width = width;
+		}
+
+		private void put(char c) {
+			if (this.column < this.width) this.line.append(c);
+			this.column++;
+		}
+
+		private void put(String s) {
+			if (this.column < this.width) this.line.append(s, 0, (int) Math.min(s.length(), this.width - this.column));
+			this.column += s.length();
+		}
+
+		private void repeat(char c, long n) {
+			for (long k = Math.min(n, this.width - this.column); k > 0; k--) this.line.append(c);
+			this.column += n;
+		}
+
+		private void pad(long to) { this.repeat(' ', to - this.column); }
+
+		private void end() throws IOException {
+			this.pad(this.width);
+			this.out.append(this.line).append(System.lineSeparator());
+			this.line.setLength(0);
+			this.column = 0;
+		}
+	}
+
+	/* Vertical Print Tree */
+
+	public void verticalPrint() {
+		try {
+			this.verticalPrint(System.out, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void verticalPrint(Appendable out, int maxDepth) throws IOException {
+		long stamp = this.lock.readLock();
+		try {
+			this.verticalRender(out, this.root, maxDepth);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	// Pre order on an explicit stack. The prefix is one buffer cut back to the popped slot's depth, which
+	// works because everything above that depth still belongs to the slot's ancestors.
+
+	private void verticalRender(Appendable out, int at, int maxDepth) throws IOException {
+		if (this.isNull(at) || (maxDepth <= 0)) return;
+
+		ArrayDeque<Integer> stack = new ArrayDeque<Integer>(), depths = new ArrayDeque<Integer>();
+		StringBuilder indent = new StringBuilder(), line = new StringBuilder();
+		stack.push(at);
+		depths.push(0);
+
+		while (!stack.isEmpty()) {
+			int n = stack.pop(), depth = depths.pop();
+			boolean left = (depth > 0) && (n == this.left[this.parent[n]]);
+
+			indent.setLength(depth * 4);
+			line.setLength(0);
+			line.append(indent).append(left ? "|-- " : "\\-- ").append("[ ").append(this.label(n)).append(" ]");
+			out.append(line).append(System.lineSeparator());
+			indent.append(left ? "|   " : "    ");
+
+			if ((depth + 1) < maxDepth) {
+				if (this.notNull(this.right[n])) {
+					stack.push(this.right[n]);
+					depths.push(depth + 1);
+				}
+				if (this.notNull(this.left[n])) {
+					stack.push(this.left[n]);
+					depths.push(depth + 1);
+				}
+			}
+		}
+	}
+
+	/*
+		##########
+		# Others
+		##########
+	*/
+
+	/* Is Empty */
+
+	public boolean isEmpty() { return this.root == NIL; }
+
+	public boolean notEmpty() { return this.root != NIL; }
+
+	/* Is Null */
+
+	private boolean isNull(int node) { return (node == NIL); }
+
+	/* Is not Null */
+
+	private boolean notNull(int node) { return (node != NIL); }
+
+	/* Comparisons */
+
+	// Every compareTo the tree makes goes through here, optimistic and locked readers included. They run
+	// side by side, so the count is a LongAdder they can all add to without losing increments.
+
+	private int compare(V a, V b) {
+		this.comparisons.increment();
+		return a.compareTo(b);
+	}
+
+	public long comparisons() { return this.comparisons.sum(); }
+
+	public void resetComparisons() { this.comparisons.reset(); }
+
+	/* Size */
+
+	public int size() { return this.size[this.root]; }
+
+	private void updateSize(int at) { this.size[at] = 1 + this.size[this.left[at]] + this.size[this.right[at]]; }
+
+	/* Height */
+
+	public int height() { return this.height(this.root); }
+
+	private int height(int at) {
+		return (this.isNull(at) ? 0 : (1 + Math.max(this.height(this.left[at]), this.height(this.right[at]))));
+	}
+}
@@ -1,7 +1,19 @@
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-
-public class BinarySearchTree<V extends Comparable<V>, D> {
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class BinarySearchTree<V extends Comparable<V>, D> implements Iterable<Map.Entry<V, D>> {
 
 	/*
 		####################
@@ -9,9 +21,10 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 		####################
 	*/
 
-	private class Node<V, D> {
+	private class Node<V, D> implements Map.Entry<V, D> {
 		protected V value = null;
 		protected D data = null;
+		protected int size = 1;
 		protected Node<V, D> parent = null, left = null, right = null;
 
 		protected Node(V value) { this(value, null); }
@@ -19,6 +32,7 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 		protected Node(V value, D data) {
 			this.value = value;
 			this.data = data;
+			this.size = 1;
 			this.parent = this.left = this.right = null;
 		}
 
@@ -39,17 +53,57 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 		protected boolean hasData() { return (this.data != null); }
 
 		protected boolean noData() { return (this.data == null); }
+
+		/* Entry */
+
+		public V getKey() { return this.value; }
+
+		public D getValue() { return this.data; }
+
+		public D setValue(D data) {
+			D old = this.data;
+			this.data = data;
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return ((this.value == null) ? (e.getKey() == null) : this.value.equals(e.getKey()))
+					&& ((this.data == null) ? (e.getValue() == null) : this.data.equals(e.getValue()));
+		}
+
+		public int hashCode() { return ((this.value == null) ? 0 : this.value.hashCode()) ^ ((this.data == null) ? 0 : this.data.hashCode()); }
+
+		public String toString() { return this.value + "=" + this.data; }
 	}
 
 	private Node<V, D> root = null;
 
+	// Scapegoat mode is off while alpha is 0. maxSize is the largest size since the last full rebuild.
+	private double alpha = 0;
+	private int maxSize = 0;
+
 	public BinarySearchTree() { this.root = null; }
 
+	// Inserts in the order given, so the tree keeps the shape those inserts make. fromSorted builds it balanced.
+
 	public BinarySearchTree(V... values) {
 		this.root = null;
 		this.insert(values);
 	}
 
+	// A tree that stays within about log base 1/alpha of n levels by rebuilding the subtree at a scapegoat
+	// whenever an insert lands too deep, and the whole tree once removes shrink it below alpha of its peak.
+	// Lower alpha keeps it flatter at the cost of more rebuilding. Operations are amortized O(log n).
+
+	public static <V extends Comparable<V>, D> BinarySearchTree<V, D> withScapegoat(double alpha) {
+		if (!((alpha > 0.5) && (alpha < 1))) throw new IllegalArgumentException("alpha must be between 0.5 and 1");
+		BinarySearchTree<V, D> tree = new BinarySearchTree<V, D>();
+		tree.alpha = alpha;
+		return tree;
+	}
+
 	/*
 		###############
 		# Finding Node
@@ -71,7 +125,7 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 			int c = value.compareTo(at.value);
 			if (c < 0) at = at.left;
 			else if (c > 0) at = at.right;
-			else break;
+			else return at;
 		}
 		return null;
 	}
@@ -95,6 +149,62 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 	private Node<V, D> getInorderSuccessor(Node<V, D> at) { return this.minNode(at.right); }
 	private Node<V, D> getInorderPredecessor(Node<V, D> at) { return this.maxNode(at.left); }
 
+	/* Ceiling and Floor Node */
+
+	// Smallest node above value, or at it when inclusive. Null if there is none.
+
+	private Node<V, D> ceilingNode(V value, boolean inclusive) {
+		Node<V, D> at = this.root, best = null;
+		while (this.notNull(at)) {
+			int c = value.compareTo(at.value);
+			if ((c == 0) && inclusive) return at;
+			if (c < 0) {
+				best = at;
+				at = at.left;
+			} else at = at.right;
+		}
+		return best;
+	}
+
+	// Largest node below value, or at it when inclusive. Null if there is none.
+
+	private Node<V, D> floorNode(V value, boolean inclusive) {
+		Node<V, D> at = this.root, best = null;
+		while (this.notNull(at)) {
+			int c = value.compareTo(at.value);
+			if ((c == 0) && inclusive) return at;
+			if (c > 0) {
+				best = at;
+				at = at.right;
+			} else at = at.left;
+		}
+		return best;
+	}
+
+	/* Next and Previous Node */
+
+	// In order neighbours through the parent links, null past either end.
+
+	private Node<V, D> nextNode(Node<V, D> at) {
+		if (this.notNull(at.right)) return this.minNode(at.right);
+		Node<V, D> p = at.parent;
+		while (this.notNull(p) && (at == p.right)) {
+			at = p;
+			p = p.parent;
+		}
+		return this.isNull(p) ? null : p;
+	}
+
+	private Node<V, D> previousNode(Node<V, D> at) {
+		if (this.notNull(at.left)) return this.maxNode(at.left);
+		Node<V, D> p = at.parent;
+		while (this.notNull(p) && (at == p.left)) {
+			at = p;
+			p = p.parent;
+		}
+		return this.isNull(p) ? null : p;
+	}
+
 	/* Inorder Successor and Predecessor Height */
 
 	private int getInorderSuccessorHeight(Node<V, D> at) {
@@ -128,33 +238,214 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 		return _return;
 	}
 
-	public synchronized boolean insert(V value, D data) {
-		Node<V, D> i = new Node<V, D>(value, data), at = this.root, p = null;
+	public synchronized boolean insert(V value, D data) { return this.notNull(this.insertBelow(this.root, value, data)); }
+
+	// Inserts or updates value under at, the root or a node whose subtree spans value. Returns the node
+	// holding value, or null when it was already there with the same data.
+
+	private Node<V, D> insertBelow(Node<V, D> at, V value, D data) {
+		Node<V, D> p = null;
+		int c = 0, depth = ((this.alpha > 0) && (at != this.root)) ? this.depth(at) : 0;
 
 		while (this.notNull(at)) {
 			p = at;
-			if (at.value == i.value) {
-				if (at.data != i.data) {
-					at.data = i.data;
-					return true;
+			depth++;
+			c = (at.value == value) ? 0 : value.compareTo(at.value);
+			if (c == 0) {
+				if (at.data != data) {
+					at.data = data;
+					return at;
 				}
-				return false;
+				return null;
 			}
-			int c = i.value.compareTo(at.value);
 			at = (c < 0) ? at.left : at.right;
 		}
 
+		Node<V, D> i = new Node<V, D>(value, data, p);
 		if (this.isNull(p)) this.root = i;
-		else {
-			int c = i.value.compareTo(p.value);
-			if (c < 0) p.left = i;
-			else p.right = i;
+		else if (c < 0) p.left = i;
+		else p.right = i;
+
+		for (Node<V, D> n = p; this.notNull(n); n = n.parent) n.size++;
+		if (this.alpha > 0) this.insertRebalance(i, depth);
+		return i;
+	}
+
+	/* Insert All */
+
+	// Inserts a batch of keys, data lined up with keys or null, under the monitor once. Keys that aren't
+	// strictly ascending are sorted first, and a repeated key keeps its last data. Returns false if any
+	// key was already there with the same data.
+	//
+	// A batch of at least 1/MERGE_RATIO of the tree is merged with the tree's nodes in order and
+	// relinked balanced once, in O(n + k). A run wholly past either end of the tree is built balanced and
+	// hung off the end node. Any other batch descends from the last key it placed instead of from the
+	// root, so a sorted run added to a plain tree doesn't walk the chain it builds for every key.
+
+	private static final int MERGE_RATIO = 4;
+
+	public synchronized boolean insertAll(V[] keys, D[] data) {
+		if ((data != null) && (data.length != keys.length)) throw new IllegalArgumentException("keys and data differ in length");
+		int[] order = this.sortedOrder(keys);
+		int n = (order == null) ? keys.length : order.length;
+		if (((long) n * MERGE_RATIO) >= this.size()) return this.merge(keys, data, order, n);
+		if ((n > 0) && this.joinRun(keys, data, order, n)) return true;
+
+		boolean _return = true;
+		Node<V, D> finger = null;
+		for (int j = 0; j < n; j++) {
+			int i = (order == null) ? j : order[j];
+			Node<V, D> at = this.insertBelow(this.fingerFor(finger, keys[i]), keys[i], (data == null) ? null : data[i]);
+			if (this.isNull(at)) _return = false;
+			else finger = at;
+		}
+		return _return;
+	}
+
+	// Lowest node from the finger up whose subtree spans value, which comes after the finger's value.
+	// A subtree reached through right links ends where the first left link above it does.
+
+	private Node<V, D> fingerFor(Node<V, D> finger, V value) {
+		if (this.isNull(finger)) return this.root;
+		Node<V, D> at = finger;
+		while (true) {
+			Node<V, D> n = at, p = at.parent;
+			while (this.notNull(p) && (p.right == n)) {
+				n = p;
+				p = p.parent;
+			}
+			if (this.isNull(p) || (value.compareTo(p.value) < 0)) return at;
+			at = p;
+		}
+	}
+
+	private int depth(Node<V, D> at) {
+		int depth = 0;
+		for (Node<V, D> p = at.parent; this.notNull(p); p = p.parent) depth++;
+		return depth;
+	}
+
+	/*
+		##############
+		# Bulk Build
+		##############
+	*/
+
+	// Builds a perfectly balanced tree in O(n) from keys in ascending order, data lined up with keys or null.
+	// Input that isn't strictly ascending is sorted first, and a repeated key keeps its last data like insert would.
+
+	public static <V extends Comparable<V>, D> BinarySearchTree<V, D> fromSorted(V[] keys, D[] data) {
+		BinarySearchTree<V, D> tree = new BinarySearchTree<V, D>();
+		tree.build(keys, data);
+		return tree;
+	}
+
+	private void build(V[] keys, D[] data) {
+		if ((data != null) && (data.length != keys.length)) throw new IllegalArgumentException("keys and data differ in length");
+		int[] order = this.sortedOrder(keys);
+		int n = (order == null) ? keys.length : order.length;
+		this.root = this.build(keys, data, order, 0, n - 1, null);
+		this.maxSize = n;
+	}
+
+	// Middle key becomes the root of each range, so every level but the last is full.
+
+	private Node<V, D> build(V[] keys, D[] data, int[] order, int lo, int hi, Node<V, D> parent) {
+		if (lo > hi) return null;
+		int mid = (lo + hi) >>> 1, i = (order == null) ? mid : order[mid];
+
+		Node<V, D> at = new Node<V, D>(keys[i], (data == null) ? null : data[i], parent);
+		at.left = this.build(keys, data, order, lo, mid - 1, at);
+		at.right = this.build(keys, data, order, mid + 1, hi, at);
+		this.updateSize(at);
+		return at;
+	}
+
+	// Lays the tree's nodes and the batch out in order, updating the nodes the batch repeats, and
+	// relinks them balanced, so entries already handed out stay the tree's nodes.
+
+	private boolean merge(V[] keys, D[] data, int[] order, int n) {
+		@SuppressWarnings("unchecked")
+		Node<V, D>[] nodes = (Node<V, D>[]) new BinarySearchTree<?, ?>.Node<?, ?>[this.size() + n];
+		boolean _return = true;
+		Node<V, D> at = this.minNode(this.root);
+		int m = 0;
+
+		for (int j = 0; j < n; j++) {
+			int i = (order == null) ? j : order[j], c = 1;
+			D d = (data == null) ? null : data[i];
+			while (this.notNull(at) && ((c = keys[i].compareTo(at.value)) > 0)) {
+				nodes[m++] = at;
+				at = this.nextNode(at);
+			}
+			if (this.notNull(at) && (c == 0)) {
+				if (at.data == d) _return = false;
+				at.data = d;
+				nodes[m++] = at;
+				at = this.nextNode(at);
+			} else nodes[m++] = new Node<V, D>(keys[i], d);
 		}
-		i.parent = p;
+		for (; this.notNull(at); at = this.nextNode(at)) nodes[m++] = at;
 
+		this.root = this.relink(nodes, 0, m - 1, null);
+		this.maxSize = m;
+		return _return;
+	}
+
+	/* Join */
+
+	// Builds a run that lies wholly past either end of the tree balanced, and hangs it off the largest or
+	// smallest node. In scapegoat mode its deepest node is checked like a fresh insert. A whole run adds
+	// several levels at once, so rebuilding the lowest scapegoat can leave it too deep still, and the
+	// check repeats from the rebuilt subtree until a scapegoat high enough has been rebuilt. Returns false,
+	// having done nothing, for any other batch.
+
+	private boolean joinRun(V[] keys, D[] data, int[] order, int n) {
+		int first = (order == null) ? 0 : order[0], last = (order == null) ? (n - 1) : order[n - 1];
+		Node<V, D> end = this.maxNode(this.root);
+		boolean after = keys[first].compareTo(end.value) > 0;
+		if (!after) {
+			end = this.minNode(this.root);
+			if (keys[last].compareTo(end.value) >= 0) return false;
+		}
+
+		Node<V, D> run = this.build(keys, data, order, 0, n - 1, end);
+		if (after) end.right = run;
+		else end.left = run;
+		for (Node<V, D> at = end; this.notNull(at); at = at.parent) this.updateSize(at);
+
+		// A subtree from build or relink is deepest along its right edge
+		for (Node<V, D> at = run; (this.alpha > 0) && this.notNull(at); ) {
+			Node<V, D> deepest = this.maxNode(at);
+			at = this.insertRebalance(deepest, this.depth(deepest));
+		}
 		return true;
 	}
 
+	// Null if keys are already strictly ascending, otherwise the indexes of the keys in ascending order
+	// with only the last of each repeated key kept.
+
+	private int[] sortedOrder(final V[] keys) {
+		int i = 1;
+		while ((i < keys.length) && (keys[i - 1].compareTo(keys[i]) < 0)) i++;
+		if (i >= keys.length) return null;
+
+		Integer[] sorted = new Integer[keys.length];
+		for (i = 0; i < keys.length; i++) sorted[i] = i;
+		// Stable, so equal keys stay in input order
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) { return keys[a].compareTo(keys[b]); }
+		});
+
+		int[] order = new int[keys.length];
+		int n = 0;
+		for (i = 0; i < sorted.length; i++) {
+			if ((n > 0) && (keys[order[n - 1]].compareTo(keys[sorted[i]]) == 0)) order[n - 1] = sorted[i];
+			else order[n++] = sorted[i];
+		}
+		return Arrays.copyOf(order, n);
+	}
+
 	/*
 		##########
 		# Remove
@@ -164,93 +455,351 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 	public synchronized boolean remove(V... values) {
 		boolean _return = true;
 		for (int i = 0; i < values.length; i++) {
-			if (this.height(this.root) <= 1) {
-				this.root = null;
+			Node<V, D> r = this.getNode(values[i]);
+			if (this.isNull(r)) {
+				_return = false;
 				continue;
-			} else {
-				Node<V, D> r = this.getNode(values[i]);
-				if (this.isNull(r) || this.isNull(r.parent, r.left, r.right)) {
-					_return = false;
-					continue;
-				}
-
-				int c = this.notNull(r.parent) ? r.value.compareTo(r.parent.value) : 0;
-
-				if (this.isNull(r.left) && this.isNull(r.right)) {
-					if (this.root == r) this.root = null;
-					if (c < 0) r.parent.left = null;
-					else r.parent.right = null;
-				} else if (this.notNull(r.left) && this.isNull(r.right)) {
-					if (this.root == r) this.root = r.left;
-					r.left.parent = r.parent;
-					if (this.notNull(r.parent)) {
-						if (c < 0) r.parent.left = r.left;
-						else r.parent.right = r.left;
-					}
-				} else if (this.isNull(r.left) && this.notNull(r.right)) {
-					if (this.root == r) this.root = r.right;
-					r.right.parent = r.parent;
-					if (this.notNull(r.parent)) {
-						if (c < 0) r.parent.left = r.right;
-						else r.parent.right = r.right;
-					}
-				} else if (this.notNull(r.left) && this.notNull(r.right)) {
-					if (this.getInorderPredecessorHeight(r.left) > this.getInorderSuccessorHeight(r.right)) {
-						Node<V, D> s = this.getInorderPredecessor(r);
-
-						if (this.root == r) this.root = s;
-
-						if (s.parent != r) {
-							s.parent.right = s.left;
-							if (this.notNull(s.parent.right)) s.parent.right.parent = s.parent;
-						}
-
-						s.parent = r.parent;
-						if (this.notNull(s.parent)) {
-							c = s.value.compareTo(s.parent.value);
-							if (c < 0) s.parent.left = s;
-							else s.parent.right = s;
-						}
-
-						if (s != r.left) {
-							s.left = r.left;
-							s.left.parent = s;
-						}
-
-						s.right = r.right;
-						if (this.notNull(s.right)) s.right.parent = s;
-					} else {
-						Node<V, D> s = this.getInorderSuccessor(r);
-
-						if (this.root == r) this.root = s;
-
-						if (s.parent != r) {
-							s.parent.left = s.right;
-							if (this.notNull(s.parent.left)) s.parent.left.parent = s.parent;
-						}
-
-						s.parent = r.parent;
-						if (this.notNull(s.parent)) {
-							c = s.value.compareTo(s.parent.value);
-							if (c < 0) s.parent.left = s;
-							else s.parent.right = s;
-						}
-
-						if (s != r.right) {
-							s.right = r.right;
-							s.right.parent = s;
-						}
-
-						s.left = r.left;
-						if (this.notNull(s.left)) s.left.parent = s;
-					}
-				}
-				if (!_return) _return = true;
 			}
+
+			this.removeNode(r);
+			if (!_return) _return = true;
 		}
 		return _return;
 	}
 
+	/* Remove Node */
+
+	// Unlinks a node already found and fixes the tree up from where it was taken out.
+
+	private void removeNode(Node<V, D> r) {
+		Node<V, D> from = null;
+
+		if (this.isNull(r.left) || this.isNull(r.right)) {
+			this.transplant(r, this.notNull(r.left) ? r.left : r.right);
+			from = r.parent;
+		} else if (this.getInorderPredecessorHeight(r) > this.getInorderSuccessorHeight(r)) {
+			Node<V, D> s = this.getInorderPredecessor(r);
+			from = (s.parent == r) ? s : s.parent;
+
+			if (s.parent != r) {
+				s.parent.right = s.left;
+				if (this.notNull(s.parent.right)) s.parent.right.parent = s.parent;
+
+				s.left = r.left;
+				s.left.parent = s;
+			}
+
+			s.right = r.right;
+			s.right.parent = s;
+			this.transplant(r, s);
+		} else {
+			Node<V, D> s = this.getInorderSuccessor(r);
+			from = (s.parent == r) ? s : s.parent;
+
+			if (s.parent != r) {
+				s.parent.left = s.right;
+				if (this.notNull(s.parent.left)) s.parent.left.parent = s.parent;
+
+				s.right = r.right;
+				s.right.parent = s;
+			}
+
+			s.left = r.left;
+			s.left.parent = s;
+			this.transplant(r, s);
+		}
+
+		r.parent = r.left = r.right = null;
+		for (Node<V, D> n = from; this.notNull(n); n = n.parent) this.updateSize(n);
+		if ((this.alpha > 0) && (this.size() < (this.alpha * this.maxSize))) {
+			this.rebuild(this.root);
+			this.maxSize = this.size();
+		}
+	}
+
+	/*
+		#############
+		# Scapegoat
+		#############
+	*/
+
+	// A new node deeper than log base 1/alpha of n means some ancestor holds more than alpha of its
+	// subtree on one side. The lowest such ancestor is the scapegoat, and its subtree is rebuilt. Returns
+	// the root of the rebuilt subtree, or null if nothing was rebuilt.
+
+	private Node<V, D> insertRebalance(Node<V, D> at, int depth) {
+		int n = this.size();
+		if (n > this.maxSize) this.maxSize = n;
+		if (depth <= Math.floor(Math.log(n) / Math.log(1 / this.alpha))) return null;
+
+		for (Node<V, D> p = at.parent; this.notNull(p); at = p, p = p.parent) {
+			if (at.size > (this.alpha * p.size)) return this.rebuild(p);
+		}
+		return null;
+	}
+
+	// Lays the subtree's own nodes out in order and relinks them perfectly balanced in O(size), so
+	// entries already handed out stay the tree's nodes.
+
+	private Node<V, D> rebuild(Node<V, D> at) {
+		if (this.isNull(at)) return null;
+		Node<V, D> parent = at.parent;
+		boolean left = this.notNull(parent) && (parent.left == at);
+
+		@SuppressWarnings("unchecked")
+		Node<V, D>[] nodes = (Node<V, D>[]) new BinarySearchTree<?, ?>.Node<?, ?>[at.size];
+		Node<V, D> n = this.minNode(at);
+		for (int i = 0; i < nodes.length; i++, n = this.nextNode(n)) nodes[i] = n;
+
+		Node<V, D> top = this.relink(nodes, 0, nodes.length - 1, parent);
+		if (this.isNull(parent)) this.root = top;
+		else if (left) parent.left = top;
+		else parent.right = top;
+		return top;
+	}
+
+	private Node<V, D> relink(Node<V, D>[] nodes, int lo, int hi, Node<V, D> parent) {
+		if (lo > hi) return null;
+		int mid = (lo + hi) >>> 1;
+		Node<V, D> at = nodes[mid];
+		at.parent = parent;
+		at.left = this.relink(nodes, lo, mid - 1, at);
+		at.right = this.relink(nodes, mid + 1, hi, at);
+		this.updateSize(at);
+		return at;
+	}
+
+	/* Replace the Subtree at a Node */
+
+	private void transplant(Node<V, D> at, Node<V, D> with) {
+		if (this.isNull(at.parent)) this.root = with;
+		else if (at.parent.left == at) at.parent.left = with;
+		else at.parent.right = with;
+		if (this.notNull(with)) with.parent = at.parent;
+	}
+
+	/*
+		##############
+		# Navigation
+		##############
+	*/
+
+	// Nearest entries to a value in one descent, null if there is none. Like the iterators they hand out
+	// the nodes themselves, and a polled entry is the node that was taken out.
+
+	public Map.Entry<V, D> floorEntry(V value) { return this.floorNode(value, true); }
+
+	public Map.Entry<V, D> lowerEntry(V value) { return this.floorNode(value, false); }
+
+	public Map.Entry<V, D> ceilingEntry(V value) { return this.ceilingNode(value, true); }
+
+	public Map.Entry<V, D> higherEntry(V value) { return this.ceilingNode(value, false); }
+
+	public Map.Entry<V, D> firstEntry() { return this.minNode(this.root); }
+
+	public Map.Entry<V, D> lastEntry() { return this.maxNode(this.root); }
+
+	/* Poll */
+
+	// Removes the node the descent found, without searching for its value again.
+
+	public Map.Entry<V, D> pollFirstEntry() { return this.poll(true); }
+
+	public Map.Entry<V, D> pollLastEntry() { return this.poll(false); }
+
+	private synchronized Node<V, D> poll(boolean first) {
+		Node<V, D> at = first ? this.minNode(this.root) : this.maxNode(this.root);
+		if (this.notNull(at)) this.removeNode(at);
+		return at;
+	}
+
+	/*
+		##############
+		# Iteration
+		##############
+	*/
+
+	// Cursors step from node to node through the parent links, so they keep O(1) state and hand out
+	// the nodes themselves as entries. setValue on an entry changes the data in the tree. They don't
+	// take the lock, so only iterate while no other thread is writing.
+
+	/* Ranges */
+
+	// Lazy views of the entries between lo and hi. A null bound leaves that end open. Each iterator
+	// finds its first node in one descent and then steps node to node, so k entries cost O(log n + k).
+
+	public Iterable<Map.Entry<V, D>> range(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor((lo == null) ? this.minNode(this.root) : this.ceilingNode(lo, loInclusive), true, hi, hiInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> headRange(V hi, boolean inclusive) { return this.range(null, true, hi, inclusive); }
+
+	public Iterable<Map.Entry<V, D>> tailRange(V lo, boolean inclusive) { return this.range(lo, inclusive, null, true); }
+
+	// Same entries from hi down to lo.
+
+	public Iterable<Map.Entry<V, D>> descendingRange(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor((hi == null) ? this.maxNode(this.root) : this.floorNode(hi, hiInclusive), false, lo, loInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> descendingHeadRange(V hi, boolean inclusive) { return this.descendingRange(null, true, hi, inclusive); }
+
+	public Iterable<Map.Entry<V, D>> descendingTailRange(V lo, boolean inclusive) { return this.descendingRange(lo, inclusive, null, true); }
+
+	// Below this a split costs more than walking the nodes
+	private static final int SPLIT_SIZE = 1024;
+
+	public Iterator<Map.Entry<V, D>> iterator() { return new Cursor(this.minNode(this.root), true); }
+
+	public Iterator<Map.Entry<V, D>> descendingIterator() { return new Cursor(this.maxNode(this.root), false); }
+
+	public Spliterator<Map.Entry<V, D>> spliterator() { return new Splitter(this.minNode(this.root), 0, this.size()); }
+
+	public Stream<Map.Entry<V, D>> stream() { return StreamSupport.stream(this.spliterator(), false); }
+
+	public Stream<Map.Entry<V, D>> parallelStream() { return StreamSupport.stream(this.spliterator(), true); }
+
+	private class Cursor implements Iterator<Map.Entry<V, D>> {
+		private Node<V, D> next = null, last = null;
+		private boolean ascending = true;
+		// Bound the cursor stops at, null to run to the end of the tree
+		private V stop = null;
+		private boolean stopInclusive = true;
+
+		private Cursor(Node<V, D> first, boolean ascending) { this(first, ascending, null, true); }
+
+		private Cursor(Node<V, D> first, boolean ascending, V stop, boolean stopInclusive) {
+			this.ascending = ascending;
+			this.stop = stop;
+			this.stopInclusive = stopInclusive;
+			this.next = this.inBounds(first) ? first : null;
+		}
+
+		private boolean inBounds(Node<V, D> at) {
+			if (BinarySearchTree.this.isNull(at)) return false;
+			if (this.stop == null) return true;
+			int c = at.value.compareTo(this.stop);
+			if (!this.ascending) c = -c;
+			return (c < 0) || ((c == 0) && this.stopInclusive);
+		}
+
+		public boolean hasNext() { return BinarySearchTree.this.notNull(this.next); }
+
+		public Map.Entry<V, D> next() {
+			if (BinarySearchTree.this.isNull(this.next)) throw new NoSuchElementException();
+			this.last = this.next;
+			this.next = this.ascending ? BinarySearchTree.this.nextNode(this.next) : BinarySearchTree.this.previousNode(this.next);
+			if (!this.inBounds(this.next)) this.next = null;
+			return this.last;
+		}
+
+		// Removal moves whole nodes, never values, so the node handed out last is unlinked directly, without
+		// searching for it again, and the next node stays valid.
+
+		public void remove() {
+			if (BinarySearchTree.this.isNull(this.last)) throw new IllegalStateException();
+			synchronized (BinarySearchTree.this) {
+				// Unless another remove has already taken it out
+				if (BinarySearchTree.this.notNull(this.last.parent) || (BinarySearchTree.this.root == this.last)) BinarySearchTree.this.removeNode(this.last);
+			}
+			this.last = null;
+		}
+	}
+
+	// Covers the nodes ranked from up to to. Splitting hands the first half off and moves this one to
+	// the middle node, found by descending the subtree sizes, so both halves know their exact size.
+
+	private class Splitter implements Spliterator<Map.Entry<V, D>> {
+		private Node<V, D> next = null;
+		private int from = 0, to = 0;
+
+		private Splitter(Node<V, D> first, int from, int to) {
+			this.next = first;
+			this.from = from;
+			this.to = to;
+		}
+
+		public boolean tryAdvance(Consumer<? super Map.Entry<V, D>> action) {
+			if (this.from >= this.to) return false;
+			Node<V, D> at = this.next;
+			this.next = BinarySearchTree.this.nextNode(at);
+			this.from++;
+			action.accept(at);
+			return true;
+		}
+
+		public void forEachRemaining(Consumer<? super Map.Entry<V, D>> action) {
+			while (this.tryAdvance(action));
+		}
+
+		public Spliterator<Map.Entry<V, D>> trySplit() {
+			if ((this.to - this.from) < SPLIT_SIZE) return null;
+			int mid = (this.from + this.to) >>> 1;
+			Splitter prefix = new Splitter(this.next, this.from, mid);
+			this.next = BinarySearchTree.this.selectNode(mid);
+			this.from = mid;
+			return prefix;
+		}
+
+		public long estimateSize() { return this.to - this.from; }
+
+		public int characteristics() { return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL; }
+
+		public Comparator<? super Map.Entry<V, D>> getComparator() { return Map.Entry.<V, D>comparingByKey(); }
+	}
+
+	/*
+		####################
+		# Order Statistics
+		####################
+	*/
+
+	/* Rank */
+
+	public int rank(V value) { return this.rank(value, false); }
+
+	private int rank(V value, boolean inclusive) {
+		int r = 0;
+		Node<V, D> at = this.root;
+		while (this.notNull(at)) {
+			int c = value.compareTo(at.value);
+			if (c < 0) at = at.left;
+			else if (c > 0) {
+				r += this.size(at.left) + 1;
+				at = at.right;
+			} else return r + this.size(at.left) + (inclusive ? 1 : 0);
+		}
+		return r;
+	}
+
+	/* Select */
+
+	public V select(int k) {
+		Node<V, D> at = this.selectNode(k);
+		return this.isNull(at) ? null : at.value;
+	}
+
+	private Node<V, D> selectNode(int k) {
+		if ((k < 0) || (k >= this.size())) return null;
+		Node<V, D> at = this.root;
+		while (this.notNull(at)) {
+			int l = this.size(at.left);
+			if (k < l) at = at.left;
+			else if (k > l) {
+				k -= l + 1;
+				at = at.right;
+			} else return at;
+		}
+		return null;
+	}
+
+	/* Count Range */
+
+	public int countRange(V lo, V hi) {
+		if (lo.compareTo(hi) > 0) return 0;
+		return this.rank(hi, true) - this.rank(lo, false);
+	}
+
 	/*
 		##########
 		# Print
@@ -265,20 +814,11 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 
 	public String postOrder() { return this.postOrder(this.root); }
 
-	private String postOrder(Node<V, D> at) {
-		if (this.isNull(at)) return "";
+	private String postOrder(Node<V, D> at) { return this.traversal(at, POST_ORDER); }
 
-		String d = null;
-		try { d = at.data.toString(); } catch (Exception e) {}
+	public void writePostOrder(Appendable out) throws IOException { this.writePostOrder(out, EntryFormatter.standard()); }
 
-		String v = (d == null) ? at.value.toString() : ('(' + at.value.toString() + " | " + d + ')'),
-					 left = this.postOrder(at.left),
-					 right = this.postOrder(at.right);
-
-		if (!right.equals("")) v = right + " " + v;
-		if (!left.equals("")) v = left + " " + v;
-		return v;
-	}
+	public void writePostOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, POST_ORDER, format); }
 
 	/* In Order */
 
@@ -288,20 +828,11 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 
 	public String inOrder() { return this.inOrder(this.root); }
 
-	private String inOrder(Node<V, D> at) {
-		if (this.isNull(at)) return "";
+	private String inOrder(Node<V, D> at) { return this.traversal(at, IN_ORDER); }
 
-		String d = null;
-		try { d = at.data.toString(); } catch (Exception e) {}
+	public void writeInOrder(Appendable out) throws IOException { this.writeInOrder(out, EntryFormatter.standard()); }
 
-		String v = (d == null) ? at.value.toString() : ('(' + at.value.toString() + " | " + d + ')'),
-					 left = this.inOrder(at.left),
-					 right = this.inOrder(at.right);
-
-		if (!left.equals("")) v = left + " " + v;
-		if (!right.equals("")) v += " " + right;
-		return v;
-	}
+	public void writeInOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, IN_ORDER, format); }
 
 	/* Pre Order */
 
@@ -311,163 +842,318 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 
 	public String preOrder() { return this.preOrder(this.root); }
 
-	private String preOrder(Node<V, D> at) {
-		if (this.isNull(at)) return "";
+	private String preOrder(Node<V, D> at) { return this.traversal(at, PRE_ORDER); }
 
-		String d = null;
-		try { d = at.data.toString(); } catch (Exception e) {}
+	public void writePreOrder(Appendable out) throws IOException { this.writePreOrder(out, EntryFormatter.standard()); }
+
+	public void writePreOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, PRE_ORDER, format); }
+
+	/* Write Traversal */
+
+	// Every traversal goes through write, which walks an explicit stack instead of recursing and appends
+	// straight to the output. Time is linear, nothing is copied, and a degenerate tree can't overflow
+	// the call stack.
+
+	private static final int PRE_ORDER = 0, IN_ORDER = 1, POST_ORDER = 2;
 
-		String v = (d == null) ? at.value.toString() : ('(' + at.value.toString() + " | " + d + ')'),
-					 left = this.preOrder(at.left),
-					 right = this.preOrder(at.right);
+	private String traversal(Node<V, D> at, int order) {
+		StringBuilder out = new StringBuilder();
+		try {
+			this.write(out, at, order, EntryFormatter.standard());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
 
-		if (!left.equals("")) v += " " + left;
-		if (!right.equals("")) v += " " + right;
-		return v;
+	private void write(Appendable out, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		this.write(out, this.root, order, format);
+	}
+
+	private void write(Appendable out, Node<V, D> at, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		ArrayDeque<Node<V, D>> stack = new ArrayDeque<Node<V, D>>();
+		boolean first = true;
+
+		if (order == PRE_ORDER) {
+			if (this.notNull(at)) stack.push(at);
+			while (!stack.isEmpty()) {
+				at = stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, at.value, at.data);
+				first = false;
+				if (this.notNull(at.right)) stack.push(at.right);
+				if (this.notNull(at.left)) stack.push(at.left);
+			}
+		} else if (order == IN_ORDER) {
+			while (this.notNull(at) || !stack.isEmpty()) {
+				for (; this.notNull(at); at = at.left) stack.push(at);
+				at = stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, at.value, at.data);
+				first = false;
+				at = at.right;
+			}
+		} else {
+			// A node is written once the walk comes back up from its right subtree, or finds none.
+			Node<V, D> last = null;
+			while (this.notNull(at) || !stack.isEmpty()) {
+				for (; this.notNull(at); at = at.left) stack.push(at);
+				Node<V, D> top = stack.peek();
+				if (this.notNull(top.right) && (top.right != last)) {
+					at = top.right;
+					continue;
+				}
+				stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, top.value, top.data);
+				first = false;
+				last = top;
+			}
+		}
 	}
 
 	/* Print Tree */
 
+	// Both renderers write whole lines to an Appendable and keep only the nodes they are about to draw.
+	// maxDepth limits the levels drawn and maxWidth clips every line, so a deep or wide tree renders in
+	// memory bounded by the limits instead of by 2^height.
+
 	public void print() { this.print(this.root); }
 
 	public void print(Node<V, D> at) {
-		ArrayList<ArrayList<String>> lines = new ArrayList<ArrayList<String>>();
-		ArrayList<Node<V, D>> nodes = new ArrayList<Node<V, D>>(),
-													levels = new ArrayList<Node<V, D>>();
-
-		nodes.add(at);
-		int l = 1, widest = 0;
-
-		// Build the printable node
-		while (l != 0) {
-			ArrayList<String> line = new ArrayList<String>();
-			l = 0;
-
-			for (Node<V, D> n : nodes) {
-				if (this.isNull(n)) {
-					line.add(null);
-
-					levels.add(null);
-					levels.add(null);
-				} else {
-					String d = null;
-					try { d = n.data.toString(); } catch (Exception e) {}
-					String s = "│ " + n.value.toString() + ((d == null) ? "" : (" | " + d)) + " │";
-					line.add(s);
-					if (s.length() > widest) widest = s.length();
-
-					levels.add(n.left);
-					levels.add(n.right);
-
-					if (this.notNull(n.left)) l++;
-					if (this.notNull(n.right)) l++;
-				}
-			}
-
-			if ((widest % 2) == 1) widest++;
+		try {
+			this.render(System.out, at, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
-			lines.add(line);
+	public void print(Appendable out, int maxDepth, int maxWidth) throws IOException {
+		this.render(out, this.root, maxDepth, maxWidth);
+	}
 
-			ArrayList<Node<V, D>> tmp = nodes;
-			nodes = levels;
-			levels = tmp;
-			levels.clear();
+	private void render(Appendable out, Node<V, D> at, int maxDepth, int maxWidth) throws IOException {
+		if (this.isNull(at) || (maxDepth <= 0) || (maxWidth <= 0)) return;
+
+		// Count the levels to draw and find the widest box, walking parent links so nothing is stacked
+		int levels = 0, widest = 0, depth = 0;
+		Node<V, D> n = at;
+		walk: while (true) {
+			levels = Math.max(levels, depth + 1);
+			widest = Math.max(widest, this.label(n).length() + 4);
+			if ((depth + 1 < maxDepth) && this.notNull(n.left)) {
+				n = n.left;
+				depth++;
+				continue;
+			}
+			if ((depth + 1 < maxDepth) && this.notNull(n.right)) {
+				n = n.right;
+				depth++;
+				continue;
+			}
+			while (n != at) {
+				Node<V, D> p = n.parent;
+				depth--;
+				if ((n == p.left) && this.notNull(p.right)) {
+					n = p.right;
+					depth++;
+					continue walk;
+				}
+				n = p;
+			}
+			break;
 		}
+		if ((widest % 2) == 1) widest++;
 
-		int perpiece = lines.get(lines.size() - 1).size() * (widest + 4);
-		for (int i = 0; i < lines.size(); i++) {
-			ArrayList<String> line = lines.get(i);
-			int hpw = ((int) Math.floor(perpiece / 2f)) - 1;
+		Row row = new Row(out, Math.min(this.slotWidth(0, levels, widest), maxWidth));
+		ArrayList<Slot> slots = new ArrayList<Slot>(), next = new ArrayList<Slot>();
+		slots.add(new Slot(at, 0, false));
 
+		for (int i = 0; i < levels; i++) {
+			long perpiece = this.slotWidth(i, levels, widest), hpw = (perpiece / 2) - 1;
+
+			// Split Node, drawn once for every parent with a child on this level
 			if (i > 0) {
-				for (int j = 0; j < line.size(); j++) {
-
-					// Split Node
-					char c = ' ';
-					if ((j % 2) == 1) {
-						if (line.get(j - 1) != null) {
-							c = (line.get(j) != null) ? '┴' : '┘';
-						} else {
-							if ((j < line.size()) && (line.get(j) != null)) c = '└';
-						}
-					}
-					System.out.print(c);
-
-					// Lines and Spaces
-					if (line.get(j) == null) {
-						for (int k = 0; k < perpiece - 1; k++) System.out.print(" ");
-					} else {
-						for (int k = 0; k < hpw; k++) System.out.print(((j % 2) == 0) ? " " : "─");
-						System.out.print(((j % 2) == 0) ? "┌" : "┐");
-						for (int k = 0; k < hpw; k++) System.out.print(((j % 2) == 0) ? "─" : " ");
-					}
+				for (int k = 0; k < slots.size(); k++) {
+					Slot s = slots.get(k);
+					boolean left = !s.right,
+									right = s.right || (((k + 1) < slots.size()) && slots.get(k + 1).right && (slots.get(k + 1).start == (s.start + perpiece)));
+					if (left && right) k++;
+
+					row.pad(s.right ? (s.start - perpiece) : s.start);
+					row.put(' ');
+					if (left) {
+						row.repeat(' ', hpw);
+						row.put('┌');
+						row.repeat('─', hpw);
+					} else row.repeat(' ', perpiece - 1);
+					row.put(left ? (right ? '┴' : '┘') : '└');
+					if (right) {
+						row.repeat('─', hpw);
+						row.put('┐');
+						row.repeat(' ', hpw);
+					} else row.repeat(' ', perpiece - 1);
 				}
-				System.out.println();
+				row.end();
 			}
 
-			// Print the upper part of the Box of the printable node
-			for (int j = 0; j < line.size(); j++) {
-				String f = line.get(j);
-				if (f == null) f = "";
-				int left_gap = (int) Math.ceil((perpiece / 2f) - (f.length() / 2f)),
-						right_gap = (int) Math.floor((perpiece / 2f) - (f.length() / 2f));
-
-				for (int k = 0; k < left_gap; k++) System.out.print(" ");
-				if (f.length() > 0) {
-					System.out.print("┌");
-					for (int k = 1; k < (f.length() - 1); k++) System.out.print("─");			// ▔
-					System.out.print("┐");
-				}
-				for (int k = 0; k < right_gap; k++) System.out.print(" ");
+			// Upper part of the Box, the printable node and the lower part of the Box
+			for (Slot s : slots) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put('┌');
+				row.repeat('─', s.label.length() - 2);
+				row.put('┐');
 			}
-			System.out.println();
-
-			// Print the printable node
-			for (int j = 0; j < line.size(); j++) {
-				String f = line.get(j);
-				if (f == null) f = "";
-				int left_gap = (int) Math.ceil((perpiece / 2f) - (f.length() / 2f)),
-						right_gap = (int) Math.floor((perpiece / 2f) - (f.length() / 2f));
-
-				for (int k = 0; k < left_gap; k++) System.out.print(" ");
-				System.out.print(f);
-				for (int k = 0; k < right_gap; k++) System.out.print(" ");
+			row.end();
+			for (Slot s : slots) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put(s.label);
 			}
-			System.out.println();
-
-			// Print the lower part of the Box of the printable node
-			for (int j = 0; j < line.size(); j++) {
-				String f = line.get(j);
-				if (f == null) f = "";
-				int left_gap = (int) Math.ceil((perpiece / 2f) - (f.length() / 2f)),
-						right_gap = (int) Math.floor((perpiece / 2f) - (f.length() / 2f));
-
-				for (int k = 0; k < left_gap; k++) System.out.print(" ");
-				if (f.length() > 0) {
-					System.out.print("└");
-					for (int k = 1; k < (f.length() - 1); k++) System.out.print("─");			// ▁
-					System.out.print("┘");
+			row.end();
+			for (Slot s : slots) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put('└');
+				row.repeat('─', s.label.length() - 2);
+				row.put('┘');
+			}
+			row.end();
+
+			// Children that start past the right edge, and everything under them, are never drawn
+			if ((i + 1) < levels) {
+				long half = this.slotWidth(i + 1, levels, widest);
+				for (Slot s : slots) {
+					if (this.notNull(s.node.left)) next.add(new Slot(s.node.left, s.start, false));
+					if (this.notNull(s.node.right) && ((s.start + half) < maxWidth)) next.add(new Slot(s.node.right, s.start + half, true));
 				}
-				for (int k = 0; k < right_gap; k++) System.out.print(" ");
 			}
-			System.out.println();
+			ArrayList<Slot> tmp = slots;
+			slots = next;
+			next = tmp;
+			next.clear();
+		}
+	}
+
+	// Width of one slot on level i. Past 2^30 slots the true width can't be on screen, so it is capped
+	// at a value no line reaches and no start position can overflow.
+
+	private long slotWidth(int i, int levels, int widest) {
+		int shift = levels - 1 - i;
+		return (shift >= 30) ? (1L << 62) : (((long) (widest + 4)) << shift);
+	}
+
+	private String label(Node<V, D> n) {
+		String d = null;
+		try { d = n.data.toString(); } catch (Exception e) {}
+		return n.value.toString() + ((d == null) ? "" : (" | " + d));
+	}
+
+	private class Slot {
+		private final Node<V, D> node;
+		private final String label;
+		private final long start;
+		private final boolean right;
+
+		private Slot(Node<V, D> node, long start, boolean right) {
+			this.node = node;
+			this.label = "│ " + BinarySearchTree.this.label(node) + " │";
+			this.start = start;
+			this.right = right;
+		}
+	}
+
+	// One output line, built in a reused buffer and clipped to the line width before it is written.
+
+	private static class Row {
+		private final Appendable out;
+		private final StringBuilder line = new StringBuilder();
+		private final long width;
+		private long column = 0;
+
+		private Row(Appendable out, long width) {
+			this.out = out;
+			this.width = width;
+		}
+
+		private void put(char c) {
+			if (this.column < this.width) this.line.append(c);
+			this.column++;
+		}
+
+		private void put(String s) {
+			if (this.column < this.width) this.line.append(s, 0, (int) Math.min(s.length(), this.width - this.column));
+			this.column += s.length();
+		}
 
-			perpiece /= 2;
+		private void repeat(char c, long n) {
+			for (long k = Math.min(n, this.width - this.column); k > 0; k--) this.line.append(c);
+			this.column += n;
+		}
+
+		private void pad(long to) { this.repeat(' ', to - this.column); }
+
+		private void end() throws IOException {
+			this.pad(this.width);
+			this.out.append(this.line).append(System.lineSeparator());
+			this.line.setLength(0);
+			this.column = 0;
 		}
 	}
 
 	/* Vertical Print Tree */
 
-	public void verticalPrint() { this.verticalPrint(this.root, false, ""); }
+	public void verticalPrint() {
+		try {
+			this.verticalPrint(System.out, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
 	public void verticalPrint(Node<V, D> node, boolean isLeft, String prefix) {
-		if (this.notNull(node)) {
-			String d = null;
-			try { d = node.data.toString(); } catch (Exception e) {}
-			String s = "[ " + node.value.toString() + ((d == null) ? "" : (" | " + d)) + " ]";
-			System.out.println(prefix + (isLeft ? "|-- " : "\\-- ") + s);
-			this.verticalPrint(node.left, true, prefix + (isLeft ? "|   " : "    "));
-			this.verticalPrint(node.right, false, prefix + (isLeft ? "|   " : "    "));
+		try {
+			this.verticalRender(System.out, node, isLeft, prefix, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void verticalPrint(Appendable out, int maxDepth) throws IOException {
+		this.verticalRender(out, this.root, false, "", maxDepth);
+	}
+
+	// Pre order on an explicit stack. The prefix is one buffer cut back to the popped node's depth, which
+	// works because everything above that depth still belongs to the node's ancestors.
+
+	private void verticalRender(Appendable out, Node<V, D> node, boolean isLeft, String prefix, int maxDepth) throws IOException {
+		if (this.isNull(node) || (maxDepth <= 0)) return;
+
+		ArrayDeque<Node<V, D>> stack = new ArrayDeque<Node<V, D>>();
+		ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+		StringBuilder indent = new StringBuilder(prefix), line = new StringBuilder();
+		stack.push(node);
+		depths.push(0);
+
+		while (!stack.isEmpty()) {
+			Node<V, D> n = stack.pop();
+			int depth = depths.pop();
+			boolean left = (depth == 0) ? isLeft : (n == n.parent.left);
+
+			indent.setLength(prefix.length() + (depth * 4));
+			line.setLength(0);
+			line.append(indent).append(left ? "|-- " : "\\-- ").append("[ ").append(this.label(n)).append(" ]");
+			out.append(line).append(System.lineSeparator());
+			indent.append(left ? "|   " : "    ");
+
+			if ((depth + 1) < maxDepth) {
+				if (this.notNull(n.right)) {
+					stack.push(n.right);
+					depths.push(depth + 1);
+				}
+				if (this.notNull(n.left)) {
+					stack.push(n.left);
+					depths.push(depth + 1);
+				}
+			}
 		}
 	}
 
@@ -523,6 +1209,16 @@ public class BinarySearchTree<V extends Comparable<V>, D> {
 
 	private boolean noData(Node<V, D> node) { return ((node == null) || node.noData()); }
 
+	/* Size */
+
+	public int size() { return this.size(this.root); }
+
+	private int size(Node<V, D> at) { return (this.isNull(at) ? 0 : at.size); }
+
+	private void updateSize(Node<V, D> at) {
+		if (this.notNull(at)) at.size = 1 + this.size(at.left) + this.size(at.right);
+	}
+
 	/* Height */
 
 	public int height() { return this.height(this.root); }
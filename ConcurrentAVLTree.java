@@ -0,0 +1,716 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// AVL tree that lets writers in different subtrees run in parallel, after Bronson, Casper, Chafi
+// and Olukotun, "A Practical Concurrent Binary Search Tree" (PPoPP 2010).
+//
+// Every node carries a version. A rotation marks the node it moves down as shrinking and bumps
+// the version once it is done, and an unlinked node is marked for good. Readers walk hand over
+// hand without locking: they read a child, then check that the parent's version hasn't changed,
+// and back up a level when it has. Writers lock only the nodes they change.
+//
+// Balance is relaxed. Heights are fixed up and rotations done after the update, a few nodes at a
+// time, so the tree can be briefly out of balance while other threads are in it. Removing a node
+// with two children just clears its data and leaves it in place as a routing node. Routing nodes
+// are unlinked once they are down to one child.
+
+public class ConcurrentAVLTree<V extends Comparable<V>, D> {
+
+	/*
+		####################
+		# Node of the Tree
+		####################
+	*/
+
+	private class Node<V, D> {
+		protected final V value;
+		protected volatile Object data = null; // null marks a routing node
+		protected volatile int height = 1;
+		protected volatile long version = 0;
+		protected volatile Node<V, D> parent = null, left = null, right = null;
+
+		protected Node(V value, Object data, Node<V, D> parent) {
+			this.value = value;
+			this.data = data;
+			this.parent = parent;
+		}
+
+		protected Node<V, D> child(int c) { return (c < 0) ? this.left : this.right; }
+
+		protected void setChild(int c, Node<V, D> child) {
+			if (c < 0) this.left = child;
+			else this.right = child;
+		}
+
+		// Spins briefly, then waits on the lock the rotating thread holds.
+
+		protected void waitUntilChanged(long version) {
+			if (!isShrinking(version)) return;
+			for (int spin = 0; spin < SPINS; spin++)
+				if (this.version != version) return;
+			synchronized (this) {}
+		}
+	}
+
+	// Version bits: unlinked, shrinking, then a counter bumped by every rotation.
+	private static final long UNLINKED = 1L, SHRINKING = 2L, VERSION_INCREMENT = 4L;
+	private static final int SPINS = 100;
+
+	private static final int UNLINK_REQUIRED = -1, REBALANCE_REQUIRED = -2, NOTHING_REQUIRED = -3;
+
+	// Returned by the recursive attempts when a version check failed and the caller has to retry.
+	private static final Object RETRY = new Object();
+	// Stands in for null data, since null marks a routing node.
+	private static final Object NO_DATA = new Object();
+
+	// The root is the right child of this holder, so the root can be rotated like any other node.
+	private final Node<V, D> holder = new Node<V, D>(null, null, null);
+	private final AtomicInteger size = new AtomicInteger();
+
+	public ConcurrentAVLTree() {}
+
+	public ConcurrentAVLTree(V... values) { this.insert(values); }
+
+	/*
+		###############
+		# Finding Node
+		###############
+	*/
+
+	public boolean has(V... values) {
+		for (int i = 0; i < values.length; i++)
+			if (this.find(values[i]) != null) return true;
+		return false;
+	}
+
+	public D get(V value) { return this.decode(this.find(value)); }
+
+	private Object find(V value) {
+		while (true) {
+			Node<V, D> root = this.holder.right;
+			if (root == null) return null;
+			int c = value.compareTo(root.value);
+			if (c == 0) return root.data;
+			long version = root.version;
+			if (isShrinkingOrUnlinked(version)) root.waitUntilChanged(version);
+			else if (root == this.holder.right) {
+				Object found = this.attemptFind(value, root, c, version);
+				if (found != RETRY) return found;
+			}
+		}
+	}
+
+	private Object attemptFind(V value, Node<V, D> at, int c, long version) {
+		while (true) {
+			Node<V, D> child = at.child(c);
+			if (child == null) {
+				if (at.version != version) return RETRY;
+				return null;
+			}
+
+			int cc = value.compareTo(child.value);
+			if (cc == 0) return child.data;
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) {
+				child.waitUntilChanged(childVersion);
+				if (at.version != version) return RETRY;
+			} else if (child != at.child(c)) {
+				if (at.version != version) return RETRY;
+			} else {
+				if (at.version != version) return RETRY;
+				Object found = this.attemptFind(value, child, cc, childVersion);
+				if (found != RETRY) return found;
+			}
+		}
+	}
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	public boolean insert(V... values) {
+		boolean _return = true;
+		for (int i = 0; i < values.length; i++)
+			if (!this.insert(values[i], null)) _return = false;
+		return _return;
+	}
+
+	// True if the value was added or its data changed, like AVLTree.insert.
+
+	public boolean insert(V value, D data) {
+		Object previous = this.update(value, this.encode(data));
+		return (previous == null) || (this.decode(previous) != data);
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	public boolean remove(V... values) {
+		boolean _return = false;
+		for (int i = 0; i < values.length; i++)
+			if (this.update(values[i], null) != null) _return = true;
+		return _return;
+	}
+
+	/* Update */
+
+	// Sets the data of value, or removes it when data is null, and returns the previous data.
+
+	private Object update(V value, Object data) {
+		while (true) {
+			Node<V, D> root = this.holder.right;
+			if (root == null) {
+				if ((data == null) || this.attemptInsertIntoEmpty(value, data)) return null;
+			} else {
+				long version = root.version;
+				if (isShrinkingOrUnlinked(version)) root.waitUntilChanged(version);
+				else if (root == this.holder.right) {
+					Object previous = this.attemptUpdate(value, data, this.holder, root, version);
+					if (previous != RETRY) return previous;
+				}
+			}
+		}
+	}
+
+	private boolean attemptInsertIntoEmpty(V value, Object data) {
+		synchronized (this.holder) {
+			if (this.holder.right != null) return false;
+			this.holder.right = new Node<V, D>(value, data, this.holder);
+			this.holder.height = 2;
+		}
+		this.size.incrementAndGet();
+		return true;
+	}
+
+	private Object attemptUpdate(V value, Object data, Node<V, D> parent, Node<V, D> at, long version) {
+		int c = value.compareTo(at.value);
+		if (c == 0) return this.attemptNodeUpdate(data, parent, at);
+
+		while (true) {
+			Node<V, D> child = at.child(c);
+			if (at.version != version) return RETRY;
+
+			if (child == null) {
+				// Not in the tree
+				if (data == null) return null;
+
+				Node<V, D> damaged;
+				synchronized (at) {
+					if (at.version != version) return RETRY;
+					if (at.child(c) != null) continue;
+					at.setChild(c, new Node<V, D>(value, data, at));
+					damaged = this.fixHeight(at);
+				}
+				this.size.incrementAndGet();
+				this.fixHeightAndRebalance(damaged);
+				return null;
+			}
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) child.waitUntilChanged(childVersion);
+			else if (child != at.child(c)) continue;
+			else {
+				if (at.version != version) return RETRY;
+				Object previous = this.attemptUpdate(value, data, at, child, childVersion);
+				if (previous != RETRY) return previous;
+			}
+		}
+	}
+
+	private Object attemptNodeUpdate(Object data, Node<V, D> parent, Node<V, D> at) {
+		if ((data == null) && (at.data == null)) return null;
+
+		if ((data == null) && ((at.left == null) || (at.right == null))) {
+			// Removing a node with at most one child unlinks it
+			Object previous;
+			Node<V, D> damaged;
+			synchronized (parent) {
+				if (isUnlinked(parent.version) || (at.parent != parent)) return RETRY;
+				synchronized (at) {
+					previous = at.data;
+					if (previous == null) return null;
+					if (!this.attemptUnlink(parent, at)) return RETRY;
+				}
+				damaged = this.fixHeight(parent);
+			}
+			this.size.decrementAndGet();
+			this.fixHeightAndRebalance(damaged);
+			return previous;
+		}
+
+		Object previous;
+		synchronized (at) {
+			if (isUnlinked(at.version)) return RETRY;
+			// Lost a child since we looked, so this removal has to unlink instead
+			if ((data == null) && ((at.left == null) || (at.right == null))) return RETRY;
+			previous = at.data;
+			at.data = data;
+		}
+		if ((previous == null) && (data != null)) this.size.incrementAndGet();
+		else if ((previous != null) && (data == null)) this.size.decrementAndGet();
+		return previous;
+	}
+
+	// Caller holds the locks on parent and at.
+
+	private boolean attemptUnlink(Node<V, D> parent, Node<V, D> at) {
+		Node<V, D> parentLeft = parent.left, parentRight = parent.right;
+		if ((parentLeft != at) && (parentRight != at)) return false;
+
+		Node<V, D> left = at.left, right = at.right;
+		if ((left != null) && (right != null)) return false;
+
+		Node<V, D> splice = (left != null) ? left : right;
+		if (parentLeft == at) parent.left = splice;
+		else parent.right = splice;
+		if (splice != null) splice.parent = parent;
+
+		at.version = UNLINKED;
+		at.data = null;
+		return true;
+	}
+
+	/*
+		###########
+		# BALANCE
+		###########
+	*/
+
+	// Height the node should have, or what else it needs.
+
+	private int condition(Node<V, D> at) {
+		Node<V, D> left = at.left, right = at.right;
+		if (((left == null) || (right == null)) && (at.data == null)) return UNLINK_REQUIRED;
+
+		int h = at.height, hL = this.height(left), hR = this.height(right);
+		int hRepl = 1 + Math.max(hL, hR), balance = hL - hR;
+		if ((balance < -1) || (balance > 1)) return REBALANCE_REQUIRED;
+		return (h != hRepl) ? hRepl : NOTHING_REQUIRED;
+	}
+
+	// Walks up from a damaged node, taking the locks each step needs, until nothing changes.
+	// A rotation can stop short below the parent it was done under, so each parent is kept and
+	// looked at again once the nodes under it are fixed.
+
+	private void fixHeightAndRebalance(Node<V, D> at) {
+		ArrayDeque<Node<V, D>> pending = null;
+		while (true) {
+			if ((at == null) || (at.parent == null)) {
+				if ((pending == null) || pending.isEmpty()) return;
+				at = pending.pop();
+				continue;
+			}
+
+			int condition = this.condition(at);
+			if ((condition == NOTHING_REQUIRED) || isUnlinked(at.version)) {
+				at = null;
+			} else if ((condition != UNLINK_REQUIRED) && (condition != REBALANCE_REQUIRED)) {
+				synchronized (at) { at = this.fixHeight(at); }
+			} else {
+				Node<V, D> parent = at.parent;
+				if (pending == null) pending = new ArrayDeque<Node<V, D>>();
+				pending.push(parent);
+				synchronized (parent) {
+					if (!isUnlinked(parent.version) && (at.parent == parent)) {
+						synchronized (at) { at = this.rebalance(parent, at); }
+					}
+				}
+			}
+		}
+	}
+
+	// Caller holds the lock on at. Returns the next node to look at, or null if done.
+
+	private Node<V, D> fixHeight(Node<V, D> at) {
+		int condition = this.condition(at);
+		switch (condition) {
+			case REBALANCE_REQUIRED:
+			case UNLINK_REQUIRED:
+				return at;
+			case NOTHING_REQUIRED:
+				return null;
+			default:
+				at.height = condition;
+				return at.parent;
+		}
+	}
+
+	// Caller holds the locks on parent and at.
+
+	private Node<V, D> rebalance(Node<V, D> parent, Node<V, D> at) {
+		Node<V, D> left = at.left, right = at.right;
+		if (((left == null) || (right == null)) && (at.data == null))
+			return this.attemptUnlink(parent, at) ? this.fixHeight(parent) : at;
+
+		int h = at.height, hL = this.height(left), hR = this.height(right);
+		int hRepl = 1 + Math.max(hL, hR), balance = hL - hR;
+
+		if (balance > 1) return this.rebalanceToRight(parent, at, left, hR);
+		else if (balance < -1) return this.rebalanceToLeft(parent, at, right, hL);
+		else if (hRepl != h) {
+			at.height = hRepl;
+			return this.fixHeight(parent);
+		}
+		return null;
+	}
+
+	/* Left Heavy */
+
+	private Node<V, D> rebalanceToRight(Node<V, D> parent, Node<V, D> at, Node<V, D> left, int hR) {
+		synchronized (left) {
+			int hL = left.height;
+			if (hL - hR <= 1) return at;
+
+			Node<V, D> leftRight = left.right;
+			int hLL = this.height(left.left), hLR = this.height(leftRight);
+			if (hLL >= hLR) return this.LeftLeftRotation(parent, at, left, hR, hLL, leftRight, hLR);
+
+			synchronized (leftRight) {
+				hLR = leftRight.height;
+				if (hLL >= hLR) return this.LeftLeftRotation(parent, at, left, hR, hLL, leftRight, hLR);
+
+				int hLRL = this.height(leftRight.left), balance = hLL - hLRL;
+				if ((balance >= -1) && (balance <= 1))
+					return this.LeftRightRotation(parent, at, left, hR, hLL, leftRight, hLRL);
+			}
+			// The double rotation would leave left out of balance, so rotate left's subtree first
+			return this.rebalanceToLeft(at, left, leftRight, hLL);
+		}
+	}
+
+	/* Right Heavy */
+
+	private Node<V, D> rebalanceToLeft(Node<V, D> parent, Node<V, D> at, Node<V, D> right, int hL) {
+		synchronized (right) {
+			int hR = right.height;
+			if (hL - hR >= -1) return at;
+
+			Node<V, D> rightLeft = right.left;
+			int hRL = this.height(rightLeft), hRR = this.height(right.right);
+			if (hRR >= hRL) return this.RightRightRotation(parent, at, right, hL, hRR, rightLeft, hRL);
+
+			synchronized (rightLeft) {
+				hRL = rightLeft.height;
+				if (hRR >= hRL) return this.RightRightRotation(parent, at, right, hL, hRR, rightLeft, hRL);
+
+				int hRLR = this.height(rightLeft.right), balance = hRR - hRLR;
+				if ((balance >= -1) && (balance <= 1))
+					return this.RightLeftRotation(parent, at, right, hL, hRR, rightLeft, hRLR);
+			}
+			return this.rebalanceToRight(at, right, rightLeft, hRR);
+		}
+	}
+
+	/*
+		############
+		# Rotation
+		############
+	*/
+
+	// Same shapes as AVLTree's rotations. The caller holds the locks on parent, at and the child
+	// that moves up, and the node that moves down is marked shrinking while its links change.
+	// Each returns the next node that needs work.
+
+	/* Left Left Rotation */
+
+	private Node<V, D> LeftLeftRotation(Node<V, D> parent, Node<V, D> at, Node<V, D> left, int hR, int hLL, Node<V, D> leftRight, int hLR) {
+		long version = at.version;
+		Node<V, D> parentLeft = parent.left;
+
+		at.version = beginChange(version);
+
+		at.left = leftRight;
+		if (leftRight != null) leftRight.parent = at;
+		left.right = at;
+		at.parent = left;
+		if (parentLeft == at) parent.left = left;
+		else parent.right = left;
+		left.parent = parent;
+
+		// Update Heights
+		int hRepl = 1 + Math.max(hLR, hR);
+		at.height = hRepl;
+		left.height = 1 + Math.max(hLL, hRepl);
+
+		at.version = endChange(version);
+
+		int balance = hLR - hR;
+		if ((balance < -1) || (balance > 1)) return at;
+		if (((leftRight == null) || (hR == 0)) && (at.data == null)) return at;
+		balance = hLL - hRepl;
+		if ((balance < -1) || (balance > 1)) return left;
+		if ((hLL == 0) && (left.data == null)) return left;
+		return this.fixHeight(parent);
+	}
+
+	/* Left Right Rotation */
+
+	private Node<V, D> LeftRightRotation(Node<V, D> parent, Node<V, D> at, Node<V, D> left, int hR, int hLL, Node<V, D> leftRight, int hLRL) {
+		long version = at.version, leftVersion = left.version;
+		Node<V, D> parentLeft = parent.left;
+		Node<V, D> leftRightLeft = leftRight.left, leftRightRight = leftRight.right;
+		int hLRR = this.height(leftRightRight);
+
+		at.version = beginChange(version);
+		left.version = beginChange(leftVersion);
+
+		at.left = leftRightRight;
+		if (leftRightRight != null) leftRightRight.parent = at;
+		left.right = leftRightLeft;
+		if (leftRightLeft != null) leftRightLeft.parent = left;
+		leftRight.left = left;
+		left.parent = leftRight;
+		leftRight.right = at;
+		at.parent = leftRight;
+		if (parentLeft == at) parent.left = leftRight;
+		else parent.right = leftRight;
+		leftRight.parent = parent;
+
+		// Update Heights
+		int hRepl = 1 + Math.max(hLRR, hR);
+		at.height = hRepl;
+		int hLRepl = 1 + Math.max(hLL, hLRL);
+		left.height = hLRepl;
+		leftRight.height = 1 + Math.max(hLRepl, hRepl);
+
+		at.version = endChange(version);
+		left.version = endChange(leftVersion);
+
+		int balance = hLRR - hR;
+		if ((balance < -1) || (balance > 1)) return at;
+		if (((leftRightRight == null) || (hR == 0)) && (at.data == null)) return at;
+		// Bronson et al. skip the double rotation here and can leave the tree out of balance.
+		// Rotating anyway and unlinking left afterwards keeps it strict.
+		if (((hLL == 0) || (hLRL == 0)) && (left.data == null)) return left;
+		balance = hLRepl - hRepl;
+		if ((balance < -1) || (balance > 1)) return leftRight;
+		return this.fixHeight(parent);
+	}
+
+	/* Right Right Rotation */
+
+	private Node<V, D> RightRightRotation(Node<V, D> parent, Node<V, D> at, Node<V, D> right, int hL, int hRR, Node<V, D> rightLeft, int hRL) {
+		long version = at.version;
+		Node<V, D> parentLeft = parent.left;
+
+		at.version = beginChange(version);
+
+		at.right = rightLeft;
+		if (rightLeft != null) rightLeft.parent = at;
+		right.left = at;
+		at.parent = right;
+		if (parentLeft == at) parent.left = right;
+		else parent.right = right;
+		right.parent = parent;
+
+		// Update Heights
+		int hRepl = 1 + Math.max(hL, hRL);
+		at.height = hRepl;
+		right.height = 1 + Math.max(hRepl, hRR);
+
+		at.version = endChange(version);
+
+		int balance = hRL - hL;
+		if ((balance < -1) || (balance > 1)) return at;
+		if (((rightLeft == null) || (hL == 0)) && (at.data == null)) return at;
+		balance = hRR - hRepl;
+		if ((balance < -1) || (balance > 1)) return right;
+		if ((hRR == 0) && (right.data == null)) return right;
+		return this.fixHeight(parent);
+	}
+
+	/* Right Left Rotation */
+
+	private Node<V, D> RightLeftRotation(Node<V, D> parent, Node<V, D> at, Node<V, D> right, int hL, int hRR, Node<V, D> rightLeft, int hRLR) {
+		long version = at.version, rightVersion = right.version;
+		Node<V, D> parentLeft = parent.left;
+		Node<V, D> rightLeftLeft = rightLeft.left, rightLeftRight = rightLeft.right;
+		int hRLL = this.height(rightLeftLeft);
+
+		at.version = beginChange(version);
+		right.version = beginChange(rightVersion);
+
+		at.right = rightLeftLeft;
+		if (rightLeftLeft != null) rightLeftLeft.parent = at;
+		right.left = rightLeftRight;
+		if (rightLeftRight != null) rightLeftRight.parent = right;
+		rightLeft.right = right;
+		right.parent = rightLeft;
+		rightLeft.left = at;
+		at.parent = rightLeft;
+		if (parentLeft == at) parent.left = rightLeft;
+		else parent.right = rightLeft;
+		rightLeft.parent = parent;
+
+		// Update Heights
+		int hRepl = 1 + Math.max(hL, hRLL);
+		at.height = hRepl;
+		int hRRepl = 1 + Math.max(hRLR, hRR);
+		right.height = hRRepl;
+		rightLeft.height = 1 + Math.max(hRepl, hRRepl);
+
+		at.version = endChange(version);
+		right.version = endChange(rightVersion);
+
+		int balance = hRLL - hL;
+		if ((balance < -1) || (balance > 1)) return at;
+		if (((rightLeftLeft == null) || (hL == 0)) && (at.data == null)) return at;
+		if (((hRR == 0) || (hRLR == 0)) && (right.data == null)) return right;
+		balance = hRRepl - hRepl;
+		if ((balance < -1) || (balance > 1)) return rightLeft;
+		return this.fixHeight(parent);
+	}
+
+	/*
+		#########
+		# Print
+		#########
+	*/
+
+	// Traversals are weakly consistent: they see every value that was there for the whole walk
+	// and may or may not see values added or removed while it ran. Routing nodes are skipped.
+
+	/* Post Order */
+
+	public void printPostOrder() { System.out.println(this.postOrder()); }
+
+	public String postOrder() { return this.traversal(POST_ORDER); }
+
+	public void writePostOrder(Appendable out) throws IOException { this.writePostOrder(out, EntryFormatter.standard()); }
+
+	public void writePostOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, POST_ORDER, format); }
+
+	/* In Order */
+
+	public void printInOrder() { System.out.println(this.inOrder()); }
+
+	public String inOrder() { return this.traversal(IN_ORDER); }
+
+	public void writeInOrder(Appendable out) throws IOException { this.writeInOrder(out, EntryFormatter.standard()); }
+
+	public void writeInOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, IN_ORDER, format); }
+
+	/* Pre Order */
+
+	public void printPreOrder() { System.out.println(this.preOrder()); }
+
+	public String preOrder() { return this.traversal(PRE_ORDER); }
+
+	public void writePreOrder(Appendable out) throws IOException { this.writePreOrder(out, EntryFormatter.standard()); }
+
+	public void writePreOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, PRE_ORDER, format); }
+
+	/* Write Traversal */
+
+	// Every traversal walks an explicit stack instead of recursing and appends straight to the output.
+	// Each child link is read once per visit, since a rotation can change it between two reads.
+
+	private static final int PRE_ORDER = 0, IN_ORDER = 1, POST_ORDER = 2;
+
+	private String traversal(int order) {
+		StringBuilder out = new StringBuilder();
+		try {
+			this.write(out, order, EntryFormatter.standard());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	private void write(Appendable out, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		ArrayDeque<Node<V, D>> stack = new ArrayDeque<Node<V, D>>();
+		Node<V, D> at = this.holder.right;
+		boolean first = true;
+
+		if (order == PRE_ORDER) {
+			if (at != null) stack.push(at);
+			while (!stack.isEmpty()) {
+				at = stack.pop();
+				Node<V, D> left = at.left, right = at.right;
+				first = this.write(out, at, format, first);
+				if (right != null) stack.push(right);
+				if (left != null) stack.push(left);
+			}
+		} else if (order == IN_ORDER) {
+			while ((at != null) || !stack.isEmpty()) {
+				for (; at != null; at = at.left) stack.push(at);
+				at = stack.pop();
+				first = this.write(out, at, format, first);
+				at = at.right;
+			}
+		} else {
+			// A node is written once the walk comes back up from its right subtree, or finds none.
+			Node<V, D> last = null;
+			while ((at != null) || !stack.isEmpty()) {
+				for (; at != null; at = at.left) stack.push(at);
+				Node<V, D> top = stack.peek(), right = top.right;
+				if ((right != null) && (right != last)) {
+					at = right;
+					continue;
+				}
+				stack.pop();
+				first = this.write(out, top, format, first);
+				last = top;
+			}
+		}
+	}
+
+	// Writes one node unless it is a routing node, and says whether nothing has been written yet.
+
+	private boolean write(Appendable out, Node<V, D> at, EntryFormatter<? super V, ? super D> format, boolean first) throws IOException {
+		Object data = at.data;
+		if (data == null) return first;
+		if (!first) out.append(' ');
+		format.format(out, at.value, this.decode(data));
+		return false;
+	}
+
+	/*
+		##########
+		# Others
+		##########
+	*/
+
+	/* Is Empty */
+
+	public boolean isEmpty() { return this.size.get() == 0; }
+
+	public boolean notEmpty() { return this.size.get() != 0; }
+
+	/* Version */
+
+	private static boolean isShrinking(long version) { return (version & SHRINKING) != 0; }
+
+	private static boolean isUnlinked(long version) { return (version & UNLINKED) != 0; }
+
+	private static boolean isShrinkingOrUnlinked(long version) { return (version & (SHRINKING | UNLINKED)) != 0; }
+
+	private static long beginChange(long version) { return version | SHRINKING; }
+
+	private static long endChange(long version) { return (version & ~SHRINKING) + VERSION_INCREMENT; }
+
+	/* Data */
+
+	private Object encode(D data) { return (data == null) ? NO_DATA : data; }
+
+	@SuppressWarnings("unchecked")
+	private D decode(Object data) { return ((data == null) || (data == NO_DATA)) ? null : (D) data; }
+
+	/* Height */
+
+	public int height() { return this.height(this.holder.right); }
+
+	private int height(Node<V, D> at) { return (at == null) ? 0 : at.height; }
+
+	/* Size */
+
+	public int size() { return this.size.get(); }
+}
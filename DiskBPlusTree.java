@@ -0,0 +1,648 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// B+ tree kept in a file instead of on the heap. Entries live in fixed size pages of a memory mapped
+// file and only the pages in a small cache are decoded into objects, so the heap holds the cache and
+// nothing else. Leaves are linked left to right, and a range scan walks them without going back up.
+// Dirty pages are written back when the clock evicts them, and on flush() and close().
+
+public class DiskBPlusTree<V extends Comparable<V>, D> implements Iterable<Map.Entry<V, D>>, Closeable {
+
+	/*
+		##########
+		# Page
+		##########
+	*/
+
+	// A decoded page. Leaves hold data and the id of the next leaf, inner pages one more child than keys.
+	// bytes is what the page takes encoded, and a page over the page size is split.
+
+	private class Page {
+		private final int id;
+		private final boolean leaf;
+		private final ArrayList<V> keys;
+		private final ArrayList<D> data;
+		private final ArrayList<Integer> children;
+		private int next = NONE, bytes = HEADER;
+		private boolean dirty = false, referenced = true;
+
+		private Page(int id, boolean leaf) { this(id, leaf, 16); }
+
+		private Page(int id, boolean leaf, int capacity) {
+			this.id = id;
+			this.leaf = leaf;
+			this.keys = new ArrayList<V>(capacity);
+			this.data = leaf ? new ArrayList<D>(capacity) : null;
+			this.children = leaf ? null : new ArrayList<Integer>(capacity + 1);
+		}
+	}
+
+	// Page 0 holds the header below, the tree starts at page 1. The file is mapped in segments of up to
+	// SEGMENT bytes so it can grow, and a segment is only mapped as far as the file has pages in it. Mapping
+	// past the end extends the file, so the last segment is remapped at twice its length when a page past
+	// it is allocated, and the file stays within twice what the tree uses.
+
+	private static final int MAGIC = 0x42505452, VERSION = 1, HEADER = 7, NONE = -1;
+	private static final long SEGMENT = 1L << 26;
+
+	private final FileChannel channel;
+	private final ArrayList<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private final Serializer<V> keys;
+	private final Serializer<D> data;
+	private final int pageSize, cachePages, pagesPerSegment;
+	private final Scratch scratch = new Scratch();
+	private final DataOutputStream out = new DataOutputStream(this.scratch);
+
+	private final HashMap<Integer, Page> cache = new HashMap<Integer, Page>();
+	private final ArrayList<Page> clock = new ArrayList<Page>();
+	private int hand = 0;
+
+	private int root = 1, pages = 2, size = 0, height = 1;
+
+	public DiskBPlusTree(Path path, Serializer<V> keys, Serializer<D> data) throws IOException { this(path, keys, data, 4096, 1024); }
+
+	// A null data serializer keeps keys only. The page size has to match the one the file was made with.
+
+	public DiskBPlusTree(Path path, Serializer<V> keys, Serializer<D> data, int pageSize, int cachePages) throws IOException {
+		if ((pageSize < 512) || (pageSize > (1 << 16)) || (Integer.bitCount(pageSize) != 1)) throw new IllegalArgumentException("page size must be a power of two from 512 to 65536");
+		if (cachePages < 16) throw new IllegalArgumentException("cache must hold at least 16 pages");
+
+		this.keys = keys;
+		this.data = data;
+		this.pageSize = pageSize;
+		this.cachePages = cachePages;
+		this.pagesPerSegment = (int) (SEGMENT / pageSize);
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+		try {
+			if (this.channel.size() == 0) {
+				Page leaf = new Page(this.root, true);
+				leaf.dirty = true;
+				this.cache(leaf);
+				this.flush();
+			} else {
+				ByteBuffer meta = this.page(0);
+				if (meta.getInt() != MAGIC) throw new IOException("not a B+ tree file: " + path);
+				int version = meta.getShort();
+				if (version != VERSION) throw new IOException("unsupported B+ tree version " + version + ": " + path);
+				if (meta.getInt() != pageSize) throw new IOException("file was made with another page size: " + path);
+				this.root = meta.getInt();
+				this.pages = meta.getInt();
+				this.size = meta.getInt();
+				this.height = meta.getInt();
+			}
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/*
+		###############
+		# Finding Key
+		###############
+	*/
+
+	public synchronized boolean has(V... values) {
+		try {
+			for (int i = 0; i < values.length; i++) {
+				Page leaf = this.leaf(values[i], null);
+				if (Collections.binarySearch(leaf.keys, values[i]) >= 0) return true;
+			}
+			return false;
+		} finally {
+			this.trim();
+		}
+	}
+
+	public synchronized D get(V value) {
+		try {
+			Page leaf = this.leaf(value, null);
+			int i = Collections.binarySearch(leaf.keys, value);
+			return (i < 0) ? null : leaf.data.get(i);
+		} finally {
+			this.trim();
+		}
+	}
+
+	/* Descend */
+
+	// Follows the keys down to the leaf that holds or would hold value, noting the inner pages on the way.
+
+	private Page leaf(V value, ArrayList<Page> path) {
+		Page at = this.fetch(this.root);
+		while (!at.leaf) {
+			if (path != null) path.add(at);
+			at = this.fetch(at.children.get(this.child(at, value)));
+		}
+		return at;
+	}
+
+	// Index of the first key greater than value, which is also the child of an inner page to follow.
+
+	private int child(Page at, V value) {
+		int lo = 0, hi = at.keys.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (value.compareTo(at.keys.get(mid)) < 0) hi = mid;
+			else lo = mid + 1;
+		}
+		return lo;
+	}
+
+	private Page firstLeaf() {
+		Page at = this.fetch(this.root);
+		while (!at.leaf) at = this.fetch(at.children.get(0));
+		return at;
+	}
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	public boolean insert(V... values) {
+		boolean _return = true;
+		for (int i = 0; i < values.length; i++)
+			if (!this.insert(values[i], null)) _return = false;
+		return _return;
+	}
+
+	public synchronized boolean insert(V value, D data) {
+		if ((data != null) && (this.data == null)) throw new IllegalArgumentException("tree has no data serializer");
+
+		try {
+			ArrayList<Page> path = new ArrayList<Page>();
+			Page leaf = this.leaf(value, path);
+			int i = Collections.binarySearch(leaf.keys, value);
+
+			if (i >= 0) {
+				D old = leaf.data.get(i);
+				if (Objects.equals(old, data)) return false;
+				int bytes = this.entrySize(value, data);
+				if (bytes > this.maxEntry()) throw new IllegalArgumentException("entry is too large for the page size");
+				leaf.bytes += bytes - this.entrySize(value, old);
+				leaf.data.set(i, data);
+			} else {
+				int bytes = this.entrySize(value, data);
+				if (bytes > this.maxEntry()) throw new IllegalArgumentException("entry is too large for the page size");
+				i = -i - 1;
+				leaf.keys.add(i, value);
+				leaf.data.add(i, data);
+				leaf.bytes += bytes;
+				this.size++;
+			}
+			leaf.dirty = true;
+
+			if (leaf.bytes > this.pageSize) this.split(leaf, path);
+			return true;
+		} finally {
+			this.trim();
+		}
+	}
+
+	/* Split */
+
+	// Splits an overfull page and hands its separator to the parent, which may overflow in turn.
+	// Splitting the root grows the tree by a level.
+
+	private void split(Page at, ArrayList<Page> path) {
+		for (int level = path.size() - 1; at.bytes > this.pageSize; level--) {
+			Page right = this.allocate(at.leaf);
+			V separator = this.moveUpperHalf(at, right);
+
+			Page parent;
+			if (level < 0) {
+				parent = this.allocate(false);
+				parent.children.add(at.id);
+				this.root = parent.id;
+				this.height++;
+			} else parent = path.get(level);
+
+			int i = this.child(parent, separator);
+			parent.keys.add(i, separator);
+			parent.children.add(i + 1, right.id);
+			parent.bytes += this.innerSize(separator);
+			parent.dirty = true;
+			at = parent;
+		}
+	}
+
+	// Moves the entries past the middle byte of a page into right, and returns the key between them.
+	// A leaf keeps a copy of that key in right, an inner page passes it up and keeps it nowhere.
+
+	private V moveUpperHalf(Page at, Page right) {
+		int n = at.keys.size(), half = (at.bytes - HEADER) / 2, bytes = 0, mid = 0;
+		while ((mid < (n - 1)) && (bytes < half)) bytes += this.size(at, mid++);
+		if (mid == 0) mid = 1;
+
+		V separator = at.keys.get(mid);
+		int from = at.leaf ? mid : (mid + 1);
+		right.keys.addAll(at.keys.subList(from, n));
+		if (at.leaf) {
+			right.data.addAll(at.data.subList(mid, n));
+			at.data.subList(mid, n).clear();
+			right.next = at.next;
+			at.next = right.id;
+		} else {
+			right.children.addAll(at.children.subList(mid + 1, n + 1));
+			at.children.subList(mid + 1, n + 1).clear();
+		}
+		at.keys.subList(mid, n).clear();
+
+		at.bytes = right.bytes = HEADER;
+		for (int i = 0; i < at.keys.size(); i++) at.bytes += this.size(at, i);
+		for (int i = 0; i < right.keys.size(); i++) right.bytes += this.size(right, i);
+		at.dirty = right.dirty = true;
+		return separator;
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	// Takes the entry out of its leaf and leaves the page underfull rather than merging, as most disk
+	// B+ trees do. Lookups stay correct, and the space is reused by later inserts into the same range.
+
+	public synchronized boolean remove(V... values) {
+		try {
+			boolean _return = true;
+			for (int i = 0; i < values.length; i++) {
+				Page leaf = this.leaf(values[i], null);
+				int at = Collections.binarySearch(leaf.keys, values[i]);
+				if (at < 0) {
+					_return = false;
+					continue;
+				}
+
+				leaf.bytes -= this.size(leaf, at);
+				leaf.keys.remove(at);
+				leaf.data.remove(at);
+				leaf.dirty = true;
+				this.size--;
+				if (!_return) _return = true;
+			}
+			return _return;
+		} finally {
+			this.trim();
+		}
+	}
+
+	/*
+		#############
+		# Iteration
+		#############
+	*/
+
+	// Entries between two keys, read leaf by leaf along the links. A null bound means no bound.
+
+	public Iterable<Map.Entry<V, D>> range(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor(lo, loInclusive, hi, hiInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> headRange(V hi, boolean inclusive) { return this.range(null, true, hi, inclusive); }
+
+	public Iterable<Map.Entry<V, D>> tailRange(V lo, boolean inclusive) { return this.range(lo, inclusive, null, true); }
+
+	public Iterator<Map.Entry<V, D>> iterator() { return new Cursor(null, true, null, true); }
+
+	public Spliterator<Map.Entry<V, D>> spliterator() {
+		return Spliterators.spliterator(this.iterator(), this.size(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+	}
+
+	public Stream<Map.Entry<V, D>> stream() { return StreamSupport.stream(this.spliterator(), false); }
+
+	/* Cursor */
+
+	// Copies one leaf at a time out of the cache, so the page can be evicted while the caller iterates.
+
+	private class Cursor implements Iterator<Map.Entry<V, D>> {
+		private final V hi;
+		private final boolean hiInclusive;
+		private ArrayList<V> keys;
+		private ArrayList<D> data;
+		private int at = 0, next = NONE;
+		private Map.Entry<V, D> pending = null;
+
+		private Cursor(V lo, boolean loInclusive, V hi, boolean hiInclusive) {
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			synchronized (DiskBPlusTree.this) {
+				this.load((lo == null) ? DiskBPlusTree.this.firstLeaf() : DiskBPlusTree.this.leaf(lo, null));
+				if (lo != null) {
+					int i = Collections.binarySearch(this.keys, lo);
+					this.at = (i < 0) ? (-i - 1) : (loInclusive ? i : (i + 1));
+				}
+				DiskBPlusTree.this.trim();
+			}
+			this.advance();
+		}
+
+		private void load(Page leaf) {
+			this.keys = new ArrayList<V>(leaf.keys);
+			this.data = new ArrayList<D>(leaf.data);
+			this.next = leaf.next;
+			this.at = 0;
+		}
+
+		private void advance() {
+			while ((this.at >= this.keys.size()) && (this.next != NONE)) {
+				synchronized (DiskBPlusTree.this) {
+					this.load(DiskBPlusTree.this.fetch(this.next));
+					DiskBPlusTree.this.trim();
+				}
+			}
+			this.pending = null;
+			if (this.at >= this.keys.size()) return;
+
+			V key = this.keys.get(this.at);
+			if (this.hi != null) {
+				int c = key.compareTo(this.hi);
+				if ((c > 0) || ((c == 0) && !this.hiInclusive)) return;
+			}
+			this.pending = new AbstractMap.SimpleImmutableEntry<V, D>(key, this.data.get(this.at++));
+		}
+
+		public boolean hasNext() { return this.pending != null; }
+
+		public Map.Entry<V, D> next() {
+			if (this.pending == null) throw new NoSuchElementException();
+			Map.Entry<V, D> e = this.pending;
+			this.advance();
+			return e;
+		}
+	}
+
+	/*
+		##########
+		# Print
+		##########
+	*/
+
+	/* In Order */
+
+	public void printInOrder() { System.out.println(this.inOrder()); }
+
+	public String inOrder() {
+		StringBuilder out = new StringBuilder();
+		try {
+			this.writeInOrder(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	public void writeInOrder(Appendable out) throws IOException { this.writeInOrder(out, EntryFormatter.standard()); }
+
+	public void writeInOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException {
+		boolean first = true;
+		for (Map.Entry<V, D> e : this) {
+			if (!first) out.append(' ');
+			format.format(out, e.getKey(), e.getValue());
+			first = false;
+		}
+	}
+
+	/*
+		##########
+		# Cache
+		##########
+	*/
+
+	private Page fetch(int id) {
+		Page at = this.cache.get(id);
+		if (at == null) at = this.cache(this.read(id));
+		at.referenced = true;
+		return at;
+	}
+
+	private Page allocate(boolean leaf) {
+		Page at = new Page(this.pages++, leaf);
+		at.dirty = true;
+		return this.cache(at);
+	}
+
+	private Page cache(Page at) {
+		this.cache.put(at.id, at);
+		this.clock.add(at);
+		return at;
+	}
+
+	// Runs the clock once an operation is done, so no page an operation is still holding goes away under it.
+	// A page referenced since the hand last passed gets another round, the first one that wasn't is evicted.
+
+	private void trim() {
+		while (this.clock.size() > this.cachePages) {
+			if (this.hand >= this.clock.size()) this.hand = 0;
+			Page at = this.clock.get(this.hand);
+			if (at.referenced) {
+				at.referenced = false;
+				this.hand++;
+				continue;
+			}
+
+			if (at.dirty) this.write(at);
+			this.cache.remove(at.id);
+			Page last = this.clock.remove(this.clock.size() - 1);
+			if (last != at) this.clock.set(this.hand, last);
+		}
+	}
+
+	/* Flush */
+
+	// Writes every dirty page and the header, and forces the mapped file to disk.
+
+	public synchronized void flush() throws IOException {
+		for (Page at : this.clock)
+			if (at.dirty) this.write(at);
+
+		ByteBuffer meta = this.page(0);
+		meta.putInt(MAGIC);
+		meta.putShort((short) VERSION);
+		meta.putInt(this.pageSize);
+		meta.putInt(this.root);
+		meta.putInt(this.pages);
+		meta.putInt(this.size);
+		meta.putInt(this.height);
+		for (MappedByteBuffer segment : this.segments)
+			if (segment != null) segment.force();
+	}
+
+	public synchronized void close() throws IOException {
+		if (!this.channel.isOpen()) return;
+		try {
+			this.flush();
+		} finally {
+			this.cache.clear();
+			this.clock.clear();
+			this.segments.clear();
+			this.channel.close();
+		}
+	}
+
+	/*
+		############
+		# Encoding
+		############
+	*/
+
+	// A page is a byte saying whether it is a leaf, the key count, then the next leaf or the first child.
+	// Leaf entries are a key, a byte saying whether data follows, and the data. Inner entries are a key
+	// and the child to its right.
+
+	private Page read(int id) {
+		ByteBuffer in = this.page(id);
+		int start = in.position();
+		boolean leaf = in.get() == 1;
+		int n = in.getShort() & 0xFFFF;
+		Page at = new Page(id, leaf, n + 1);
+
+		if (at.leaf) at.next = in.getInt();
+		else at.children.add(in.getInt());
+		for (int i = 0; i < n; i++) {
+			at.keys.add(this.keys.read(in));
+			if (at.leaf) at.data.add((in.get() == 1) ? this.data.read(in) : null);
+			else at.children.add(in.getInt());
+		}
+		at.bytes = in.position() - start;
+		return at;
+	}
+
+	private void write(Page at) {
+		try {
+			this.scratch.reset();
+			this.out.writeByte(at.leaf ? 1 : 0);
+			this.out.writeShort(at.keys.size());
+			this.out.writeInt(at.leaf ? at.next : at.children.get(0));
+			for (int i = 0; i < at.keys.size(); i++) {
+				this.keys.write(this.out, at.keys.get(i));
+				if (at.leaf) this.writeData(at.data.get(i));
+				else this.out.writeInt(at.children.get(i + 1));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.page(at.id).put(this.scratch.buffer(), 0, this.scratch.size());
+		at.dirty = false;
+	}
+
+	private void writeData(D data) throws IOException {
+		this.out.writeByte((data == null) ? 0 : 1);
+		if (data != null) this.data.write(this.out, data);
+	}
+
+	/* Entry Sizes */
+
+	private int size(Page at, int i) { return at.leaf ? this.entrySize(at.keys.get(i), at.data.get(i)) : this.innerSize(at.keys.get(i)); }
+
+	private int entrySize(V key, D data) {
+		try {
+			this.scratch.reset();
+			this.keys.write(this.out, key);
+			this.writeData(data);
+			return this.scratch.size();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private int innerSize(V key) {
+		try {
+			this.scratch.reset();
+			this.keys.write(this.out, key);
+			return this.scratch.size() + 4;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Small enough that either half of a split page fits, and a separator always fits its parent.
+
+	private int maxEntry() { return (this.pageSize - HEADER) / 4; }
+
+	/* Mapped Pages */
+
+	private ByteBuffer page(int id) {
+		int segment = id / this.pagesPerSegment, offset = (id % this.pagesPerSegment) * this.pageSize;
+		while (this.segments.size() <= segment) this.segments.add(null);
+		MappedByteBuffer mapped = this.segments.get(segment);
+		if ((mapped == null) || (mapped.capacity() < (offset + this.pageSize))) mapped = this.map(segment, offset + this.pageSize);
+
+		ByteBuffer at = mapped.duplicate();
+		at.position(offset);
+		at.limit(offset + this.pageSize);
+		return at;
+	}
+
+	// Maps at least needed bytes of a segment: whatever the file already holds there, or twice the old
+	// mapping, in whole pages and never more than the segment. Pages written through the old mapping are
+	// in the same file, so dropping it loses nothing.
+
+	private MappedByteBuffer map(int segment, long needed) {
+		MappedByteBuffer old = this.segments.get(segment);
+		long start = segment * SEGMENT, current = (old == null) ? 0 : old.capacity();
+		try {
+			long length = Math.max(this.channel.size() - start, 2 * current);
+			length = ((length + this.pageSize - 1) / this.pageSize) * this.pageSize;
+			length = Math.max(needed, Math.min(SEGMENT, length));
+
+			MappedByteBuffer mapped = this.channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+			this.segments.set(segment, mapped);
+			return mapped;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static class Scratch extends ByteArrayOutputStream {
+		private byte[] buffer() { return this.buf; }
+	}
+
+	/*
+		##########
+		# Others
+		##########
+	*/
+
+	/* Is Empty */
+
+	public boolean isEmpty() { return this.size() == 0; }
+
+	public boolean notEmpty() { return this.size() != 0; }
+
+	/* Size */
+
+	public synchronized int size() { return this.size; }
+
+	/* Height */
+
+	public synchronized int height() { return this.height; }
+
+	/* Pages */
+
+	public synchronized int pages() { return this.pages; }
+}
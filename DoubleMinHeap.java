@@ -0,0 +1,172 @@
+import java.util.NoSuchElementException;
+
+// Min heap of double priorities ordered by Double.compare, so -0.0 comes before 0.0 and NaN after
+// everything else. Priorities live in a double[] and data in a parallel Object[], so insert, peek,
+// extractMin and removeMin allocate nothing unless the arrays have to grow. A repeated priority is
+// kept as another entry.
+
+public class DoubleMinHeap<D> {
+
+	private double[] priorities;
+	private Object[] data;
+	private int size = 0;
+
+	public DoubleMinHeap() { this(16); }
+
+	public DoubleMinHeap(int capacity) {
+		this.priorities = new double[Math.max(capacity, 1)];
+		this.data = new Object[this.priorities.length];
+		this.size = 0;
+	}
+
+	/*
+		##########
+		# Peek
+		##########
+	*/
+
+	public synchronized double peekPriority() {
+		if (this.size == 0) throw new NoSuchElementException("Heap is empty");
+		return this.priorities[0];
+	}
+
+	@SuppressWarnings("unchecked")
+	public synchronized D peek() { return (this.size == 0) ? null : (D) this.data[0]; }
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	public boolean insert(double... priorities) {
+		for (int i = 0; i < priorities.length; i++) this.insert(priorities[i], null);
+		return true;
+	}
+
+	public synchronized boolean insert(double priority, D data) {
+		if (this.size == this.priorities.length) this.grow();
+		this.heapifyUp(this.size++, priority, data);
+		return true;
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	public synchronized D extractMin() {
+		if (this.size == 0) return null;
+		@SuppressWarnings("unchecked")
+		D d = (D) this.data[0];
+		this.removeMin();
+		return d;
+	}
+
+	public synchronized boolean removeMin() {
+		if (this.size == 0) return false;
+		int last = --this.size;
+		double priority = this.priorities[last];
+		Object d = this.data[last];
+		this.data[last] = null;
+		if (last > 0) this.heapifyDown(0, priority, d);
+		return true;
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < this.size; i++) this.data[i] = null;
+		this.size = 0;
+	}
+
+	/*
+		###############
+		# Heapify
+		###############
+	*/
+
+	// Both walk a hole instead of swapping, and drop the moving entry in once it has found its place.
+
+	private void heapifyUp(int at, double priority, Object d) {
+		while (at > 0) {
+			int p = (at - 1) >>> 1;
+			if (Double.compare(priority, this.priorities[p]) >= 0) break;
+			this.priorities[at] = this.priorities[p];
+			this.data[at] = this.data[p];
+			at = p;
+		}
+		this.priorities[at] = priority;
+		this.data[at] = d;
+	}
+
+	private void heapifyDown(int at, double priority, Object d) {
+		int half = this.size >>> 1;
+		while (at < half) {
+			int c = (at * 2) + 1, r = c + 1;
+			if ((r < this.size) && (Double.compare(this.priorities[r], this.priorities[c]) < 0)) c = r;
+			if (Double.compare(priority, this.priorities[c]) <= 0) break;
+			this.priorities[at] = this.priorities[c];
+			this.data[at] = this.data[c];
+			at = c;
+		}
+		this.priorities[at] = priority;
+		this.data[at] = d;
+	}
+
+	/*
+		##########
+		# Print
+		##########
+	*/
+
+	/* Show Heap */
+
+	public void showHeap() {
+		if (this.isEmpty()) return;
+		System.out.println("\n---------- Double Min Heap ----------\n");
+		for (int i = 0; i < this.size; i++) {
+			System.out.println("Index " + i + " | Priority " + this.priorities[i] + " -> Data " + this.data[i]);
+		}
+		System.out.println("\n------------------------------\n");
+	}
+
+	/* Vertical Print Tree */
+
+	public void verticalPrint() { this.verticalPrint(0, false, ""); }
+
+	public void verticalPrint(int index, boolean isLeft, String prefix) {
+		if ((index >= 0) && (index < this.size)) {
+			System.out.println(prefix + (isLeft ? "|-- " : "\\-- ") + "[ " + this.priorities[index] + " ]");
+			this.verticalPrint((index * 2) + 1, true, prefix + (isLeft ? "|   " : "    "));
+			this.verticalPrint((index * 2) + 2, false, prefix + (isLeft ? "|   " : "    "));
+		}
+	}
+
+	/*
+		##########
+		# Others
+		##########
+	*/
+
+	/* Is Empty */
+
+	public boolean isEmpty() { return this.size <= 0; }
+
+	public boolean notEmpty() { return this.size > 0; }
+
+	/* Grow */
+
+	private void grow() {
+		int capacity = this.priorities.length + (this.priorities.length >> 1) + 1;
+		double[] priorities = new double[capacity];
+		Object[] data = new Object[capacity];
+		System.arraycopy(this.priorities, 0, priorities, 0, this.size);
+		System.arraycopy(this.data, 0, data, 0, this.size);
+		this.priorities = priorities;
+		this.data = data;
+	}
+
+	/* Size */
+
+	public int size() { return this.size; }
+}
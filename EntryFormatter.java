@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+// Writes one entry of a traversal. The trees call it once per node, in traversal order, and write the
+// separator between entries themselves, so a formatter only has to append its own entry.
+
+@FunctionalInterface
+public interface EntryFormatter<V, D> {
+
+	void format(Appendable out, V value, D data) throws IOException;
+
+	// The format inOrder, preOrder and postOrder have always used: the key alone, or (key | data).
+
+	static <V, D> EntryFormatter<V, D> standard() {
+		return (out, value, data) -> {
+			if (data == null) out.append(String.valueOf(value));
+			else out.append('(').append(String.valueOf(value)).append(" | ").append(data.toString()).append(')');
+		};
+	}
+}
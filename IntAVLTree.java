@@ -0,0 +1,494 @@
+public class IntAVLTree<D> {
+
+	/*
+		####################
+		# Node of the Tree
+		####################
+	*/
+
+	private class Node<D> {
+		protected int value = 0;
+		protected D data = null;
+		protected int height = 1, size = 1;
+		protected Node<D> parent = null, left = null, right = null;
+
+		protected Node(int value) { this(value, null); }
+
+		protected Node(int value, D data) {
+			this.value = value;
+			this.data = data;
+			this.height = this.size = 1;
+			this.parent = this.left = this.right = null;
+		}
+
+		protected Node(int value, D data, Node<D> parent) {
+			this(value, data);
+			this.parent = parent;
+			this.left = this.right = null;
+		}
+
+		/* Data Check */
+
+		protected boolean hasData() { return (this.data != null); }
+
+		protected boolean noData() { return (this.data == null); }
+	}
+
+	private Node<D> root = null;
+
+	public IntAVLTree() { this.root = null; }
+
+	public IntAVLTree(int... values) {
+		this.root = null;
+		this.insert(values);
+	}
+
+	/*
+		###############
+		# Finding Node
+		###############
+	*/
+
+	public boolean has(int... values) {
+		for (int i = 0; i < values.length; i++)
+			if (this.notNull(this.getNode(values[i]))) return true;
+		return false;
+	}
+
+	public D get(int value) {
+		Node<D> at = this.getNode(value);
+		return this.isNull(at) ? null : at.data;
+	}
+
+	/* Get Node */
+
+	private Node<D> getNode(int value) {
+		Node<D> at = this.root;
+		while (this.notNull(at)) {
+			if (value < at.value) at = at.left;
+			else if (value > at.value) at = at.right;
+			else return at;
+		}
+		return null;
+	}
+
+	/* Minimum and Maximum Value Node */
+
+	private Node<D> minNode(Node<D> at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(at.left)) at = at.left;
+		return at;
+	}
+
+	private Node<D> maxNode(Node<D> at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(at.right)) at = at.right;
+		return at;
+	}
+
+	/* Inorder Successor and Predecessor Node */
+
+	private Node<D> getInorderSuccessor(Node<D> at) { return this.minNode(at.right); }
+	private Node<D> getInorderPredecessor(Node<D> at) { return this.maxNode(at.left); }
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	public boolean insert(int... values) {
+		boolean _return = true;
+		for (int i = 0; i < values.length; i++)
+			if (!this.insert(values[i], null)) _return = false;
+		return _return;
+	}
+
+	public synchronized boolean insert(int value, D data) {
+		Node<D> at = this.root, p = null;
+
+		while (this.notNull(at)) {
+			p = at;
+			if (value == at.value) {
+				if (at.data != data) {
+					at.data = data;
+					return true;
+				}
+				return false;
+			}
+			at = (value < at.value) ? at.left : at.right;
+		}
+
+		Node<D> i = new Node<D>(value, data, p);
+		if (this.isNull(p)) this.root = i;
+		else if (value < p.value) p.left = i;
+		else p.right = i;
+
+		this.balanceFrom(p);
+		return true;
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	public synchronized boolean remove(int... values) {
+		boolean _return = true;
+		for (int i = 0; i < values.length; i++) {
+			Node<D> r = this.getNode(values[i]);
+			if (this.isNull(r)) {
+				_return = false;
+				continue;
+			}
+
+			Node<D> from = null;
+
+			if (this.isNull(r.left) || this.isNull(r.right)) {
+				this.transplant(r, this.notNull(r.left) ? r.left : r.right);
+				from = r.parent;
+			} else if (this.height(r.left) > this.height(r.right)) {
+				Node<D> s = this.getInorderPredecessor(r);
+				from = (s.parent == r) ? s : s.parent;
+
+				if (s.parent != r) {
+					s.parent.right = s.left;
+					if (this.notNull(s.parent.right)) s.parent.right.parent = s.parent;
+
+					s.left = r.left;
+					s.left.parent = s;
+				}
+
+				s.right = r.right;
+				s.right.parent = s;
+				this.transplant(r, s);
+			} else {
+				Node<D> s = this.getInorderSuccessor(r);
+				from = (s.parent == r) ? s : s.parent;
+
+				if (s.parent != r) {
+					s.parent.left = s.right;
+					if (this.notNull(s.parent.left)) s.parent.left.parent = s.parent;
+
+					s.right = r.right;
+					s.right.parent = s;
+				}
+
+				s.left = r.left;
+				s.left.parent = s;
+				this.transplant(r, s);
+			}
+
+			r.parent = r.left = r.right = null;
+			if (this.notNull(from)) this.balanceFrom(from);
+			if (!_return) _return = true;
+		}
+		return _return;
+	}
+
+	/* Replace the Subtree at a Node */
+
+	private void transplant(Node<D> at, Node<D> with) {
+		if (this.isNull(at.parent)) this.root = with;
+		else if (at.parent.left == at) at.parent.left = with;
+		else at.parent.right = with;
+		if (this.notNull(with)) with.parent = at.parent;
+	}
+
+	/*
+		###############
+		# BALANCE
+		###############
+	*/
+
+	private int balanceFactor(Node<D> at) {
+		return (this.isNull(at) ? 0 : (this.height(at.left) - this.height(at.right)));
+	}
+
+	private void balanceFrom(Node<D> at) {
+		while (this.notNull(at)) {
+			this.update(at);
+			this.balance(at);
+			at = at.parent;
+		}
+	}
+
+	private void balance(Node<D> at) {
+		if (this.isNull(at)) return;
+		int bf = this.balanceFactor(at);
+
+		if (bf == 2) {
+			int h1 = this.height(at.left.left), h2 = this.height(at.left.right);
+			if (h1 >= h2) this.LeftLeftRotation(at);
+			else this.LeftRightRotation(at);
+		} else if (bf == -2) {
+			int h1 = this.height(at.right.right), h2 = this.height(at.right.left);
+			if (h1 >= h2) this.RightRightRotation(at);
+			else this.RightLeftRotation(at);
+		}
+	}
+
+	/*
+		###############
+		# Rotation
+		###############
+	*/
+
+	private void LeftLeftRotation(Node<D> at) {
+		Node<D> at_left = at.left;
+
+		// Attach Secondary Nodes
+		at.left = at_left.right;
+		if (this.notNull(at.left)) at.left.parent = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_left);
+
+		at_left.right = at;
+		at_left.right.parent = at_left;
+
+		// Update Heights and Sizes
+		this.update(at);
+		this.update(at_left);
+	}
+
+	private void RightRightRotation(Node<D> at) {
+		Node<D> at_right = at.right;
+
+		// Attach Secondary Nodes
+		at.right = at_right.left;
+		if (this.notNull(at.right)) at.right.parent = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_right);
+
+		at_right.left = at;
+		at_right.left.parent = at_right;
+
+		// Update Heights and Sizes
+		this.update(at);
+		this.update(at_right);
+	}
+
+	private void LeftRightRotation(Node<D> at) {
+		Node<D> at_left = at.left,
+						at_left_right = at.left.right;
+
+		// Attach Secondary Nodes
+		at.left = at_left_right.right;
+		if (this.notNull(at.left)) at.left.parent = at;
+
+		at_left.right = at_left_right.left;
+		if (this.notNull(at_left.right)) at_left.right.parent = at_left;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_left_right);
+
+		at_left_right.left = at_left;
+		at_left_right.left.parent = at_left_right;
+
+		at_left_right.right = at;
+		at_left_right.right.parent = at_left_right;
+
+		// Update Heights and Sizes
+		this.update(at_left);
+		this.update(at);
+		this.update(at_left_right);
+	}
+
+	private void RightLeftRotation(Node<D> at) {
+		Node<D> at_right = at.right,
+						at_right_left = at.right.left;
+
+		// Attach Secondary Nodes
+		at.right = at_right_left.left;
+		if (this.notNull(at.right)) at.right.parent = at;
+
+		at_right.left = at_right_left.right;
+		if (this.notNull(at_right.left)) at_right.left.parent = at_right;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_right_left);
+
+		at_right_left.right = at_right;
+		at_right_left.right.parent = at_right_left;
+
+		at_right_left.left = at;
+		at_right_left.left.parent = at_right_left;
+
+		// Update Heights and Sizes
+		this.update(at_right);
+		this.update(at);
+		this.update(at_right_left);
+	}
+
+	/*
+		####################
+		# Order Statistics
+		####################
+	*/
+
+	/* Rank */
+
+	public int rank(int value) { return this.rank(value, false); }
+
+	private int rank(int value, boolean inclusive) {
+		int r = 0;
+		Node<D> at = this.root;
+		while (this.notNull(at)) {
+			if (value < at.value) at = at.left;
+			else if (value > at.value) {
+				r += this.size(at.left) + 1;
+				at = at.right;
+			} else return r + this.size(at.left) + (inclusive ? 1 : 0);
+		}
+		return r;
+	}
+
+	/* Select */
+
+	public int select(int k) {
+		if ((k < 0) || (k >= this.size())) throw new IndexOutOfBoundsException("Index " + k + " | Size " + this.size());
+		Node<D> at = this.root;
+		while (true) {
+			int l = this.size(at.left);
+			if (k < l) at = at.left;
+			else if (k > l) {
+				k -= l + 1;
+				at = at.right;
+			} else return at.value;
+		}
+	}
+
+	/* Count Range */
+
+	public int countRange(int lo, int hi) {
+		if (lo > hi) return 0;
+		return this.rank(hi, true) - this.rank(lo, false);
+	}
+
+	/*
+		##########
+		# Print
+		##########
+	*/
+
+	/* Post Order */
+
+	public void printPostOrder() { System.out.println(this.postOrder()); }
+
+	public String postOrder() { return this.postOrder(this.root); }
+
+	private String postOrder(Node<D> at) {
+		if (this.isNull(at)) return "";
+
+		String d = null;
+		try { d = at.data.toString(); } catch (Exception e) {}
+
+		String v = (d == null) ? Integer.toString(at.value) : ('(' + Integer.toString(at.value) + " | " + d + ')'),
+					 left = this.postOrder(at.left),
+					 right = this.postOrder(at.right);
+
+		if (!right.equals("")) v = right + " " + v;
+		if (!left.equals("")) v = left + " " + v;
+		return v;
+	}
+
+	/* In Order */
+
+	public void printInOrder() { System.out.println(this.inOrder()); }
+
+	public String inOrder() { return this.inOrder(this.root); }
+
+	private String inOrder(Node<D> at) {
+		if (this.isNull(at)) return "";
+
+		String d = null;
+		try { d = at.data.toString(); } catch (Exception e) {}
+
+		String v = (d == null) ? Integer.toString(at.value) : ('(' + Integer.toString(at.value) + " | " + d + ')'),
+					 left = this.inOrder(at.left),
+					 right = this.inOrder(at.right);
+
+		if (!left.equals("")) v = left + " " + v;
+		if (!right.equals("")) v += " " + right;
+		return v;
+	}
+
+	/* Pre Order */
+
+	public void printPreOrder() { System.out.println(this.preOrder()); }
+
+	public String preOrder() { return this.preOrder(this.root); }
+
+	private String preOrder(Node<D> at) {
+		if (this.isNull(at)) return "";
+
+		String d = null;
+		try { d = at.data.toString(); } catch (Exception e) {}
+
+		String v = (d == null) ? Integer.toString(at.value) : ('(' + Integer.toString(at.value) + " | " + d + ')'),
+					 left = this.preOrder(at.left),
+					 right = this.preOrder(at.right);
+
+		if (!left.equals("")) v += " " + left;
+		if (!right.equals("")) v += " " + right;
+		return v;
+	}
+
+	/* Vertical Print Tree */
+
+	public void verticalPrint() { this.verticalPrint(this.root, false, ""); }
+
+	private void verticalPrint(Node<D> node, boolean isLeft, String prefix) {
+		if (this.notNull(node)) {
+			String d = null;
+			try { d = node.data.toString(); } catch (Exception e) {}
+			String s = "[ " + node.value + ((d == null) ? "" : (" | " + d)) + " : " + this.balanceFactor(node) + " ]";
+			System.out.println(prefix + (isLeft ? "|-- " : "\\-- ") + s);
+			this.verticalPrint(node.left, true, prefix + (isLeft ? "|   " : "    "));
+			this.verticalPrint(node.right, false, prefix + (isLeft ? "|   " : "    "));
+		}
+	}
+
+	/*
+		##########
+		# Others
+		##########
+	*/
+
+	/* Is Empty */
+
+	public boolean isEmpty() { return this.root == null; }
+
+	public boolean notEmpty() { return this.root != null; }
+
+	/* Is Null */
+
+	private boolean isNull(Node<D> node) { return (node == null); }
+
+	/* Is not Null */
+
+	private boolean notNull(Node<D> node) { return (node != null); }
+
+	/* Height */
+
+	public int height() { return this.height(this.root); }
+
+	private int height(Node<D> at) { return (this.isNull(at) ? 0 : at.height); }
+
+	/* Size */
+
+	public int size() { return this.size(this.root); }
+
+	private int size(Node<D> at) { return (this.isNull(at) ? 0 : at.size); }
+
+	/* Update Height and Size */
+
+	private void update(Node<D> at) {
+		if (this.isNull(at)) return;
+		at.height = 1 + Math.max(this.height(at.left), this.height(at.right));
+		at.size = 1 + this.size(at.left) + this.size(at.right);
+	}
+}
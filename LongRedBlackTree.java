@@ -0,0 +1,521 @@
+public class LongRedBlackTree<D> {
+
+	/*
+		####################
+		# Node of the Tree
+		####################
+	*/
+
+	private enum Colour { BLACK, RED; }
+
+	private class Node<D> {
+		protected long value = 0;
+		protected Colour colour = Colour.RED;
+		protected D data = null;
+		protected int size = 1;
+		protected Node<D> parent = null, left = null, right = null;
+
+		protected Node(long value) { this(value, null); }
+
+		protected Node(long value, D data) {
+			this.value = value;
+			this.colour = Colour.RED;
+			this.data = data;
+			this.size = 1;
+			this.parent = this.left = this.right = null;
+		}
+
+		protected Node(long value, D data, Node<D> parent) {
+			this(value, data);
+			this.parent = parent;
+			this.left = this.right = null;
+		}
+
+		/* Data Check */
+
+		protected boolean hasData() { return (this.data != null); }
+
+		protected boolean noData() { return (this.data == null); }
+	}
+
+	private Node<D> root = null;
+
+	public LongRedBlackTree() { this.root = null; }
+
+	public LongRedBlackTree(long... values) {
+		this.root = null;
+		this.insert(values);
+	}
+
+	/*
+		###############
+		# Finding Node
+		###############
+	*/
+
+	public boolean has(long... values) {
+		for (int i = 0; i < values.length; i++)
+			if (this.notNull(this.getNode(values[i]))) return true;
+		return false;
+	}
+
+	public D get(long value) {
+		Node<D> at = this.getNode(value);
+		return this.isNull(at) ? null : at.data;
+	}
+
+	/* Get Node */
+
+	private Node<D> getNode(long value) {
+		Node<D> at = this.root;
+		while (this.notNull(at)) {
+			if (value < at.value) at = at.left;
+			else if (value > at.value) at = at.right;
+			else return at;
+		}
+		return null;
+	}
+
+	/* Minimum and Maximum Value Node */
+
+	private Node<D> minNode(Node<D> at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(at.left)) at = at.left;
+		return at;
+	}
+
+	private Node<D> maxNode(Node<D> at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(at.right)) at = at.right;
+		return at;
+	}
+
+	/* Inorder Successor and Predecessor Node */
+
+	private Node<D> getInorderSuccessor(Node<D> at) { return this.minNode(at.right); }
+	private Node<D> getInorderPredecessor(Node<D> at) { return this.maxNode(at.left); }
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	public boolean insert(long... values) {
+		boolean _return = true;
+		for (int i = 0; i < values.length; i++)
+			if (!this.insert(values[i], null)) _return = false;
+		return _return;
+	}
+
+	public synchronized boolean insert(long value, D data) {
+		Node<D> at = this.root, p = null;
+
+		while (this.notNull(at)) {
+			p = at;
+			if (value == at.value) {
+				if (at.data != data) {
+					at.data = data;
+					return true;
+				}
+				return false;
+			}
+			at = (value < at.value) ? at.left : at.right;
+		}
+
+		Node<D> i = new Node<D>(value, data, p);
+		if (this.isNull(p)) this.root = i;
+		else if (value < p.value) p.left = i;
+		else p.right = i;
+
+		for (Node<D> n = p; this.notNull(n); n = n.parent) n.size++;
+
+		this.reColor(i);
+		return true;
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	public synchronized boolean remove(long... values) {
+		boolean _return = true;
+		for (int i = 0; i < values.length; i++) {
+			Node<D> r = this.getNode(values[i]);
+			if (this.isNull(r)) {
+				_return = false;
+				continue;
+			}
+
+			Colour removed = r.colour;
+			Node<D> from = null, from_parent = null;
+
+			if (this.isNull(r.left)) {
+				from = r.right;
+				from_parent = r.parent;
+				this.transplant(r, r.right);
+			} else if (this.isNull(r.right)) {
+				from = r.left;
+				from_parent = r.parent;
+				this.transplant(r, r.left);
+			} else {
+				Node<D> s = this.getInorderSuccessor(r);
+				removed = s.colour;
+				from = s.right;
+
+				if (s.parent == r) from_parent = s;
+				else {
+					from_parent = s.parent;
+					this.transplant(s, s.right);
+					s.right = r.right;
+					s.right.parent = s;
+				}
+
+				this.transplant(r, s);
+				s.left = r.left;
+				s.left.parent = s;
+				s.colour = r.colour;
+			}
+
+			r.parent = r.left = r.right = null;
+			for (Node<D> n = from_parent; this.notNull(n); n = n.parent) this.updateSize(n);
+			if (removed == Colour.BLACK) this.reColorRemoved(from, from_parent);
+		}
+		return _return;
+	}
+
+	/* Replace the Subtree at a Node */
+
+	private void transplant(Node<D> at, Node<D> with) {
+		if (this.isNull(at.parent)) this.root = with;
+		else if (at.parent.left == at) at.parent.left = with;
+		else at.parent.right = with;
+		if (this.notNull(with)) with.parent = at.parent;
+	}
+
+	/*
+		###############
+		# Re-colour
+		###############
+	*/
+
+	private void reColor(Node<D> node) {
+		while (this.notNull(node.parent) && (node.parent.colour == Colour.RED)) {
+			Node<D> parent = node.parent,
+							grandparent = node.parent.parent;
+
+			if (grandparent.left == parent) {
+				Node<D> uncle = grandparent.right;
+
+				if (this.colourOf(uncle) == Colour.RED) {
+					parent.colour = uncle.colour = Colour.BLACK;
+					grandparent.colour = Colour.RED;
+					node = grandparent;
+					continue;
+				}
+
+				if (parent.right == node) {
+					this.rotateLeft(parent);
+					parent = node;
+				}
+				parent.colour = Colour.BLACK;
+				grandparent.colour = Colour.RED;
+				this.rotateRight(grandparent);
+				break;
+			} else {
+				Node<D> uncle = grandparent.left;
+
+				if (this.colourOf(uncle) == Colour.RED) {
+					parent.colour = uncle.colour = Colour.BLACK;
+					grandparent.colour = Colour.RED;
+					node = grandparent;
+					continue;
+				}
+
+				if (parent.left == node) {
+					this.rotateRight(parent);
+					parent = node;
+				}
+				parent.colour = Colour.BLACK;
+				grandparent.colour = Colour.RED;
+				this.rotateLeft(grandparent);
+				break;
+			}
+		}
+		this.root.colour = Colour.BLACK;
+	}
+
+	private void reColorRemoved(Node<D> node, Node<D> parent) {
+		while ((node != this.root) && (this.colourOf(node) == Colour.BLACK)) {
+			if (parent.left == node) {
+				Node<D> sibling = parent.right;
+
+				if (sibling.colour == Colour.RED) {
+					sibling.colour = Colour.BLACK;
+					parent.colour = Colour.RED;
+					this.rotateLeft(parent);
+					sibling = parent.right;
+				}
+
+				if ((this.colourOf(sibling.left) == Colour.BLACK) && (this.colourOf(sibling.right) == Colour.BLACK)) {
+					sibling.colour = Colour.RED;
+					node = parent;
+					parent = node.parent;
+				} else {
+					if (this.colourOf(sibling.right) == Colour.BLACK) {
+						sibling.left.colour = Colour.BLACK;
+						sibling.colour = Colour.RED;
+						this.rotateRight(sibling);
+						sibling = parent.right;
+					}
+					sibling.colour = parent.colour;
+					parent.colour = Colour.BLACK;
+					sibling.right.colour = Colour.BLACK;
+					this.rotateLeft(parent);
+					node = this.root;
+				}
+			} else {
+				Node<D> sibling = parent.left;
+
+				if (sibling.colour == Colour.RED) {
+					sibling.colour = Colour.BLACK;
+					parent.colour = Colour.RED;
+					this.rotateRight(parent);
+					sibling = parent.left;
+				}
+
+				if ((this.colourOf(sibling.left) == Colour.BLACK) && (this.colourOf(sibling.right) == Colour.BLACK)) {
+					sibling.colour = Colour.RED;
+					node = parent;
+					parent = node.parent;
+				} else {
+					if (this.colourOf(sibling.left) == Colour.BLACK) {
+						sibling.right.colour = Colour.BLACK;
+						sibling.colour = Colour.RED;
+						this.rotateLeft(sibling);
+						sibling = parent.left;
+					}
+					sibling.colour = parent.colour;
+					parent.colour = Colour.BLACK;
+					sibling.left.colour = Colour.BLACK;
+					this.rotateRight(parent);
+					node = this.root;
+				}
+			}
+		}
+		if (this.notNull(node)) node.colour = Colour.BLACK;
+	}
+
+	private Colour colourOf(Node<D> node) { return this.isNull(node) ? Colour.BLACK : node.colour; }
+
+	/*
+		###############
+		# Rotation
+		###############
+	*/
+
+	private void rotateLeft(Node<D> at) {
+		Node<D> at_right = at.right;
+
+		// Attach Secondary Nodes
+		at.right = at_right.left;
+		if (this.notNull(at.right)) at.right.parent = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_right);
+
+		at_right.left = at;
+		at_right.left.parent = at_right;
+
+		// Update Sizes
+		this.updateSize(at);
+		this.updateSize(at_right);
+	}
+
+	private void rotateRight(Node<D> at) {
+		Node<D> at_left = at.left;
+
+		// Attach Secondary Nodes
+		at.left = at_left.right;
+		if (this.notNull(at.left)) at.left.parent = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_left);
+
+		at_left.right = at;
+		at_left.right.parent = at_left;
+
+		// Update Sizes
+		this.updateSize(at);
+		this.updateSize(at_left);
+	}
+
+	/*
+		####################
+		# Order Statistics
+		####################
+	*/
+
+	/* Rank */
+
+	public int rank(long value) { return this.rank(value, false); }
+
+	private int rank(long value, boolean inclusive) {
+		int r = 0;
+		Node<D> at = this.root;
+		while (this.notNull(at)) {
+			if (value < at.value) at = at.left;
+			else if (value > at.value) {
+				r += this.size(at.left) + 1;
+				at = at.right;
+			} else return r + this.size(at.left) + (inclusive ? 1 : 0);
+		}
+		return r;
+	}
+
+	/* Select */
+
+	public long select(int k) {
+		if ((k < 0) || (k >= this.size())) throw new IndexOutOfBoundsException("Index " + k + " | Size " + this.size());
+		Node<D> at = this.root;
+		while (true) {
+			int l = this.size(at.left);
+			if (k < l) at = at.left;
+			else if (k > l) {
+				k -= l + 1;
+				at = at.right;
+			} else return at.value;
+		}
+	}
+
+	/* Count Range */
+
+	public int countRange(long lo, long hi) {
+		if (lo > hi) return 0;
+		return this.rank(hi, true) - this.rank(lo, false);
+	}
+
+	/*
+		##########
+		# Print
+		##########
+	*/
+
+	/* Post Order */
+
+	public void printPostOrder() { System.out.println(this.postOrder()); }
+
+	public String postOrder() { return this.postOrder(this.root); }
+
+	private String postOrder(Node<D> at) {
+		if (this.isNull(at)) return "";
+
+		String d = null;
+		try { d = at.data.toString(); } catch (Exception e) {}
+
+		String v = (d == null) ? Long.toString(at.value) : ('(' + Long.toString(at.value) + " | " + d + ')'),
+					 left = this.postOrder(at.left),
+					 right = this.postOrder(at.right);
+
+		if (!right.equals("")) v = right + " " + v;
+		if (!left.equals("")) v = left + " " + v;
+		return v;
+	}
+
+	/* In Order */
+
+	public void printInOrder() { System.out.println(this.inOrder()); }
+
+	public String inOrder() { return this.inOrder(this.root); }
+
+	private String inOrder(Node<D> at) {
+		if (this.isNull(at)) return "";
+
+		String d = null;
+		try { d = at.data.toString(); } catch (Exception e) {}
+
+		String v = (d == null) ? Long.toString(at.value) : ('(' + Long.toString(at.value) + " | " + d + ')'),
+					 left = this.inOrder(at.left),
+					 right = this.inOrder(at.right);
+
+		if (!left.equals("")) v = left + " " + v;
+		if (!right.equals("")) v += " " + right;
+		return v;
+	}
+
+	/* Pre Order */
+
+	public void printPreOrder() { System.out.println(this.preOrder()); }
+
+	public String preOrder() { return this.preOrder(this.root); }
+
+	private String preOrder(Node<D> at) {
+		if (this.isNull(at)) return "";
+
+		String d = null;
+		try { d = at.data.toString(); } catch (Exception e) {}
+
+		String v = (d == null) ? Long.toString(at.value) : ('(' + Long.toString(at.value) + " | " + d + ')'),
+					 left = this.preOrder(at.left),
+					 right = this.preOrder(at.right);
+
+		if (!left.equals("")) v += " " + left;
+		if (!right.equals("")) v += " " + right;
+		return v;
+	}
+
+	/* Vertical Print Tree */
+
+	public void verticalPrint() { this.verticalPrint(this.root, false, ""); }
+
+	private void verticalPrint(Node<D> node, boolean isLeft, String prefix) {
+		if (this.notNull(node)) {
+			String d = null;
+			try { d = node.data.toString(); } catch (Exception e) {}
+			String s = "[ " + node.value + ((d == null) ? "" : (" | " + d)) + " : " + ((node.colour == Colour.BLACK) ? "B" : "R") + " ]";
+			System.out.println(prefix + (isLeft ? "|-- " : "\\-- ") + s);
+			this.verticalPrint(node.left, true, prefix + (isLeft ? "|   " : "    "));
+			this.verticalPrint(node.right, false, prefix + (isLeft ? "|   " : "    "));
+		}
+	}
+
+	/*
+		##########
+		# Others
+		##########
+	*/
+
+	/* Is Empty */
+
+	public boolean isEmpty() { return this.root == null; }
+
+	public boolean notEmpty() { return this.root != null; }
+
+	/* Is Null */
+
+	private boolean isNull(Node<D> node) { return (node == null); }
+
+	/* Is not Null */
+
+	private boolean notNull(Node<D> node) { return (node != null); }
+
+	/* Size */
+
+	public int size() { return this.size(this.root); }
+
+	private int size(Node<D> at) { return (this.isNull(at) ? 0 : at.size); }
+
+	private void updateSize(Node<D> at) {
+		if (this.notNull(at)) at.size = 1 + this.size(at.left) + this.size(at.right);
+	}
+
+	/* Height */
+
+	public int height() { return this.height(this.root); }
+
+	private int height(Node<D> at) {
+		return (this.isNull(at) ? 0 : (1 + Math.max(this.height(at.left), this.height(at.right))));
+	}
+}
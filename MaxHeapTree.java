@@ -1,5 +1,7 @@
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 
 public class MaxHeapTree<V extends Comparable<V>, D> {
 
@@ -34,12 +36,28 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 	}
 
 	private ArrayList<Node<V, D>> heap = new ArrayList<Node<V, D>>();
+	// Where each value sits in heap, kept up to date by every move
+	private HashMap<V, Integer> index = new HashMap<V, Integer>();
+	// Children per node. Wider heaps are shallower, and a node's children sit next to each other,
+	// so heapifyDown takes fewer steps for a few more compares per step.
+	private int arity = 2;
 
-	public MaxHeapTree() { this.heap = new ArrayList<Node<V, D>>(); }
+	public MaxHeapTree() {
+		this.heap = new ArrayList<Node<V, D>>();
+		this.index = new HashMap<V, Integer>();
+	}
 
 	public MaxHeapTree(V... values) {
 		this.heap = new ArrayList<Node<V, D>>();
-		this.insert(values);
+		this.index = new HashMap<V, Integer>();
+		this.addAll(values, null);
+	}
+
+	public static <V extends Comparable<V>, D> MaxHeapTree<V, D> withArity(int arity) {
+		if (arity < 2) throw new IllegalArgumentException("arity must be at least 2");
+		MaxHeapTree<V, D> heap = new MaxHeapTree<V, D>();
+		heap.arity = arity;
+		return heap;
 	}
 
 	/*
@@ -49,20 +67,16 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 	*/
 
 	public boolean has(V... values) {
-		for (int i = 0; i < values.length; i++) {
-			boolean b = true;
-			for (Node<V, D> node : this.heap)
-				if (values[i] == node.value) b = false;
-			if (b) return false;
-		}
+		for (int i = 0; i < values.length; i++)
+			if (!this.index.containsKey(values[i])) return false;
 		return true;
 	}
 
 	/* Get Node */
 
 	private Node<V, D> getNode(V value) {
-		for (Node<V, D> node : this.heap) if (node.value == value) return node;
-		return null;
+		Integer at = this.index.get(value);
+		return (at == null) ? null : this.heap.get(at);
 	}
 
 	/* Maximum and Minimum Value Node */
@@ -98,22 +112,70 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 	}
 
 	public synchronized boolean insert(V value, D data) {
-		Node<V, D> i = new Node<V, D>(value, data);
-		int index = this.getIndex(i);
-		if (this.indexIsValid(index)) {
-			Node<V, D> n = this.heap.get(index);
-			if (n.data != i.data) {
-				n.data = i.data;
-				this.heap.set(index, n);
+		Node<V, D> n = this.getNode(value);
+		if (this.notNull(n)) {
+			if (n.data != data) {
+				n.data = data;
 				return true;
 			}
 			return false;
 		}
-		this.heap.add(i);
+		this.index.put(value, this.heap.size());
+		this.heap.add(new Node<V, D>(value, data));
 		this.heapifyUp(this.lastIndex());
 		return true;
 	}
 
+	/* Add All */
+
+	// Builds a heap from values in O(n), with null data.
+
+	public static <V extends Comparable<V>, D> MaxHeapTree<V, D> heapify(Collection<? extends V> values) {
+		MaxHeapTree<V, D> heap = new MaxHeapTree<V, D>();
+		heap.addAll(values);
+		return heap;
+	}
+
+	public boolean addAll(Collection<? extends V> values) {
+		@SuppressWarnings("unchecked")
+		V[] array = (V[]) values.toArray(new Comparable<?>[values.size()]);
+		return this.addAll(array, null);
+	}
+
+	// Same result as inserting the values one by one, data lined up with values or null.
+	// Duplicates are found through the index and the new nodes appended. Then either each new node
+	// is sifted up, or, when there are enough of them, every parent is sifted down from the last
+	// one (Floyd), which is O(n) for the whole heap.
+
+	public synchronized boolean addAll(V[] values, D[] data) {
+		if ((data != null) && (data.length != values.length)) throw new IllegalArgumentException("values and data differ in length");
+
+		this.heap.ensureCapacity(this.heap.size() + values.length);
+
+		boolean _return = true;
+		int from = this.heap.size();
+		for (int i = 0; i < values.length; i++) {
+			D d = (data == null) ? null : data[i];
+			Integer at = this.index.get(values[i]);
+			if (at != null) {
+				Node<V, D> n = this.heap.get(at);
+				if (n.data != d) n.data = d;
+				else _return = false;
+			} else {
+				this.index.put(values[i], this.heap.size());
+				this.heap.add(new Node<V, D>(values[i], d));
+			}
+		}
+
+		int added = this.heap.size() - from;
+		if ((added * (32 - Integer.numberOfLeadingZeros(this.heap.size()))) < this.heap.size()) {
+			for (int i = from; i < this.heap.size(); i++) this.heapifyUp(i);
+		} else {
+			for (int i = this.parentIndex(this.lastIndex()); i >= 0; i--) this.heapifyDown(i);
+		}
+		return _return;
+	}
+
 	/*
 		##########
 		# Remove
@@ -122,24 +184,57 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 
 	public synchronized boolean remove(V... values) {
 		for (int i = 0; i < values.length; i++) {
-			boolean b = true;
-			for (int x = 0; x < this.heap.size(); x++)
-				if (values[i] == this.heap.get(x).value) {
-					this.heap.set(x, this.heap.get(this.lastIndex()));
-					this.heap.remove(this.heap.size() - 1);
-					this.heapifyDown(x);
-					b = false;
-				}
-			if (b) return false;
+			Integer at = this.index.get(values[i]);
+			if (at == null) return false;
+			this.removeAt(at);
 		}
 		return true;
 	}
 
 	public synchronized boolean removeMax() {
 		if (this.isEmpty()) return false;
-		this.heap.set(0, this.heap.get(this.lastIndex()));
-		this.heap.remove(this.heap.size() - 1);
-		this.heapifyDown(0);
+		this.removeAt(0);
+		return true;
+	}
+
+	// Moves the last node into the hole and sifts it whichever way it needs to go.
+
+	private void removeAt(int at) {
+		Node<V, D> last = this.heap.remove(this.lastIndex());
+		if (at == this.heap.size()) {
+			this.index.remove(last.value);
+			return;
+		}
+
+		this.index.remove(this.heap.get(at).value);
+		this.place(at, last);
+		this.heapifyUp(at);
+		this.heapifyDown(this.index.get(last.value));
+	}
+
+	/*
+		###############
+		# Priority
+		###############
+	*/
+
+	// Change a value in place, keeping its data. Each returns false if value isn't in the heap or
+	// the new value already is, and decreaseKey/increaseKey also if the new value goes the wrong way.
+
+	public boolean decreaseKey(V value, V smaller) { return (smaller.compareTo(value) < 0) && this.updatePriority(value, smaller); }
+
+	public boolean increaseKey(V value, V larger) { return (larger.compareTo(value) > 0) && this.updatePriority(value, larger); }
+
+	public synchronized boolean updatePriority(V value, V to) {
+		Integer at = this.index.get(value);
+		if ((at == null) || this.index.containsKey(to)) return false;
+
+		Node<V, D> n = this.heap.get(at);
+		this.index.remove(value);
+		n.value = to;
+		this.place(at, n);
+		this.heapifyUp(at);
+		this.heapifyDown(this.index.get(to));
 		return true;
 	}
 
@@ -153,9 +248,7 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 		while ((index >= 0) && this.indexIsValid(index)) {
 			int p = this.parentIndex(index);
 			if (this.indexIsValid(p) && (this.heap.get(p).value.compareTo(this.heap.get(index).value) < 0)) {
-				Node<V, D> temp = this.heap.get(index);
-				this.heap.set(index, this.heap.get(p));
-				this.heap.set(p, temp);
+				this.swap(index, p);
 				index = p;
 			} else break;
 		}
@@ -163,19 +256,38 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 
 	private void heapifyDown(int index) {
 		while (index >= 0) {
-			int swapIndex = index, l = this.leftIndex(index), r = this.rightIndex(index);
-			if (this.indexIsValid(l) && (this.heap.get(l).value.compareTo(this.heap.get(index).value) > 0)) swapIndex = l;
-			if (this.indexIsValid(r) && (this.heap.get(r).value.compareTo(this.heap.get(swapIndex).value) > 0)) swapIndex = r;
+			int swapIndex = index, first = this.childIndex(index, 0);
+			if (first < 0) break;
+
+			V best = this.heap.get(index).value;
+			for (int c = first, end = (int) Math.min((long) first + this.arity, this.heap.size()); c < end; c++) {
+				V v = this.heap.get(c).value;
+				if (v.compareTo(best) > 0) {
+					swapIndex = c;
+					best = v;
+				}
+			}
 
 			if (swapIndex != index) {
-				Node<V, D> temp = this.heap.get(index);
-				this.heap.set(index, this.heap.get(swapIndex));
-				this.heap.set(swapIndex, temp);
+				this.swap(index, swapIndex);
 				index = swapIndex;
 			} else break;
 		}
 	}
 
+	/* Move Nodes */
+
+	private void swap(int a, int b) {
+		Node<V, D> temp = this.heap.get(a);
+		this.place(a, this.heap.get(b));
+		this.place(b, temp);
+	}
+
+	private void place(int at, Node<V, D> node) {
+		this.heap.set(at, node);
+		this.index.put(node.value, at);
+	}
+
 	/*
 		##########
 		# Print
@@ -207,11 +319,15 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 		String d = null;
 		try { d = this.heap.get(index).data.toString(); } catch (Exception e) {}
 
-		int li = this.leftIndex(index), ri = this.rightIndex(index);
-
 		String v = (d == null) ? this.heap.get(index).value.toString() : ('(' + this.heap.get(index).value.toString() + " | " + d + ')'),
-					 left = this.postOrder(li),
-					 right = this.postOrder(ri);
+					 left = this.postOrder(this.childIndex(index, 0)),
+					 right = "";
+
+		// Children after the first count as the right side
+		for (int k = 1; k < this.arity; k++) {
+			String c = this.postOrder(this.childIndex(index, k));
+			if (!c.equals("")) right = right.equals("") ? c : (right + " " + c);
+		}
 
 		if (!right.equals("")) v = right + " " + v;
 		if (!left.equals("")) v = left + " " + v;
@@ -232,11 +348,15 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 		String d = null;
 		try { d = this.heap.get(index).data.toString(); } catch (Exception e) {}
 
-		int li = this.leftIndex(index), ri = this.rightIndex(index);
-
 		String v = (d == null) ? this.heap.get(index).value.toString() : ('(' + this.heap.get(index).value.toString() + " | " + d + ')'),
-					 left = this.inOrder(li),
-					 right = this.inOrder(ri);
+					 left = this.inOrder(this.childIndex(index, 0)),
+					 right = "";
+
+		// Children after the first count as the right side
+		for (int k = 1; k < this.arity; k++) {
+			String c = this.inOrder(this.childIndex(index, k));
+			if (!c.equals("")) right = right.equals("") ? c : (right + " " + c);
+		}
 
 		if (!left.equals("")) v = left + " " + v;
 		if (!right.equals("")) v += " " + right;
@@ -257,11 +377,15 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 		String d = null;
 		try { d = this.heap.get(index).data.toString(); } catch (Exception e) {}
 
-		int li = this.leftIndex(index), ri = this.rightIndex(index);
-
 		String v = (d == null) ? this.heap.get(index).value.toString() : ('(' + this.heap.get(index).value.toString() + " | " + d + ')'),
-					 left = this.preOrder(li),
-					 right = this.preOrder(ri);
+					 left = this.preOrder(this.childIndex(index, 0)),
+					 right = "";
+
+		// Children after the first count as the right side
+		for (int k = 1; k < this.arity; k++) {
+			String c = this.preOrder(this.childIndex(index, k));
+			if (!c.equals("")) right = right.equals("") ? c : (right + " " + c);
+		}
 
 		if (!left.equals("")) v += " " + left;
 		if (!right.equals("")) v += " " + right;
@@ -275,6 +399,12 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 	public void print(int index) {
 		if (this.indexNotValid(index)) return;
 
+		// The boxes are laid out for two children
+		if (this.arity != 2) {
+			this.verticalPrint(index, false, "");
+			return;
+		}
+
 		ArrayList<ArrayList<String>> lines = new ArrayList<ArrayList<String>>();
 		ArrayList<Node<V, D>> nodes = new ArrayList<Node<V, D>>(),
 													levels = new ArrayList<Node<V, D>>();
@@ -410,8 +540,8 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 		if (this.indexIsValid(index)) {
 			Node<V, D> node = this.heap.get(index);
 			System.out.println(prefix + (isLeft ? "|-- " : "\\-- ") + "[ " + node.value.toString() + " ]");
-			this.verticalPrint(this.leftIndex(index), true, prefix + (isLeft ? "|   " : "    "));
-			this.verticalPrint(this.rightIndex(index), false, prefix + (isLeft ? "|   " : "    "));
+			for (int k = 0; k < this.arity; k++)
+				this.verticalPrint(this.childIndex(index, k), k < (this.arity - 1), prefix + (isLeft ? "|   " : "    "));
 		}
 	}
 
@@ -475,25 +605,27 @@ public class MaxHeapTree<V extends Comparable<V>, D> {
 
 	private int getIndex(Node<V, D> node) {
 		if (this.isNull(node)) return -1;
-		for (int i = 0; i < this.heap.size(); i++)
-			if (node.value == this.heap.get(i).value) return i;
-		return -1;
+		Integer at = this.index.get(node.value);
+		return (at == null) ? -1 : at;
 	}
 
 	private int lastIndex() { return this.heap.size() - 1; }
 
-	private int parentIndex(int child) { return (child == 0) ? -1 : ((child - 1) / 2); }
-    
-	private int leftIndex(int parentIndex) {
-		int l = (parentIndex * 2) + 1;
-		return (l < this.heap.size()) ? l : -1;
-	}
+	private int parentIndex(int child) { return (child == 0) ? -1 : ((child - 1) / this.arity); }
 
-	private int rightIndex(int parentIndex) {
-		int r = (parentIndex * 2) + 2;
-		return (r < this.heap.size()) ? r : -1;
+	private int childIndex(int parentIndex, int k) {
+		long c = ((long) parentIndex * this.arity) + 1 + k;
+		return (c < this.heap.size()) ? (int) c : -1;
 	}
 
+	private int leftIndex(int parentIndex) { return this.childIndex(parentIndex, 0); }
+
+	private int rightIndex(int parentIndex) { return this.childIndex(parentIndex, 1); }
+
+	/* Arity */
+
+	public int arity() { return this.arity; }
+
 	/* Size */
 
 	public int size() { return this.heap.size(); }
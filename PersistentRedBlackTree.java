@@ -0,0 +1,619 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Red black tree whose nodes never change once built. insert and remove copy only the nodes on the
+// path they walk, O(log n) of them, and share every other subtree with the tree they started from.
+// After Okasaki, "Red-Black Trees in a Functional Setting" (JFP 1999), for insert and Kahrs,
+// "Red-black trees with types" (JFP 2001), for remove.
+//
+// Writers take the monitor, build the new root and publish it with one volatile write. Readers read
+// the root once and walk from there without locking, so they never wait and never see a half done
+// write. snapshot() is that root reference: O(1), and it stays as it was however the tree moves on.
+
+public class PersistentRedBlackTree<V extends Comparable<V>, D> implements Iterable<Map.Entry<V, D>> {
+
+	/*
+		####################
+		# Node of the Tree
+		####################
+	*/
+
+	// Shared between versions, so it has no parent link and no setter.
+
+	private static class Node<V, D> implements Map.Entry<V, D> {
+		protected final V value;
+		protected final D data;
+		protected final boolean red;
+		protected final int size;
+		protected final Node<V, D> left, right;
+
+		protected Node(V value, D data, boolean red, Node<V, D> left, Node<V, D> right) {
+			this.value = value;
+			this.data = data;
+			this.red = red;
+			this.left = left;
+			this.right = right;
+			this.size = 1 + ((left == null) ? 0 : left.size) + ((right == null) ? 0 : right.size);
+		}
+
+		/* Entry */
+
+		public V getKey() { return this.value; }
+
+		public D getValue() { return this.data; }
+
+		public D setValue(D data) { throw new UnsupportedOperationException("tree is immutable"); }
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return ((this.value == null) ? (e.getKey() == null) : this.value.equals(e.getKey()))
+					&& ((this.data == null) ? (e.getValue() == null) : this.data.equals(e.getValue()));
+		}
+
+		public int hashCode() { return ((this.value == null) ? 0 : this.value.hashCode()) ^ ((this.data == null) ? 0 : this.data.hashCode()); }
+
+		public String toString() { return this.value + "=" + this.data; }
+	}
+
+	private volatile Node<V, D> root = null;
+
+	public PersistentRedBlackTree() { this.root = null; }
+
+	public PersistentRedBlackTree(V... values) {
+		this.root = null;
+		this.insert(values);
+	}
+
+	private PersistentRedBlackTree(Node<V, D> root) { this.root = root; }
+
+	/*
+		##############
+		# Snapshot
+		##############
+	*/
+
+	// A tree that starts from the current root. Writes to either one leave the other alone.
+
+	public PersistentRedBlackTree<V, D> snapshot() { return new PersistentRedBlackTree<V, D>(this.root); }
+
+	/*
+		###############
+		# Finding Node
+		###############
+	*/
+
+	public boolean has(V... values) {
+		Node<V, D> root = this.root;
+		for (int i = 0; i < values.length; i++)
+			if (this.notNull(this.getNode(root, values[i]))) return true;
+		return false;
+	}
+
+	public D get(V value) {
+		Node<V, D> at = this.getNode(this.root, value);
+		return this.isNull(at) ? null : at.data;
+	}
+
+	/* Get Node */
+
+	private Node<V, D> getNode(Node<V, D> at, V value) {
+		while (this.notNull(at)) {
+			int c = value.compareTo(at.value);
+			if (c < 0) at = at.left;
+			else if (c > 0) at = at.right;
+			else return at;
+		}
+		return null;
+	}
+
+	/* Minimum and Maximum Value Node */
+
+	private Node<V, D> minNode(Node<V, D> at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(at.left)) at = at.left;
+		return at;
+	}
+
+	private Node<V, D> maxNode(Node<V, D> at) {
+		if (this.isNull(at)) return at;
+		while (this.notNull(at.right)) at = at.right;
+		return at;
+	}
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	// A batch is applied to a private root and published once, so readers see all of it or none of it.
+
+	public synchronized boolean insert(V... values) {
+		boolean _return = true;
+		Node<V, D> root = this.root;
+		for (int i = 0; i < values.length; i++) {
+			Node<V, D> next = this.insert(root, values[i], null);
+			if (next == root) _return = false;
+			root = next;
+		}
+		this.root = root;
+		return _return;
+	}
+
+	public synchronized boolean insert(V value, D data) {
+		Node<V, D> root = this.insert(this.root, value, data);
+		if (root == this.root) return false;
+		this.root = root;
+		return true;
+	}
+
+	// Returns the new root, or the same one when the value is already there with the same data.
+
+	private Node<V, D> insert(Node<V, D> root, V value, D data) {
+		Node<V, D> at = this.getNode(root, value);
+		if (this.notNull(at) && (at.data == data)) return root;
+		return this.blacken(this.insertNode(root, value, data));
+	}
+
+	private Node<V, D> insertNode(Node<V, D> at, V value, D data) {
+		if (this.isNull(at)) return new Node<V, D>(value, data, true, null, null);
+		int c = value.compareTo(at.value);
+		if (c < 0) return this.balanceLeft(at.red, at.value, at.data, this.insertNode(at.left, value, data), at.right);
+		if (c > 0) return this.balanceRight(at.red, at.value, at.data, at.left, this.insertNode(at.right, value, data));
+		return new Node<V, D>(at.value, data, at.red, at.left, at.right);
+	}
+
+	/* Insert Balance */
+
+	// A red child with a red child under a black node becomes a red node over two black ones.
+
+	private Node<V, D> balanceLeft(boolean red, V value, D data, Node<V, D> l, Node<V, D> r) {
+		if (!red && this.isRed(l)) {
+			if (this.isRed(l.left))
+				return this.red(l.value, l.data, this.blacken(l.left), this.black(value, data, l.right, r));
+			if (this.isRed(l.right))
+				return this.red(l.right.value, l.right.data, this.black(l.value, l.data, l.left, l.right.left), this.black(value, data, l.right.right, r));
+		}
+		return new Node<V, D>(value, data, red, l, r);
+	}
+
+	private Node<V, D> balanceRight(boolean red, V value, D data, Node<V, D> l, Node<V, D> r) {
+		if (!red && this.isRed(r)) {
+			if (this.isRed(r.right))
+				return this.red(r.value, r.data, this.black(value, data, l, r.left), this.blacken(r.right));
+			if (this.isRed(r.left))
+				return this.red(r.left.value, r.left.data, this.black(value, data, l, r.left.left), this.black(r.value, r.data, r.left.right, r.right));
+		}
+		return new Node<V, D>(value, data, red, l, r);
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	public synchronized boolean remove(V... values) {
+		boolean _return = true;
+		Node<V, D> root = this.root;
+		for (int i = 0; i < values.length; i++) {
+			if (this.isNull(this.getNode(root, values[i]))) {
+				_return = false;
+				continue;
+			}
+			root = this.blacken(this.removeNode(root, values[i]));
+		}
+		this.root = root;
+		return _return;
+	}
+
+	// Removing from under a black node leaves that side one black short, which balanceShortLeft and
+	// balanceShortRight make up. Only called for a value that is in the tree.
+
+	private Node<V, D> removeNode(Node<V, D> at, V value) {
+		int c = value.compareTo(at.value);
+		if (c < 0) {
+			Node<V, D> l = this.removeNode(at.left, value);
+			return this.isBlack(at.left) ? this.balanceShortLeft(at.value, at.data, l, at.right) : this.red(at.value, at.data, l, at.right);
+		}
+		if (c > 0) {
+			Node<V, D> r = this.removeNode(at.right, value);
+			return this.isBlack(at.right) ? this.balanceShortRight(at.value, at.data, at.left, r) : this.red(at.value, at.data, at.left, r);
+		}
+		return this.join(at.left, at.right);
+	}
+
+	/* Remove Balance */
+
+	private Node<V, D> balanceShortLeft(V value, D data, Node<V, D> l, Node<V, D> r) {
+		if (this.isRed(l)) return this.red(value, data, this.blacken(l), r);
+		if (this.isBlack(r)) return this.balance(value, data, l, this.redden(r));
+		if (this.isRed(r) && this.isBlack(r.left))
+			return this.red(r.left.value, r.left.data, this.black(value, data, l, r.left.left), this.balance(r.value, r.data, r.left.right, this.redden(r.right)));
+		throw new IllegalStateException("Tree is out of balance");
+	}
+
+	private Node<V, D> balanceShortRight(V value, D data, Node<V, D> l, Node<V, D> r) {
+		if (this.isRed(r)) return this.red(value, data, l, this.blacken(r));
+		if (this.isBlack(l)) return this.balance(value, data, this.redden(l), r);
+		if (this.isRed(l) && this.isBlack(l.right))
+			return this.red(l.right.value, l.right.data, this.balance(l.value, l.data, this.redden(l.left), l.right.left), this.black(value, data, l.right.right, r));
+		throw new IllegalStateException("Tree is out of balance");
+	}
+
+	// Builds a black node over l and r, fixing a red child with a red child on either side.
+
+	private Node<V, D> balance(V value, D data, Node<V, D> l, Node<V, D> r) {
+		if (this.isRed(l)) {
+			if (this.isRed(r)) return this.red(value, data, this.blacken(l), this.blacken(r));
+			if (this.isRed(l.left)) return this.red(l.value, l.data, this.blacken(l.left), this.black(value, data, l.right, r));
+			if (this.isRed(l.right))
+				return this.red(l.right.value, l.right.data, this.black(l.value, l.data, l.left, l.right.left), this.black(value, data, l.right.right, r));
+		} else if (this.isRed(r)) {
+			if (this.isRed(r.right)) return this.red(r.value, r.data, this.black(value, data, l, r.left), this.blacken(r.right));
+			if (this.isRed(r.left))
+				return this.red(r.left.value, r.left.data, this.black(value, data, l, r.left.left), this.black(r.value, r.data, r.left.right, r.right));
+		}
+		return this.black(value, data, l, r);
+	}
+
+	/* Join */
+
+	// Joins the two subtrees of a removed node, every value in l being below every value in r.
+
+	private Node<V, D> join(Node<V, D> l, Node<V, D> r) {
+		if (this.isNull(l)) return r;
+		if (this.isNull(r)) return l;
+
+		if (l.red && r.red) {
+			Node<V, D> m = this.join(l.right, r.left);
+			if (this.isRed(m)) return this.red(m.value, m.data, this.red(l.value, l.data, l.left, m.left), this.red(r.value, r.data, m.right, r.right));
+			return this.red(l.value, l.data, l.left, this.red(r.value, r.data, m, r.right));
+		}
+		if (!l.red && !r.red) {
+			Node<V, D> m = this.join(l.right, r.left);
+			if (this.isRed(m)) return this.red(m.value, m.data, this.black(l.value, l.data, l.left, m.left), this.black(r.value, r.data, m.right, r.right));
+			return this.balanceShortLeft(l.value, l.data, l.left, this.black(r.value, r.data, m, r.right));
+		}
+		if (r.red) return this.red(r.value, r.data, this.join(l, r.left), r.right);
+		return this.red(l.value, l.data, l.left, this.join(l.right, r));
+	}
+
+	/*
+		##############
+		# Navigation
+		##############
+	*/
+
+	// Nearest entries to a value in one descent, null if there is none.
+
+	public Map.Entry<V, D> floorEntry(V value) { return this.floorNode(this.root, value, true); }
+
+	public Map.Entry<V, D> lowerEntry(V value) { return this.floorNode(this.root, value, false); }
+
+	public Map.Entry<V, D> ceilingEntry(V value) { return this.ceilingNode(this.root, value, true); }
+
+	public Map.Entry<V, D> higherEntry(V value) { return this.ceilingNode(this.root, value, false); }
+
+	public Map.Entry<V, D> firstEntry() { return this.minNode(this.root); }
+
+	public Map.Entry<V, D> lastEntry() { return this.maxNode(this.root); }
+
+	private Node<V, D> floorNode(Node<V, D> at, V value, boolean inclusive) {
+		Node<V, D> found = null;
+		while (this.notNull(at)) {
+			int c = value.compareTo(at.value);
+			if ((c > 0) || ((c == 0) && inclusive)) {
+				found = at;
+				if (c == 0) return found;
+				at = at.right;
+			} else at = at.left;
+		}
+		return found;
+	}
+
+	private Node<V, D> ceilingNode(Node<V, D> at, V value, boolean inclusive) {
+		Node<V, D> found = null;
+		while (this.notNull(at)) {
+			int c = value.compareTo(at.value);
+			if ((c < 0) || ((c == 0) && inclusive)) {
+				found = at;
+				if (c == 0) return found;
+				at = at.left;
+			} else at = at.right;
+		}
+		return found;
+	}
+
+	/*
+		##############
+		# Iteration
+		##############
+	*/
+
+	// Cursors walk the root they were made from with a stack of the path, O(log n) of state, so an
+	// iteration sees one version of the tree from start to finish whatever writers do meanwhile.
+
+	/* Ranges */
+
+	// Lazy views of the entries between lo and hi. A null bound leaves that end open.
+
+	public Iterable<Map.Entry<V, D>> range(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor(this.root, true, lo, loInclusive, hi, hiInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> descendingRange(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor(this.root, false, hi, hiInclusive, lo, loInclusive);
+	}
+
+	public Iterator<Map.Entry<V, D>> iterator() { return new Cursor(this.root, true, null, true, null, true); }
+
+	public Iterator<Map.Entry<V, D>> descendingIterator() { return new Cursor(this.root, false, null, true, null, true); }
+
+	public Spliterator<Map.Entry<V, D>> spliterator() {
+		Node<V, D> root = this.root;
+		return Spliterators.spliterator(new Cursor(root, true, null, true, null, true), this.size(root), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+	}
+
+	public Stream<Map.Entry<V, D>> stream() { return StreamSupport.stream(this.spliterator(), false); }
+
+	private class Cursor implements Iterator<Map.Entry<V, D>> {
+		private final ArrayDeque<Node<V, D>> path = new ArrayDeque<Node<V, D>>();
+		private boolean ascending = true;
+		// Bound the cursor stops at, null to run to the end of the tree
+		private V stop = null;
+		private boolean stopInclusive = true;
+
+		// Descends to the first node at or past start, keeping the nodes still to be handed out.
+
+		private Cursor(Node<V, D> at, boolean ascending, V start, boolean startInclusive, V stop, boolean stopInclusive) {
+			this.ascending = ascending;
+			this.stop = stop;
+			this.stopInclusive = stopInclusive;
+			while (PersistentRedBlackTree.this.notNull(at)) {
+				int c = (start == null) ? -1 : (ascending ? start.compareTo(at.value) : at.value.compareTo(start));
+				if ((c < 0) || ((c == 0) && startInclusive)) {
+					this.path.push(at);
+					if (c == 0) break;
+					at = ascending ? at.left : at.right;
+				} else at = ascending ? at.right : at.left;
+			}
+		}
+
+		private boolean inBounds(Node<V, D> at) {
+			if (this.stop == null) return true;
+			int c = at.value.compareTo(this.stop);
+			if (!this.ascending) c = -c;
+			return (c < 0) || ((c == 0) && this.stopInclusive);
+		}
+
+		public boolean hasNext() {
+			if (!this.path.isEmpty() && !this.inBounds(this.path.peek())) this.path.clear();
+			return !this.path.isEmpty();
+		}
+
+		public Map.Entry<V, D> next() {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			Node<V, D> at = this.path.pop();
+			for (Node<V, D> n = this.ascending ? at.right : at.left; PersistentRedBlackTree.this.notNull(n); n = this.ascending ? n.left : n.right) this.path.push(n);
+			return at;
+		}
+	}
+
+	/*
+		####################
+		# Order Statistics
+		####################
+	*/
+
+	/* Rank */
+
+	public int rank(V value) { return this.rank(this.root, value, false); }
+
+	private int rank(Node<V, D> at, V value, boolean inclusive) {
+		int r = 0;
+		while (this.notNull(at)) {
+			int c = value.compareTo(at.value);
+			if (c < 0) at = at.left;
+			else if (c > 0) {
+				r += this.size(at.left) + 1;
+				at = at.right;
+			} else return r + this.size(at.left) + (inclusive ? 1 : 0);
+		}
+		return r;
+	}
+
+	/* Select */
+
+	public V select(int k) {
+		Node<V, D> at = this.root;
+		if ((k < 0) || (k >= this.size(at))) return null;
+		while (true) {
+			int l = this.size(at.left);
+			if (k < l) at = at.left;
+			else if (k > l) {
+				k -= l + 1;
+				at = at.right;
+			} else return at.value;
+		}
+	}
+
+	/* Count Range */
+
+	public int countRange(V lo, V hi) {
+		if (lo.compareTo(hi) > 0) return 0;
+		Node<V, D> root = this.root;
+		return this.rank(root, hi, true) - this.rank(root, lo, false);
+	}
+
+	/*
+		##########
+		# Print
+		##########
+	*/
+
+	/* Post Order */
+
+	public void printPostOrder() { System.out.println(this.postOrder()); }
+
+	public String postOrder() { return this.traversal(POST_ORDER); }
+
+	public void writePostOrder(Appendable out) throws IOException { this.writePostOrder(out, EntryFormatter.standard()); }
+
+	public void writePostOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, this.root, POST_ORDER, format); }
+
+	/* In Order */
+
+	public void printInOrder() { System.out.println(this.inOrder()); }
+
+	public String inOrder() { return this.traversal(IN_ORDER); }
+
+	public void writeInOrder(Appendable out) throws IOException { this.writeInOrder(out, EntryFormatter.standard()); }
+
+	public void writeInOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, this.root, IN_ORDER, format); }
+
+	/* Pre Order */
+
+	public void printPreOrder() { System.out.println(this.preOrder()); }
+
+	public String preOrder() { return this.traversal(PRE_ORDER); }
+
+	public void writePreOrder(Appendable out) throws IOException { this.writePreOrder(out, EntryFormatter.standard()); }
+
+	public void writePreOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, this.root, PRE_ORDER, format); }
+
+	/* Write Traversal */
+
+	private static final int PRE_ORDER = 0, IN_ORDER = 1, POST_ORDER = 2;
+
+	private String traversal(int order) {
+		StringBuilder out = new StringBuilder();
+		try {
+			this.write(out, this.root, order, EntryFormatter.standard());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	private void write(Appendable out, Node<V, D> at, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		ArrayDeque<Node<V, D>> stack = new ArrayDeque<Node<V, D>>();
+		boolean first = true;
+
+		if (order == PRE_ORDER) {
+			if (this.notNull(at)) stack.push(at);
+			while (!stack.isEmpty()) {
+				at = stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, at.value, at.data);
+				first = false;
+				if (this.notNull(at.right)) stack.push(at.right);
+				if (this.notNull(at.left)) stack.push(at.left);
+			}
+		} else if (order == IN_ORDER) {
+			while (this.notNull(at) || !stack.isEmpty()) {
+				for (; this.notNull(at); at = at.left) stack.push(at);
+				at = stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, at.value, at.data);
+				first = false;
+				at = at.right;
+			}
+		} else {
+			// A node is written once the walk comes back up from its right subtree, or finds none.
+			Node<V, D> last = null;
+			while (this.notNull(at) || !stack.isEmpty()) {
+				for (; this.notNull(at); at = at.left) stack.push(at);
+				Node<V, D> top = stack.peek();
+				if (this.notNull(top.right) && (top.right != last)) {
+					at = top.right;
+					continue;
+				}
+				stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, top.value, top.data);
+				first = false;
+				last = top;
+			}
+		}
+	}
+
+	/* Vertical Print Tree */
+
+	public void verticalPrint() { this.verticalPrint(this.root, false, ""); }
+
+	private void verticalPrint(Node<V, D> node, boolean isLeft, String prefix) {
+		if (this.notNull(node)) {
+			String d = null;
+			try { d = node.data.toString(); } catch (Exception e) {}
+			String s = "[ " + node.value + ((d == null) ? "" : (" | " + d)) + " : " + (node.red ? "R" : "B") + " ]";
+			System.out.println(prefix + (isLeft ? "|-- " : "\\-- ") + s);
+			this.verticalPrint(node.left, true, prefix + (isLeft ? "|   " : "    "));
+			this.verticalPrint(node.right, false, prefix + (isLeft ? "|   " : "    "));
+		}
+	}
+
+	/*
+		##########
+		# Others
+		##########
+	*/
+
+	/* Is Empty */
+
+	public boolean isEmpty() { return this.root == null; }
+
+	public boolean notEmpty() { return this.root != null; }
+
+	/* Is Null */
+
+	private boolean isNull(Node<V, D> node) { return (node == null); }
+
+	/* Is not Null */
+
+	private boolean notNull(Node<V, D> node) { return (node != null); }
+
+	/* Colour */
+
+	// A missing child counts as black for balancing, but isBlack asks for a real black node.
+
+	private boolean isRed(Node<V, D> node) { return this.notNull(node) && node.red; }
+
+	private boolean isBlack(Node<V, D> node) { return this.notNull(node) && !node.red; }
+
+	private Node<V, D> red(V value, D data, Node<V, D> left, Node<V, D> right) { return new Node<V, D>(value, data, true, left, right); }
+
+	private Node<V, D> black(V value, D data, Node<V, D> left, Node<V, D> right) { return new Node<V, D>(value, data, false, left, right); }
+
+	// Copies a node in the other colour, or returns it if it already has the colour asked for.
+
+	private Node<V, D> blacken(Node<V, D> node) { return (this.isRed(node)) ? this.black(node.value, node.data, node.left, node.right) : node; }
+
+	private Node<V, D> redden(Node<V, D> node) {
+		if (this.isBlack(node)) return this.red(node.value, node.data, node.left, node.right);
+		throw new IllegalStateException("Tree is out of balance");
+	}
+
+	/* Size */
+
+	public int size() { return this.size(this.root); }
+
+	private int size(Node<V, D> at) { return (this.isNull(at) ? 0 : at.size); }
+
+	/* Height */
+
+	public int height() { return this.height(this.root); }
+
+	private int height(Node<V, D> at) {
+		return (this.isNull(at) ? 0 : (1 + Math.max(this.height(at.left), this.height(at.right))));
+	}
+}
@@ -1,7 +1,33 @@
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-
-public class RedBlackTree<V extends Comparable<V>, D> {
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class RedBlackTree<V extends Comparable<V>, D> implements Iterable<Map.Entry<V, D>> {
 
 	/*
 		####################
@@ -11,10 +37,11 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 
 	private enum Colour { BLACK, RED; }
 
-	private class Node<V, D> {
+	private class Node<V, D> implements Map.Entry<V, D> {
 		protected V value = null;
 		protected Colour colour = Colour.RED;
 		protected D data = null;
+		protected int size = 1;
 		protected Node<V, D> parent = null, left = null, right = null;
 
 		protected Node(V value) { this(value, null); }
@@ -23,6 +50,7 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 			this.value = value;
 			this.colour = Colour.RED;
 			this.data = data;
+			this.size = 1;
 			this.parent = this.left = this.right = null;
 		}
 
@@ -43,15 +71,44 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 		protected boolean hasData() { return (this.data != null); }
 
 		protected boolean noData() { return (this.data == null); }
+
+		/* Entry */
+
+		public V getKey() { return this.value; }
+
+		public D getValue() { return this.data; }
+
+		public D setValue(D data) {
+			D old = this.data;
+			this.data = data;
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return ((this.value == null) ? (e.getKey() == null) : this.value.equals(e.getKey()))
+					&& ((this.data == null) ? (e.getValue() == null) : this.data.equals(e.getValue()));
+		}
+
+		public int hashCode() { return ((this.value == null) ? 0 : this.value.hashCode()) ^ ((this.data == null) ? 0 : this.data.hashCode()); }
+
+		public String toString() { return this.value + "=" + this.data; }
 	}
 
 	private Node<V, D> root = null;
+	private final LongAdder comparisons = new LongAdder();
+
+	// Writers hold the write lock. Readers in has() and get() walk the tree without locking and
+	// validate the stamp afterwards, retrying and finally falling back to the read lock if a writer got in.
+	private final StampedLock lock = new StampedLock();
+	private static final int OPTIMISTIC_RETRIES = 3, OPTIMISTIC_DEPTH = 128;
 
 	public RedBlackTree() { this.root = null; }
 
 	public RedBlackTree(V... values) {
 		this.root = null;
-		this.insert(values);
+		this.build(values, null);
 	}
 
 	/*
@@ -62,20 +119,75 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 
 	public boolean has(V... values) {
 		for (int i = 0; i < values.length; i++)
-			if (this.notNull(this.getNode(values[i]))) return true;
+			if (this.contains(values[i])) return true;
 		return false;
 	}
 
+	private boolean contains(V value) {
+		for (int retry = 0; retry < OPTIMISTIC_RETRIES; retry++) {
+			long stamp = this.lock.tryOptimisticRead();
+			if (stamp == 0) continue;
+			try {
+				boolean found = this.notNull(this.readNode(value));
+				if (this.lock.validate(stamp)) return found;
+			} catch (RuntimeException e) {}
+		}
+
+		long stamp = this.lock.readLock();
+		try {
+			return this.notNull(this.getNode(value));
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	public D get(V value) {
+		for (int retry = 0; retry < OPTIMISTIC_RETRIES; retry++) {
+			long stamp = this.lock.tryOptimisticRead();
+			if (stamp == 0) continue;
+			try {
+				Node<V, D> at = this.readNode(value);
+				D data = this.isNull(at) ? null : at.data;
+				if (this.lock.validate(stamp)) return data;
+			} catch (RuntimeException e) {}
+		}
+
+		long stamp = this.lock.readLock();
+		try {
+			Node<V, D> at = this.getNode(value);
+			return this.isNull(at) ? null : at.data;
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/* Optimistic Read */
+
+	// May run alongside a writer, so it bounds its walk.
+	// Anything it returns is only trusted once the stamp validates.
+
+	private Node<V, D> readNode(V value) {
+		Node<V, D> at = this.root;
+		for (int depth = 0; this.notNull(at) && (depth < OPTIMISTIC_DEPTH); depth++) {
+			if (at.value == value) return at;
+			int c = this.compare(value, at.value);
+			if (c < 0) at = at.left;
+			else if (c > 0) at = at.right;
+			else return at;
+		}
+		return null;
+	}
+
 	/* Get Node */
 
 	private Node<V, D> getNode(V value) {
 		Node<V, D> at = this.root;
 		while (this.notNull(at)) {
 			if (at.value == value) return at;
-			int c = value.compareTo(at.value);
+			int c = this.compare(value, at.value);
 			if (c < 0) at = at.left;
 			else if (c > 0) at = at.right;
-			else break;
+			else return at;
 		}
 		return null;
 	}
@@ -99,6 +211,62 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 	private Node<V, D> getInorderSuccessor(Node<V, D> at) { return this.minNode(at.right); }
 	private Node<V, D> getInorderPredecessor(Node<V, D> at) { return this.maxNode(at.left); }
 
+	/* Ceiling and Floor Node */
+
+	// Smallest node above value, or at it when inclusive. Null if there is none.
+
+	private Node<V, D> ceilingNode(V value, boolean inclusive) {
+		Node<V, D> at = this.root, best = null;
+		while (this.notNull(at)) {
+			int c = this.compare(value, at.value);
+			if ((c == 0) && inclusive) return at;
+			if (c < 0) {
+				best = at;
+				at = at.left;
+			} else at = at.right;
+		}
+		return best;
+	}
+
+	// Largest node below value, or at it when inclusive. Null if there is none.
+
+	private Node<V, D> floorNode(V value, boolean inclusive) {
+		Node<V, D> at = this.root, best = null;
+		while (this.notNull(at)) {
+			int c = this.compare(value, at.value);
+			if ((c == 0) && inclusive) return at;
+			if (c > 0) {
+				best = at;
+				at = at.right;
+			} else at = at.left;
+		}
+		return best;
+	}
+
+	/* Next and Previous Node */
+
+	// In order neighbours through the parent links, null past either end.
+
+	private Node<V, D> nextNode(Node<V, D> at) {
+		if (this.notNull(at.right)) return this.minNode(at.right);
+		Node<V, D> p = at.parent;
+		while (this.notNull(p) && (at == p.right)) {
+			at = p;
+			p = p.parent;
+		}
+		return this.isNull(p) ? null : p;
+	}
+
+	private Node<V, D> previousNode(Node<V, D> at) {
+		if (this.notNull(at.left)) return this.maxNode(at.left);
+		Node<V, D> p = at.parent;
+		while (this.notNull(p) && (at == p.left)) {
+			at = p;
+			p = p.parent;
+		}
+		return this.isNull(p) ? null : p;
+	}
+
 	/* Inorder Successor and Predecessor Height */
 
 	private int getInorderSuccessorHeight(Node<V, D> at) {
@@ -132,134 +300,349 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 		return _return;
 	}
 
-	public synchronized boolean insert(V value, D data) {
-		Node<V, D> i = new Node<V, D>(value, data), at = this.root, p = null;
+	public boolean insert(V value, D data) {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.notNull(this.insertBelow(this.root, value, data));
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	// Inserts or updates value under at, the root or a node whose subtree spans value. Returns the node
+	// holding value, or null when it was already there with the same data.
+
+	private Node<V, D> insertBelow(Node<V, D> at, V value, D data) {
+		Node<V, D> p = null;
+		int c = 0;
 
 		while (this.notNull(at)) {
 			p = at;
-			if (at.value == i.value) {
-				if (at.data != i.data) {
-					at.data = i.data;
-					return true;
+			c = (at.value == value) ? 0 : this.compare(value, at.value);
+			if (c == 0) {
+				if (at.data != data) {
+					at.data = data;
+					return at;
 				}
-				return false;
+				return null;
 			}
-			int c = i.value.compareTo(at.value);
 			at = (c < 0) ? at.left : at.right;
 		}
 
+		Node<V, D> i = new Node<V, D>(value, data, p);
 		if (this.isNull(p)) this.root = i;
-		else {
-			int c = i.value.compareTo(p.value);
-			if (c < 0) p.left = i;
-			else p.right = i;
+		else if (c < 0) p.left = i;
+		else p.right = i;
+
+		for (Node<V, D> n = p; this.notNull(n); n = n.parent) n.size++;
+
+		this.reColor(i);
+		return i;
+	}
+
+	/* Insert All */
+
+	// Inserts a batch of keys, data lined up with keys or null, under one write lock. Keys that aren't
+	// strictly ascending are sorted first, and a repeated key keeps its last data. Returns false if any
+	// key was already there with the same data.
+	//
+	// A batch of at least 1/MERGE_RATIO of the tree defers all rebalancing: it is merged with the tree's
+	// nodes in order and relinked balanced once, in O(n + k). A run wholly past either end of the tree is
+	// built on its own and joined on in O(k + log n). Otherwise a batch of at least 1/FINGER_RATIO descends
+	// from the last key it placed instead of from the root, since its keys are close together. A sparser
+	// one gains nothing from the finger and descends from the root.
+
+	private static final int MERGE_RATIO = 4, FINGER_RATIO = 32;
+
+	public boolean insertAll(V[] keys, D[] data) {
+		if ((data != null) && (data.length != keys.length)) throw new IllegalArgumentException("keys and data differ in length");
+		long stamp = this.lock.writeLock();
+		try {
+			int[] order = this.sortedOrder(keys);
+			int n = (order == null) ? keys.length : order.length;
+
+			if (((long) n * MERGE_RATIO) >= this.size()) return this.merge(keys, data, order, n);
+			if ((n > 0) && this.joinRun(keys, data, order, n)) return true;
+			boolean close = ((long) n * FINGER_RATIO) >= this.size();
+
+			boolean _return = true;
+			Node<V, D> finger = null;
+			for (int j = 0; j < n; j++) {
+				int i = (order == null) ? j : order[j];
+				Node<V, D> at = this.insertBelow(close ? this.fingerFor(finger, keys[i]) : this.root, keys[i], (data == null) ? null : data[i]);
+				if (this.isNull(at)) _return = false;
+				else finger = at;
+			}
+			return _return;
+		} finally {
+			this.lock.unlockWrite(stamp);
 		}
-		i.parent = p;
+	}
+
+	// Lowest node from the finger up whose subtree spans value, which comes after the finger's value.
+	// A subtree reached through right links ends where the first left link above it does.
+
+	private Node<V, D> fingerFor(Node<V, D> finger, V value) {
+		if (this.isNull(finger)) return this.root;
+		Node<V, D> at = finger;
+		while (true) {
+			Node<V, D> n = at, p = at.parent;
+			while (this.notNull(p) && (p.right == n)) {
+				n = p;
+				p = p.parent;
+			}
+			if (this.isNull(p) || (this.compare(value, p.value) < 0)) return at;
+			at = p;
+		}
+	}
+
+	/*
+		##############
+		# Bulk Build
+		##############
+	*/
+
+	// Builds a perfectly balanced tree in O(n) from keys in ascending order, data lined up with keys or null.
+	// Input that isn't strictly ascending is sorted first, and a repeated key keeps its last data like insert would.
+
+	public static <V extends Comparable<V>, D> RedBlackTree<V, D> fromSorted(V[] keys, D[] data) {
+		RedBlackTree<V, D> tree = new RedBlackTree<V, D>();
+		tree.build(keys, data);
+		return tree;
+	}
+
+	private void build(V[] keys, D[] data) {
+		if ((data != null) && (data.length != keys.length)) throw new IllegalArgumentException("keys and data differ in length");
+		int[] order = this.sortedOrder(keys);
+		int n = (order == null) ? keys.length : order.length;
+		this.root = this.build(keys, data, order, 0, n - 1, null, 0, this.redDepth(order == null ? keys.length : order.length));
+	}
+
+	// Middle key becomes the root of each range, so every level but the last is full.
+	// Only the last level is red, and only when it isn't full, so every path has the same black height.
+
+	private Node<V, D> build(V[] keys, D[] data, int[] order, int lo, int hi, Node<V, D> parent, int depth, int red) {
+		if (lo > hi) return null;
+		int mid = (lo + hi) >>> 1, i = (order == null) ? mid : order[mid];
 
-		this.reColor(i.value);
+		Node<V, D> at = new Node<V, D>(keys[i], (data == null) ? null : data[i], parent);
+		at.colour = (depth == red) ? Colour.RED : Colour.BLACK;
+		at.left = this.build(keys, data, order, lo, mid - 1, at, depth + 1, red);
+		at.right = this.build(keys, data, order, mid + 1, hi, at, depth + 1, red);
+		this.updateSize(at);
+		return at;
+	}
+
+	// Lays the tree's nodes and the batch out in order, updating the nodes the batch repeats, and
+	// relinks them like build, so entries already handed out stay the tree's nodes.
+
+	private boolean merge(V[] keys, D[] data, int[] order, int n) {
+		@SuppressWarnings("unchecked")
+		Node<V, D>[] nodes = (Node<V, D>[]) new RedBlackTree<?, ?>.Node<?, ?>[this.size() + n];
+		boolean _return = true;
+		Node<V, D> at = this.minNode(this.root);
+		int m = 0;
+
+		for (int j = 0; j < n; j++) {
+			int i = (order == null) ? j : order[j], c = 1;
+			D d = (data == null) ? null : data[i];
+			while (this.notNull(at) && ((c = this.compare(keys[i], at.value)) > 0)) {
+				nodes[m++] = at;
+				at = this.nextNode(at);
+			}
+			if (this.notNull(at) && (c == 0)) {
+				if (at.data == d) _return = false;
+				at.data = d;
+				nodes[m++] = at;
+				at = this.nextNode(at);
+			} else nodes[m++] = new Node<V, D>(keys[i], d);
+		}
+		for (; this.notNull(at); at = this.nextNode(at)) nodes[m++] = at;
+
+		this.root = this.relink(nodes, 0, m - 1, null, 0, this.redDepth(m));
+		return _return;
+	}
+
+	private Node<V, D> relink(Node<V, D>[] nodes, int lo, int hi, Node<V, D> parent, int depth, int red) {
+		if (lo > hi) return null;
+		int mid = (lo + hi) >>> 1;
+		Node<V, D> at = nodes[mid];
+		at.parent = parent;
+		at.colour = (depth == red) ? Colour.RED : Colour.BLACK;
+		at.left = this.relink(nodes, lo, mid - 1, at, depth + 1, red);
+		at.right = this.relink(nodes, mid + 1, hi, at, depth + 1, red);
+		this.updateSize(at);
+		return at;
+	}
+
+	/* Join */
+
+	// Builds a run that lies wholly past either end of the tree into a tree of its own, and joins the two
+	// through the run's first or last key. Returns false, having done nothing, for any other batch.
+
+	private boolean joinRun(V[] keys, D[] data, int[] order, int n) {
+		int first = (order == null) ? 0 : order[0], last = (order == null) ? (n - 1) : order[n - 1];
+		boolean after = this.compare(keys[first], this.maxNode(this.root).value) > 0;
+		if (!after && (this.compare(keys[last], this.minNode(this.root).value) >= 0)) return false;
+
+		int p = after ? first : last;
+		Node<V, D> pivot = new Node<V, D>(keys[p], (data == null) ? null : data[p]);
+		Node<V, D> run = after ? this.build(keys, data, order, 1, n - 1, null, 0, this.redDepth(n - 1)) : this.build(keys, data, order, 0, n - 2, null, 0, this.redDepth(n - 1));
+		if (after) this.join(this.root, pivot, run);
+		else this.join(run, pivot, this.root);
 		return true;
 	}
 
+	// Every value in l is below the pivot and every value in r above it. The pivot goes in red down the
+	// spine of the taller tree, in place of the first black node as black high as the other tree, which
+	// keeps every black height, and reColor fixes a red parent like after an insert.
+
+	private void join(Node<V, D> l, Node<V, D> pivot, Node<V, D> r) {
+		int hl = this.blackHeight(l), hr = this.blackHeight(r);
+		Node<V, D> at, p = null;
+
+		if (hl >= hr) {
+			for (at = l; (hl > hr) || (this.colourOf(at) == Colour.RED); at = at.right) {
+				if (this.colourOf(at) == Colour.BLACK) hl--;
+				p = at;
+			}
+			pivot.left = at;
+			pivot.right = r;
+			if (this.notNull(p)) p.right = pivot;
+			this.root = this.isNull(p) ? pivot : l;
+		} else {
+			for (at = r; (hr > hl) || (this.colourOf(at) == Colour.RED); at = at.left) {
+				if (this.colourOf(at) == Colour.BLACK) hr--;
+				p = at;
+			}
+			pivot.left = l;
+			pivot.right = at;
+			if (this.notNull(p)) p.left = pivot;
+			this.root = this.isNull(p) ? pivot : r;
+		}
+
+		this.root.parent = null;
+		pivot.parent = p;
+		pivot.colour = Colour.RED;
+		if (this.notNull(pivot.left)) pivot.left.parent = pivot;
+		if (this.notNull(pivot.right)) pivot.right.parent = pivot;
+		for (Node<V, D> n = pivot; this.notNull(n); n = n.parent) this.updateSize(n);
+
+		this.reColor(pivot);
+	}
+
+	// Black nodes from at down to a leaf, the same down every path.
+
+	private int blackHeight(Node<V, D> at) {
+		int h = 0;
+		for (; this.notNull(at); at = at.left)
+			if (at.colour == Colour.BLACK) h++;
+		return h;
+	}
+
+	// Null if keys are already strictly ascending, otherwise the indexes of the keys in ascending order
+	// with only the last of each repeated key kept.
+
+	private int[] sortedOrder(final V[] keys) {
+		int i = 1;
+		while ((i < keys.length) && (this.compare(keys[i - 1], keys[i]) < 0)) i++;
+		if (i >= keys.length) return null;
+
+		Integer[] sorted = new Integer[keys.length];
+		for (i = 0; i < keys.length; i++) sorted[i] = i;
+		// Stable, so equal keys stay in input order
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) { return RedBlackTree.this.compare(keys[a], keys[b]); }
+		});
+
+		int[] order = new int[keys.length];
+		int n = 0;
+		for (i = 0; i < sorted.length; i++) {
+			if ((n > 0) && (this.compare(keys[order[n - 1]], keys[sorted[i]]) == 0)) order[n - 1] = sorted[i];
+			else order[n++] = sorted[i];
+		}
+		return Arrays.copyOf(order, n);
+	}
+
+	// Depth of the last level if it isn't full, otherwise -1.
+
+	private int redDepth(int n) {
+		int full = 31 - Integer.numberOfLeadingZeros(n + 1);
+		return ((n + 1) == (1 << full)) ? -1 : full;
+	}
+
 	/*
 		##########
 		# Remove
 		##########
 	*/
 
-	public synchronized boolean remove(V... values) {
-		boolean _return = true;
-		for (int i = 0; i < values.length; i++) {
-			if (this.height(this.root) <= 1) {
-				this.root = null;
-				break;
-			} else {
+	public boolean remove(V... values) {
+		long stamp = this.lock.writeLock();
+		try {
+			boolean _return = true;
+			for (int i = 0; i < values.length; i++) {
 				Node<V, D> r = this.getNode(values[i]);
 				if (this.isNull(r)) {
 					_return = false;
 					continue;
 				}
 
-				int c = this.notNull(r.parent) ? r.value.compareTo(r.parent.value) : 0;
-				Node<V, D> from = null;
-
-				if (this.isNull(r.left) && this.isNull(r.right)) {
-					if (this.root == r) this.root = null;
-					if (c < 0) r.parent.left = null;
-					else r.parent.right = null;
-					from = r.parent;
-				} else if (this.notNull(r.left) && this.isNull(r.right)) {
-					if (this.root == r) this.root = r.left;
-					r.left.parent = r.parent;
-					if (this.notNull(r.parent)) {
-						if (c < 0) r.parent.left = r.left;
-						else r.parent.right = r.left;
-					}
-					from = r.left;
-				} else if (this.isNull(r.left) && this.notNull(r.right)) {
-					if (this.root == r) this.root = r.right;
-					r.right.parent = r.parent;
-					if (this.notNull(r.parent)) {
-						if (c < 0) r.parent.left = r.right;
-						else r.parent.right = r.right;
-					}
-					from = r.right;
-				} else if (this.notNull(r.left) && this.notNull(r.right)) {
-					if (this.getInorderPredecessorHeight(r.left) > this.getInorderSuccessorHeight(r.right)) {
-						Node<V, D> s = this.getInorderPredecessor(r);
-
-						if (this.root == r) this.root = s;
-
-						if (s.parent != r) {
-							s.parent.right = s.left;
-							if (this.notNull(s.parent.right)) s.parent.right.parent = s.parent;
-						}
-
-						s.parent = r.parent;
-						if (this.notNull(s.parent)) {
-							c = s.value.compareTo(s.parent.value);
-							if (c < 0) s.parent.left = s;
-							else s.parent.right = s;
-						}
-
-						if (s != r.left) {
-							s.left = r.left;
-							s.left.parent = s;
-						}
-
-						s.right = r.right;
-						if (this.notNull(s.right)) s.right.parent = s;
-						from = this.notNull(r.left) ? r.left : s;
-					} else {
-						Node<V, D> s = this.getInorderSuccessor(r);
-
-						if (this.root == r) this.root = s;
-
-						if (s.parent != r) {
-							s.parent.left = s.right;
-							if (this.notNull(s.parent.left)) s.parent.left.parent = s.parent;
-						}
-
-						s.parent = r.parent;
-						if (this.notNull(s.parent)) {
-							c = s.value.compareTo(s.parent.value);
-							if (c < 0) s.parent.left = s;
-							else s.parent.right = s;
-						}
-
-						if (s != r.right) {
-							s.right = r.right;
-							s.right.parent = s;
-						}
-
-						s.left = r.left;
-						if (this.notNull(s.left)) s.left.parent = s;
-						from = this.notNull(r.right) ? r.right : s;
-					}
-				}
-				this.reColor(from.value);
+				this.removeNode(r);
 			}
+			return _return;
+		} finally {
+			this.lock.unlockWrite(stamp);
 		}
-		return _return;
+	}
+
+	/* Remove Node */
+
+	// Unlinks a node already found and fixes the tree up from where it was taken out.
+
+	private void removeNode(Node<V, D> r) {
+		Colour removed = r.colour;
+		Node<V, D> from = null, from_parent = null;
+
+		if (this.isNull(r.left)) {
+			from = r.right;
+			from_parent = r.parent;
+			this.transplant(r, r.right);
+		} else if (this.isNull(r.right)) {
+			from = r.left;
+			from_parent = r.parent;
+			this.transplant(r, r.left);
+		} else {
+			Node<V, D> s = this.getInorderSuccessor(r);
+			removed = s.colour;
+			from = s.right;
+
+			if (s.parent == r) from_parent = s;
+			else {
+				from_parent = s.parent;
+				this.transplant(s, s.right);
+				s.right = r.right;
+				s.right.parent = s;
+			}
+
+			this.transplant(r, s);
+			s.left = r.left;
+			s.left.parent = s;
+			s.colour = r.colour;
+		}
+
+		r.parent = r.left = r.right = null;
+		for (Node<V, D> n = from_parent; this.notNull(n); n = n.parent) this.updateSize(n);
+		if (removed == Colour.BLACK) this.reColorRemoved(from, from_parent);
+	}
+
+	/* Replace the Subtree at a Node */
+
+	private void transplant(Node<V, D> at, Node<V, D> with) {
+		if (this.isNull(at.parent)) this.root = with;
+		else if (at.parent.left == at) at.parent.left = with;
+		else at.parent.right = with;
+		if (this.notNull(with)) with.parent = at.parent;
 	}
 
 	/*
@@ -268,78 +651,124 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 		###############
 	*/
 
-	private synchronized void reColor(V value) {
-		Node<V, D> node = this.getNode(value);
-
-		while (this.notNull(node) && this.notNull(node.parent) && (node.parent.colour == Colour.RED)) {
-
-			if (this.notNull(node.parent.parent)) {
-				Node<V, D> uncle = null;
-
-				if (this.notNull(node.parent.parent.left) && (node.parent.parent.left != node.parent))
-					uncle = node.parent.parent.left;
-				else if (this.notNull(node.parent.parent.right) && (node.parent.parent.right != node.parent))
-					uncle = node.parent.parent.right;
-
-				if (this.isNull(uncle)) {
-					if (
-						this.notNull(node.parent.parent.left) &&
-						(node.parent.left == node) && (node.parent.parent.left == node.parent)
-					) {
-						this.LeftLeftRotation(node.value);
-						node = node.parent;
-					} else if (
-						this.notNull(node.parent.parent.right) &&
-						(node.parent.right == node) && (node.parent.parent.right == node.parent)
-					) {
-						this.RightRightRotation(node.value);
-						node = node.parent;
-					} else if (
-						this.notNull(node.parent.right, node.parent.parent.left) &&
-						(node.parent.right == node) && (node.parent.parent.left == node.parent)
-					) {
-						this.LeftRightRotation(node.value);
-					} else if (
-						this.notNull(node.parent.left, node.parent.parent.right) &&
-						(node.parent.left == node) && (node.parent.parent.right == node.parent)
-					) {
-						this.RightLeftRotation(node.value);
-					} else continue;
+	private void reColor(Node<V, D> node) {
+		while (this.notNull(node.parent) && (node.parent.colour == Colour.RED)) {
+			Node<V, D> parent = node.parent,
+								 grandparent = node.parent.parent;
+
+			if (grandparent.left == parent) {
+				Node<V, D> uncle = grandparent.right;
 
+				if (this.colourOf(uncle) == Colour.RED) {
+					parent.colour = uncle.colour = Colour.BLACK;
+					grandparent.colour = Colour.RED;
+					node = grandparent;
+					continue;
+				}
+
+				if (parent.right == node) {
+					this.LeftRightRotation(node);
 					node.colour = Colour.BLACK;
-					node.left.colour = Colour.RED;
-					node.right.colour = Colour.RED;
-					node = node.parent;
-				} else if (uncle.colour == Colour.BLACK) {
-					if (uncle == node.parent.parent.left) {
-						this.RightRightRotation(node.value);
-						node.parent.left.colour = Colour.RED;
-					} else if (uncle == node.parent.parent.right) {
-						this.LeftLeftRotation(node.value);
-						node.parent.right.colour = Colour.RED;
-					}
-					node.parent.colour = Colour.BLACK;
-					node = node.parent;
-				} else if (uncle.colour == Colour.RED) {
-					node.parent.colour = Colour.BLACK;
-					uncle.colour = Colour.BLACK;
+				} else {
+					this.LeftLeftRotation(node);
+					parent.colour = Colour.BLACK;
+				}
+				grandparent.colour = Colour.RED;
+				break;
+			} else {
+				Node<V, D> uncle = grandparent.left;
+
+				if (this.colourOf(uncle) == Colour.RED) {
+					parent.colour = uncle.colour = Colour.BLACK;
+					grandparent.colour = Colour.RED;
+					node = grandparent;
+					continue;
+				}
 
-					if (node.parent.parent != this.root) node.parent.parent.colour = Colour.RED;
-					node = node.parent.parent;
-				} else node = node.parent;
-			} else node = node.parent;
+				if (parent.left == node) {
+					this.RightLeftRotation(node);
+					node.colour = Colour.BLACK;
+				} else {
+					this.RightRightRotation(node);
+					parent.colour = Colour.BLACK;
+				}
+				grandparent.colour = Colour.RED;
+				break;
+			}
 		}
 		this.root.colour = Colour.BLACK;
 	}
 
+	private void reColorRemoved(Node<V, D> node, Node<V, D> parent) {
+		while ((node != this.root) && (this.colourOf(node) == Colour.BLACK)) {
+			if (parent.left == node) {
+				Node<V, D> sibling = parent.right;
+
+				if (sibling.colour == Colour.RED) {
+					sibling.colour = Colour.BLACK;
+					parent.colour = Colour.RED;
+					this.rotateLeft(parent);
+					sibling = parent.right;
+				}
+
+				if ((this.colourOf(sibling.left) == Colour.BLACK) && (this.colourOf(sibling.right) == Colour.BLACK)) {
+					sibling.colour = Colour.RED;
+					node = parent;
+					parent = node.parent;
+				} else {
+					if (this.colourOf(sibling.right) == Colour.BLACK) {
+						sibling.left.colour = Colour.BLACK;
+						sibling.colour = Colour.RED;
+						this.rotateRight(sibling);
+						sibling = parent.right;
+					}
+					sibling.colour = parent.colour;
+					parent.colour = Colour.BLACK;
+					sibling.right.colour = Colour.BLACK;
+					this.rotateLeft(parent);
+					node = this.root;
+				}
+			} else {
+				Node<V, D> sibling = parent.left;
+
+				if (sibling.colour == Colour.RED) {
+					sibling.colour = Colour.BLACK;
+					parent.colour = Colour.RED;
+					this.rotateRight(parent);
+					sibling = parent.left;
+				}
+
+				if ((this.colourOf(sibling.left) == Colour.BLACK) && (this.colourOf(sibling.right) == Colour.BLACK)) {
+					sibling.colour = Colour.RED;
+					node = parent;
+					parent = node.parent;
+				} else {
+					if (this.colourOf(sibling.left) == Colour.BLACK) {
+						sibling.right.colour = Colour.BLACK;
+						sibling.colour = Colour.RED;
+						this.rotateLeft(sibling);
+						sibling = parent.left;
+					}
+					sibling.colour = parent.colour;
+					parent.colour = Colour.BLACK;
+					sibling.left.colour = Colour.BLACK;
+					this.rotateRight(parent);
+					node = this.root;
+				}
+			}
+		}
+		if (this.notNull(node)) node.colour = Colour.BLACK;
+	}
+
+	private Colour colourOf(Node<V, D> node) { return this.isNull(node) ? Colour.BLACK : node.colour; }
+
 	/*
 		###############
 		# Rotation
 		###############
 	*/
 
-	private synchronized void LeftLeftRotation(V value) {
-		Node<V, D> at = this.getNode(value);
+	private void LeftLeftRotation(Node<V, D> at) {
 		if (this.isNull(at) || this.isNull(at.parent, at.parent.parent)) return;
 
 		Node<V, D> at_parent = at.parent,
@@ -360,10 +789,13 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 		at_parent.right.parent = at_parent;
 
 		if (this.root == at_grandparent) this.root = at_parent;
+
+		// Update Sizes
+		this.updateSize(at_grandparent);
+		this.updateSize(at_parent);
 	}
 
-	private synchronized void RightRightRotation(V value) {
-		Node<V, D> at = this.getNode(value);
+	private void RightRightRotation(Node<V, D> at) {
 		if (this.isNull(at) || this.isNull(at.parent, at.parent.parent)) return;
 
 		Node<V, D> at_parent = at.parent,
@@ -384,10 +816,13 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 		at_parent.left.parent = at_parent;
 
 		if (this.root == at_grandparent) this.root = at_parent;
+
+		// Update Sizes
+		this.updateSize(at_grandparent);
+		this.updateSize(at_parent);
 	}
 
-	private synchronized void LeftRightRotation(V value) {
-		Node<V, D> at = this.getNode(value);
+	private void LeftRightRotation(Node<V, D> at) {
 		if (this.isNull(at) || this.isNull(at.parent, at.parent.parent)) return;
 
 		Node<V, D> at_parent = at.parent,
@@ -414,10 +849,14 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 		at.right.parent = at;
 
 		if (this.root == at_grandparent) this.root = at;
+
+		// Update Sizes
+		this.updateSize(at_parent);
+		this.updateSize(at_grandparent);
+		this.updateSize(at);
 	}
 
-	private synchronized void RightLeftRotation(V value) {
-		Node<V, D> at = this.getNode(value);
+	private void RightLeftRotation(Node<V, D> at) {
 		if (this.isNull(at) || this.isNull(at.parent, at.parent.parent)) return;
 
 		Node<V, D> at_parent = at.parent,
@@ -444,6 +883,414 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 		at.left.parent = at;
 
 		if (this.root == at_grandparent) this.root = at;
+
+		// Update Sizes
+		this.updateSize(at_parent);
+		this.updateSize(at_grandparent);
+		this.updateSize(at);
+	}
+
+	/* Single Rotations */
+
+	private void rotateLeft(Node<V, D> at) {
+		Node<V, D> at_right = at.right;
+
+		// Attach Secondary Nodes
+		at.right = at_right.left;
+		if (this.notNull(at.right)) at.right.parent = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_right);
+
+		at_right.left = at;
+		at_right.left.parent = at_right;
+
+		// Update Sizes
+		this.updateSize(at);
+		this.updateSize(at_right);
+	}
+
+	private void rotateRight(Node<V, D> at) {
+		Node<V, D> at_left = at.left;
+
+		// Attach Secondary Nodes
+		at.left = at_left.right;
+		if (this.notNull(at.left)) at.left.parent = at;
+
+		// Attach Primary Nodes
+		this.transplant(at, at_left);
+
+		at_left.right = at;
+		at_left.right.parent = at_left;
+
+		// Update Sizes
+		this.updateSize(at);
+		this.updateSize(at_left);
+	}
+
+	/*
+		############
+		# Snapshot
+		############
+	*/
+
+	// A snapshot is a magic number, a format version, the kind of tree and the entry count, then every
+	// node in pre order as a byte saying which children it has, whether it has data and its colour, followed
+	// by its key and data. Colours are stored, so nothing is recoloured or rotated on load.
+	// The file is written next to path, forced to disk, moved over it, and the directory forced after.
+
+	private static final int SNAPSHOT_MAGIC = 0x54524545, SNAPSHOT_VERSION = 1, SNAPSHOT_KIND = 2, SNAPSHOT_DEPTH = 128;
+	private static final int SNAPSHOT_LEFT = 1, SNAPSHOT_RIGHT = 2, SNAPSHOT_DATA = 4, SNAPSHOT_BLACK = 8;
+
+	public void writeSnapshot(Path path, Serializer<? super V> keys, Serializer<? super D> data) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		long stamp = this.lock.readLock();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeShort(SNAPSHOT_VERSION);
+			out.writeByte(SNAPSHOT_KIND);
+			out.writeInt(this.size());
+			if (this.notNull(this.root)) this.writeSnapshot(out, this.root, keys, data);
+			out.flush();
+			channel.force(true);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(path);
+	}
+
+	// Forces the directory holding path, so the rename survives a crash as well as the file. Windows
+	// can't open a directory as a channel, and there the rename is left to the file system.
+
+	private static void syncDirectory(Path path) throws IOException {
+		FileChannel directory;
+		try {
+			directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ);
+		} catch (IOException e) {
+			return;
+		}
+		try (directory) {
+			directory.force(true);
+		}
+	}
+
+	private void writeSnapshot(DataOutput out, Node<V, D> at, Serializer<? super V> keys, Serializer<? super D> data) throws IOException {
+		if (at.hasData() && (data == null)) throw new IllegalArgumentException("tree has data but no data serializer was given");
+		out.writeByte((this.notNull(at.left) ? SNAPSHOT_LEFT : 0) | (this.notNull(at.right) ? SNAPSHOT_RIGHT : 0) | (at.hasData() ? SNAPSHOT_DATA : 0) | ((at.colour == Colour.BLACK) ? SNAPSHOT_BLACK : 0));
+		keys.write(out, at.value);
+		if (at.hasData()) data.write(out, at.data);
+		if (this.notNull(at.left)) this.writeSnapshot(out, at.left, keys, data);
+		if (this.notNull(at.right)) this.writeSnapshot(out, at.right, keys, data);
+	}
+
+	// Maps the whole file and reads it front to back once. Snapshots over 2 GB can't be mapped in one piece.
+
+	public static <V extends Comparable<V>, D> RedBlackTree<V, D> loadSnapshot(Path path, Serializer<? extends V> keys, Serializer<? extends D> data) throws IOException {
+		RedBlackTree<V, D> tree = new RedBlackTree<V, D>();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException("snapshot is too large to map: " + path);
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (in.getInt() != SNAPSHOT_MAGIC) throw new IOException("not a tree snapshot: " + path);
+			int version = in.getShort();
+			if (version != SNAPSHOT_VERSION) throw new IOException("unsupported snapshot version " + version + ": " + path);
+			if (in.get() != SNAPSHOT_KIND) throw new IOException("snapshot is of another kind of tree: " + path);
+
+			int n = in.getInt();
+			if (n > 0) tree.root = tree.readSnapshot(in, null, keys, data, 0);
+			if ((tree.size() != n) || in.hasRemaining()) throw new IOException("snapshot is corrupt: " + path);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("snapshot is truncated: " + path, e);
+		}
+		return tree;
+	}
+
+	private Node<V, D> readSnapshot(ByteBuffer in, Node<V, D> parent, Serializer<? extends V> keys, Serializer<? extends D> data, int depth) throws IOException {
+		// A balanced tree is never this deep, so only a damaged file gets here
+		if (depth > SNAPSHOT_DEPTH) throw new IOException("snapshot is corrupt");
+
+		int flags = in.get();
+		if (((flags & SNAPSHOT_DATA) != 0) && (data == null)) throw new IOException("snapshot has data but no data serializer was given");
+		V value = keys.read(in);
+		Node<V, D> at = new Node<V, D>(value, ((flags & SNAPSHOT_DATA) != 0) ? data.read(in) : null, parent);
+		if ((flags & SNAPSHOT_LEFT) != 0) at.left = this.readSnapshot(in, at, keys, data, depth + 1);
+		if ((flags & SNAPSHOT_RIGHT) != 0) at.right = this.readSnapshot(in, at, keys, data, depth + 1);
+		at.colour = ((flags & SNAPSHOT_BLACK) != 0) ? Colour.BLACK : Colour.RED;
+		this.updateSize(at);
+		return at;
+	}
+
+	/*
+		##############
+		# Navigation
+		##############
+	*/
+
+	// Nearest entries to a value in one descent, null if there is none. Like the iterators they hand out
+	// the nodes themselves, and a polled entry is the node that was taken out.
+
+	public Map.Entry<V, D> floorEntry(V value) { return this.nearest(FLOOR, value); }
+
+	public Map.Entry<V, D> lowerEntry(V value) { return this.nearest(LOWER, value); }
+
+	public Map.Entry<V, D> ceilingEntry(V value) { return this.nearest(CEILING, value); }
+
+	public Map.Entry<V, D> higherEntry(V value) { return this.nearest(HIGHER, value); }
+
+	public Map.Entry<V, D> firstEntry() { return this.nearest(FIRST, null); }
+
+	public Map.Entry<V, D> lastEntry() { return this.nearest(LAST, null); }
+
+	private static final int FLOOR = 0, LOWER = 1, CEILING = 2, HIGHER = 3, FIRST = 4, LAST = 5;
+
+	private Node<V, D> nearest(int kind, V value) {
+		long stamp = this.lock.readLock();
+		try {
+			switch (kind) {
+				case FLOOR: return this.floorNode(value, true);
+				case LOWER: return this.floorNode(value, false);
+				case CEILING: return this.ceilingNode(value, true);
+				case HIGHER: return this.ceilingNode(value, false);
+				case FIRST: return this.minNode(this.root);
+				default: return this.maxNode(this.root);
+			}
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/* Poll */
+
+	// Removes the node the descent found, without searching for its value again.
+
+	public Map.Entry<V, D> pollFirstEntry() { return this.poll(true); }
+
+	public Map.Entry<V, D> pollLastEntry() { return this.poll(false); }
+
+	private Node<V, D> poll(boolean first) {
+		long stamp = this.lock.writeLock();
+		try {
+			Node<V, D> at = first ? this.minNode(this.root) : this.maxNode(this.root);
+			if (this.notNull(at)) this.removeNode(at);
+			return at;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+		##############
+		# Iteration
+		##############
+	*/
+
+	// Cursors step from node to node through the parent links, so they keep O(1) state and hand out
+	// the nodes themselves as entries. setValue on an entry changes the data in the tree. They find
+	// their first node under the read lock but step without it, so only iterate while no other thread is
+	// writing.
+
+	/* Ranges */
+
+	// Lazy views of the entries between lo and hi. A null bound leaves that end open. Each iterator
+	// finds its first node in one descent and then steps node to node, so k entries cost O(log n + k).
+
+	public Iterable<Map.Entry<V, D>> range(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor((lo == null) ? this.nearest(FIRST, null) : this.nearest(loInclusive ? CEILING : HIGHER, lo), true, hi, hiInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> headRange(V hi, boolean inclusive) { return this.range(null, true, hi, inclusive); }
+
+	public Iterable<Map.Entry<V, D>> tailRange(V lo, boolean inclusive) { return this.range(lo, inclusive, null, true); }
+
+	// Same entries from hi down to lo.
+
+	public Iterable<Map.Entry<V, D>> descendingRange(final V lo, final boolean loInclusive, final V hi, final boolean hiInclusive) {
+		return () -> new Cursor((hi == null) ? this.nearest(LAST, null) : this.nearest(hiInclusive ? FLOOR : LOWER, hi), false, lo, loInclusive);
+	}
+
+	public Iterable<Map.Entry<V, D>> descendingHeadRange(V hi, boolean inclusive) { return this.descendingRange(null, true, hi, inclusive); }
+
+	public Iterable<Map.Entry<V, D>> descendingTailRange(V lo, boolean inclusive) { return this.descendingRange(lo, inclusive, null, true); }
+
+	// Below this a split costs more than walking the nodes
+	private static final int SPLIT_SIZE = 1024;
+
+	public Iterator<Map.Entry<V, D>> iterator() { return new Cursor(this.nearest(FIRST, null), true); }
+
+	public Iterator<Map.Entry<V, D>> descendingIterator() { return new Cursor(this.nearest(LAST, null), false); }
+
+	public Spliterator<Map.Entry<V, D>> spliterator() { return new Splitter(this.minNode(this.root), 0, this.size()); }
+
+	public Stream<Map.Entry<V, D>> stream() { return StreamSupport.stream(this.spliterator(), false); }
+
+	public Stream<Map.Entry<V, D>> parallelStream() { return StreamSupport.stream(this.spliterator(), true); }
+
+	private class Cursor implements Iterator<Map.Entry<V, D>> {
+		private Node<V, D> next = null, last = null;
+		private boolean ascending = true;
+		// Bound the cursor stops at, null to run to the end of the tree
+		private V stop = null;
+		private boolean stopInclusive = true;
+
+		private Cursor(Node<V, D> first, boolean ascending) { this(first, ascending, null, true); }
+
+		private Cursor(Node<V, D> first, boolean ascending, V stop, boolean stopInclusive) {
+			this.ascending = ascending;
+			this.stop = stop;
+			this.stopInclusive = stopInclusive;
+			this.next = this.inBounds(first) ? first : null;
+		}
+
+		private boolean inBounds(Node<V, D> at) {
+			if (RedBlackTree.this.isNull(at)) return false;
+			if (this.stop == null) return true;
+			int c = RedBlackTree.this.compare(at.value, this.stop);
+			if (!this.ascending) c = -c;
+			return (c < 0) || ((c == 0) && this.stopInclusive);
+		}
+
+		public boolean hasNext() { return RedBlackTree.this.notNull(this.next); }
+
+		public Map.Entry<V, D> next() {
+			if (RedBlackTree.this.isNull(this.next)) throw new NoSuchElementException();
+			this.last = this.next;
+			this.next = this.ascending ? RedBlackTree.this.nextNode(this.next) : RedBlackTree.this.previousNode(this.next);
+			if (!this.inBounds(this.next)) this.next = null;
+			return this.last;
+		}
+
+		// Removal moves whole nodes, never values, so the node handed out last is unlinked directly, without
+		// searching for it again, and the next node stays valid.
+
+		public void remove() {
+			if (RedBlackTree.this.isNull(this.last)) throw new IllegalStateException();
+			long stamp = RedBlackTree.this.lock.writeLock();
+			try {
+				// Unless another remove has already taken it out
+				if (RedBlackTree.this.notNull(this.last.parent) || (RedBlackTree.this.root == this.last)) RedBlackTree.this.removeNode(this.last);
+			} finally {
+				RedBlackTree.this.lock.unlockWrite(stamp);
+			}
+			this.last = null;
+		}
+	}
+
+	// Covers the nodes ranked from up to to. Splitting hands the first half off and moves this one to
+	// the middle node, found by descending the subtree sizes, so both halves know their exact size.
+
+	private class Splitter implements Spliterator<Map.Entry<V, D>> {
+		private Node<V, D> next = null;
+		private int from = 0, to = 0;
+
+		private Splitter(Node<V, D> first, int from, int to) {
+			this.next = first;
+			this.from = from;
+			this.to = to;
+		}
+
+		public boolean tryAdvance(Consumer<? super Map.Entry<V, D>> action) {
+			if (this.from >= this.to) return false;
+			Node<V, D> at = this.next;
+			this.next = RedBlackTree.this.nextNode(at);
+			this.from++;
+			action.accept(at);
+			return true;
+		}
+
+		public void forEachRemaining(Consumer<? super Map.Entry<V, D>> action) {
+			while (this.tryAdvance(action));
+		}
+
+		public Spliterator<Map.Entry<V, D>> trySplit() {
+			if ((this.to - this.from) < SPLIT_SIZE) return null;
+			int mid = (this.from + this.to) >>> 1;
+			Splitter prefix = new Splitter(this.next, this.from, mid);
+			this.next = RedBlackTree.this.selectNode(mid);
+			this.from = mid;
+			return prefix;
+		}
+
+		public long estimateSize() { return this.to - this.from; }
+
+		public int characteristics() { return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL; }
+
+		public Comparator<? super Map.Entry<V, D>> getComparator() { return Map.Entry.<V, D>comparingByKey(); }
+	}
+
+	/*
+		####################
+		# Order Statistics
+		####################
+	*/
+
+	/* Rank */
+
+	// Like the navigation methods these descend under the read lock, so a writer can't move nodes mid walk.
+
+	public int rank(V value) {
+		long stamp = this.lock.readLock();
+		try {
+			return this.rank(value, false);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private int rank(V value, boolean inclusive) {
+		int r = 0;
+		Node<V, D> at = this.root;
+		while (this.notNull(at)) {
+			int c = this.compare(value, at.value);
+			if (c < 0) at = at.left;
+			else if (c > 0) {
+				r += this.size(at.left) + 1;
+				at = at.right;
+			} else return r + this.size(at.left) + (inclusive ? 1 : 0);
+		}
+		return r;
+	}
+
+	/* Select */
+
+	public V select(int k) {
+		long stamp = this.lock.readLock();
+		try {
+			Node<V, D> at = this.selectNode(k);
+			return this.isNull(at) ? null : at.value;
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private Node<V, D> selectNode(int k) {
+		if ((k < 0) || (k >= this.size())) return null;
+		Node<V, D> at = this.root;
+		while (this.notNull(at)) {
+			int l = this.size(at.left);
+			if (k < l) at = at.left;
+			else if (k > l) {
+				k -= l + 1;
+				at = at.right;
+			} else return at;
+		}
+		return null;
+	}
+
+	/* Count Range */
+
+	public int countRange(V lo, V hi) {
+		long stamp = this.lock.readLock();
+		try {
+			if (this.compare(lo, hi) > 0) return 0;
+			return this.rank(hi, true) - this.rank(lo, false);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
 	}
 
 	/*
@@ -460,20 +1307,11 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 
 	public String postOrder() { return this.postOrder(this.root); }
 
-	private String postOrder(Node<V, D> at) {
-		if (this.isNull(at)) return "";
+	private String postOrder(Node<V, D> at) { return this.traversal(at, POST_ORDER); }
 
-		String d = null;
-		try { d = at.data.toString(); } catch (Exception e) {}
+	public void writePostOrder(Appendable out) throws IOException { this.writePostOrder(out, EntryFormatter.standard()); }
 
-		String v = (d == null) ? at.value.toString() : ('(' + at.value.toString() + " | " + d + ')'),
-					 left = this.postOrder(at.left),
-					 right = this.postOrder(at.right);
-
-		if (!right.equals("")) v = right + " " + v;
-		if (!left.equals("")) v = left + " " + v;
-		return v;
-	}
+	public void writePostOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, POST_ORDER, format); }
 
 	/* In Order */
 
@@ -483,20 +1321,11 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 
 	public String inOrder() { return this.inOrder(this.root); }
 
-	private String inOrder(Node<V, D> at) {
-		if (this.isNull(at)) return "";
-
-		String d = null;
-		try { d = at.data.toString(); } catch (Exception e) {}
+	private String inOrder(Node<V, D> at) { return this.traversal(at, IN_ORDER); }
 
-		String v = (d == null) ? at.value.toString() : ('(' + at.value.toString() + " | " + d + ')'),
-					 left = this.inOrder(at.left),
-					 right = this.inOrder(at.right);
+	public void writeInOrder(Appendable out) throws IOException { this.writeInOrder(out, EntryFormatter.standard()); }
 
-		if (!left.equals("")) v = left + " " + v;
-		if (!right.equals("")) v += " " + right;
-		return v;
-	}
+	public void writeInOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, IN_ORDER, format); }
 
 	/* Pre Order */
 
@@ -506,163 +1335,333 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 
 	public String preOrder() { return this.preOrder(this.root); }
 
-	private String preOrder(Node<V, D> at) {
-		if (this.isNull(at)) return "";
-
-		String d = null;
-		try { d = at.data.toString(); } catch (Exception e) {}
+	private String preOrder(Node<V, D> at) { return this.traversal(at, PRE_ORDER); }
 
-		String v = (d == null) ? at.value.toString() : ('(' + at.value.toString() + " | " + d + ')'),
-					 left = this.preOrder(at.left),
-					 right = this.preOrder(at.right);
+	public void writePreOrder(Appendable out) throws IOException { this.writePreOrder(out, EntryFormatter.standard()); }
 
-		if (!left.equals("")) v += " " + left;
-		if (!right.equals("")) v += " " + right;
-		return v;
-	}
+	public void writePreOrder(Appendable out, EntryFormatter<? super V, ? super D> format) throws IOException { this.write(out, PRE_ORDER, format); }
 
-	/* Print Tree */
+	/* Write Traversal */
 
-	public void print() { this.print(this.root); }
+	// Every traversal goes through write, which walks an explicit stack instead of recursing and appends
+	// straight to the output. Time is linear, nothing is copied, and a degenerate tree can't overflow
+	// the call stack.
 
-	public void print(Node<V, D> at) {
-		ArrayList<ArrayList<String>> lines = new ArrayList<ArrayList<String>>();
-		ArrayList<Node<V, D>> nodes = new ArrayList<Node<V, D>>(),
-													levels = new ArrayList<Node<V, D>>();
+	private static final int PRE_ORDER = 0, IN_ORDER = 1, POST_ORDER = 2;
 
-		nodes.add(at);
-		int l = 1, widest = 0;
+	private String traversal(Node<V, D> at, int order) {
+		StringBuilder out = new StringBuilder();
+		try {
+			this.write(out, at, order, EntryFormatter.standard());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
 
-		// Build the printable node
-		while (l != 0) {
-			ArrayList<String> line = new ArrayList<String>();
-			l = 0;
+	private void write(Appendable out, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		long stamp = this.lock.readLock();
+		try {
+			this.write(out, this.root, order, format);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
 
-			for (Node<V, D> n : nodes) {
-				if (this.isNull(n)) {
-					line.add(null);
+	private void write(Appendable out, Node<V, D> at, int order, EntryFormatter<? super V, ? super D> format) throws IOException {
+		ArrayDeque<Node<V, D>> stack = new ArrayDeque<Node<V, D>>();
+		boolean first = true;
+
+		if (order == PRE_ORDER) {
+			if (this.notNull(at)) stack.push(at);
+			while (!stack.isEmpty()) {
+				at = stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, at.value, at.data);
+				first = false;
+				if (this.notNull(at.right)) stack.push(at.right);
+				if (this.notNull(at.left)) stack.push(at.left);
+			}
+		} else if (order == IN_ORDER) {
+			while (this.notNull(at) || !stack.isEmpty()) {
+				for (; this.notNull(at); at = at.left) stack.push(at);
+				at = stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, at.value, at.data);
+				first = false;
+				at = at.right;
+			}
+		} else {
+			// A node is written once the walk comes back up from its right subtree, or finds none.
+			Node<V, D> last = null;
+			while (this.notNull(at) || !stack.isEmpty()) {
+				for (; this.notNull(at); at = at.left) stack.push(at);
+				Node<V, D> top = stack.peek();
+				if (this.notNull(top.right) && (top.right != last)) {
+					at = top.right;
+					continue;
+				}
+				stack.pop();
+				if (!first) out.append(' ');
+				format.format(out, top.value, top.data);
+				first = false;
+				last = top;
+			}
+		}
+	}
 
-					levels.add(null);
-					levels.add(null);
-				} else {
-					String d = null;
-					try { d = n.data.toString(); } catch (Exception e) {}
-					String s = "│ " + n.value.toString() + ((d == null) ? "" : (" | " + d)) + " : " + ((n.colour == Colour.BLACK) ? "B" : "R") + " │";
-					line.add(s);
-					if (s.length() > widest) widest = s.length();
+	/* Print Tree */
 
-					levels.add(n.left);
-					levels.add(n.right);
+	// Both renderers write whole lines to an Appendable and keep only the nodes they are about to draw.
+	// maxDepth limits the levels drawn and maxWidth clips every line, so a deep or wide tree renders in
+	// memory bounded by the limits instead of by 2^height.
 
-					if (this.notNull(n.left)) l++;
-					if (this.notNull(n.right)) l++;
-				}
-			}
+	public void print() { this.print(this.root); }
 
-			if ((widest % 2) == 1) widest++;
+	public void print(Node<V, D> at) {
+		try {
+			this.render(System.out, at, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
-			lines.add(line);
+	public void print(Appendable out, int maxDepth, int maxWidth) throws IOException {
+		long stamp = this.lock.readLock();
+		try {
+			this.render(out, this.root, maxDepth, maxWidth);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
 
-			ArrayList<Node<V, D>> tmp = nodes;
-			nodes = levels;
-			levels = tmp;
-			levels.clear();
+	private void render(Appendable out, Node<V, D> at, int maxDepth, int maxWidth) throws IOException {
+		if (this.isNull(at) || (maxDepth <= 0) || (maxWidth <= 0)) return;
+
+		// Count the levels to draw and find the widest box, walking parent links so nothing is stacked
+		int levels = 0, widest = 0, depth = 0;
+		Node<V, D> n = at;
+		walk: while (true) {
+			levels = Math.max(levels, depth + 1);
+			widest = Math.max(widest, this.label(n).length() + 4);
+			if ((depth + 1 < maxDepth) && this.notNull(n.left)) {
+				n = n.left;
+				depth++;
+				continue;
+			}
+			if ((depth + 1 < maxDepth) && this.notNull(n.right)) {
+				n = n.right;
+				depth++;
+				continue;
+			}
+			while (n != at) {
+				Node<V, D> p = n.parent;
+				depth--;
+				if ((n == p.left) && this.notNull(p.right)) {
+					n = p.right;
+					depth++;
+					continue walk;
+				}
+				n = p;
+			}
+			break;
 		}
+		if ((widest % 2) == 1) widest++;
 
-		int perpiece = lines.get(lines.size() - 1).size() * (widest + 4);
-		for (int i = 0; i < lines.size(); i++) {
-			ArrayList<String> line = lines.get(i);
-			int hpw = ((int) Math.floor(perpiece / 2f)) - 1;
+		Row row = new Row(out, Math.min(this.slotWidth(0, levels, widest), maxWidth));
+		ArrayList<Slot> slots = new ArrayList<Slot>(), next = new ArrayList<Slot>();
+		slots.add(new Slot(at, 0, false));
 
+		for (int i = 0; i < levels; i++) {
+			long perpiece = this.slotWidth(i, levels, widest), hpw = (perpiece / 2) - 1;
+
+			// Split Node, drawn once for every parent with a child on this level
 			if (i > 0) {
-				for (int j = 0; j < line.size(); j++) {
-
-					// Split Node
-					char c = ' ';
-					if ((j % 2) == 1) {
-						if (line.get(j - 1) != null) {
-							c = (line.get(j) != null) ? '┴' : '┘';
-						} else {
-							if ((j < line.size()) && (line.get(j) != null)) c = '└';
-						}
-					}
-					System.out.print(c);
-
-					// Lines and Spaces
-					if (line.get(j) == null) {
-						for (int k = 0; k < perpiece - 1; k++) System.out.print(" ");
-					} else {
-						for (int k = 0; k < hpw; k++) System.out.print(((j % 2) == 0) ? " " : "─");
-						System.out.print(((j % 2) == 0) ? "┌" : "┐");
-						for (int k = 0; k < hpw; k++) System.out.print(((j % 2) == 0) ? "─" : " ");
-					}
+				for (int k = 0; k < slots.size(); k++) {
+					Slot s = slots.get(k);
+					boolean left = !s.right,
+									right = s.right || (((k + 1) < slots.size()) && slots.get(k + 1).right && (slots.get(k + 1).start == (s.start + perpiece)));
+					if (left && right) k++;
+
+					row.pad(s.right ? (s.start - perpiece) : s.start);
+					row.put(' ');
+					if (left) {
+						row.repeat(' ', hpw);
+						row.put('┌');
+						row.repeat('─', hpw);
+					} else row.repeat(' ', perpiece - 1);
+					row.put(left ? (right ? '┴' : '┘') : '└');
+					if (right) {
+						row.repeat('─', hpw);
+						row.put('┐');
+						row.repeat(' ', hpw);
+					} else row.repeat(' ', perpiece - 1);
 				}
-				System.out.println();
+				row.end();
 			}
 
-			// Print the upper part of the Box of the printable node
-			for (int j = 0; j < line.size(); j++) {
-				String f = line.get(j);
-				if (f == null) f = "";
-				int left_gap = (int) Math.ceil((perpiece / 2f) - (f.length() / 2f)),
-						right_gap = (int) Math.floor((perpiece / 2f) - (f.length() / 2f));
-
-				for (int k = 0; k < left_gap; k++) System.out.print(" ");
-				if (f.length() > 0) {
-					System.out.print("┌");
-					for (int k = 1; k < (f.length() - 1); k++) System.out.print("─");			// ▔
-					System.out.print("┐");
-				}
-				for (int k = 0; k < right_gap; k++) System.out.print(" ");
+			// Upper part of the Box, the printable node and the lower part of the Box
+			for (Slot s : slots) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put('┌');
+				row.repeat('─', s.label.length() - 2);
+				row.put('┐');
 			}
-			System.out.println();
-
-			// Print the printable node
-			for (int j = 0; j < line.size(); j++) {
-				String f = line.get(j);
-				if (f == null) f = "";
-				int left_gap = (int) Math.ceil((perpiece / 2f) - (f.length() / 2f)),
-						right_gap = (int) Math.floor((perpiece / 2f) - (f.length() / 2f));
-
-				for (int k = 0; k < left_gap; k++) System.out.print(" ");
-				System.out.print(f);
-				for (int k = 0; k < right_gap; k++) System.out.print(" ");
+			row.end();
+			for (Slot s : slots) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put(s.label);
 			}
-			System.out.println();
-
-			// Print the lower part of the Box of the printable node
-			for (int j = 0; j < line.size(); j++) {
-				String f = line.get(j);
-				if (f == null) f = "";
-				int left_gap = (int) Math.ceil((perpiece / 2f) - (f.length() / 2f)),
-						right_gap = (int) Math.floor((perpiece / 2f) - (f.length() / 2f));
-
-				for (int k = 0; k < left_gap; k++) System.out.print(" ");
-				if (f.length() > 0) {
-					System.out.print("└");
-					for (int k = 1; k < (f.length() - 1); k++) System.out.print("─");			// ▁
-					System.out.print("┘");
+			row.end();
+			for (Slot s : slots) {
+				row.pad(s.start + (perpiece / 2) - (s.label.length() / 2));
+				row.put('└');
+				row.repeat('─', s.label.length() - 2);
+				row.put('┘');
+			}
+			row.end();
+
+			// Children that start past the right edge, and everything under them, are never drawn
+			if ((i + 1) < levels) {
+				long half = this.slotWidth(i + 1, levels, widest);
+				for (Slot s : slots) {
+					if (this.notNull(s.node.left)) next.add(new Slot(s.node.left, s.start, false));
+					if (this.notNull(s.node.right) && ((s.start + half) < maxWidth)) next.add(new Slot(s.node.right, s.start + half, true));
 				}
-				for (int k = 0; k < right_gap; k++) System.out.print(" ");
 			}
-			System.out.println();
+			ArrayList<Slot> tmp = slots;
+			slots = next;
+			next = tmp;
+			next.clear();
+		}
+	}
+
+	// Width of one slot on level i. Past 2^30 slots the true width can't be on screen, so it is capped
+	// at a value no line reaches and no start position can overflow.
+
+	private long slotWidth(int i, int levels, int widest) {
+		int shift = levels - 1 - i;
+		return (shift >= 30) ? (1L << 62) : (((long) (widest + 4)) << shift);
+	}
+
+	private String label(Node<V, D> n) {
+		String d = null;
+		try { d = n.data.toString(); } catch (Exception e) {}
+		return n.value.toString() + ((d == null) ? "" : (" | " + d)) + " : " + ((n.colour == Colour.BLACK) ? "B" : "R");
+	}
 
-			perpiece /= 2;
+	private class Slot {
+		private final Node<V, D> node;
+		private final String label;
+		private final long start;
+		private final boolean right;
+
+		private Slot(Node<V, D> node, long start, boolean right) {
+			this.node = node;
+			this.label = "│ " + RedBlackTree.this.label(node) + " │";
+			this.start = start;
+			this.right = right;
+		}
+	}
+
+	// One output line, built in a reused buffer and clipped to the line width before it is written.
+
+	private static class Row {
+		private final Appendable out;
+		private final StringBuilder line = new StringBuilder();
+		private final long width;
+		private long column = 0;
+
+		private Row(Appendable out, long width) {
+			this.out = out;
+			this.width = width;
+		}
+
+		private void put(char c) {
+			if (this.column < this.width) this.line.append(c);
+			this.column++;
+		}
+
+		private void put(String s) {
+			if (this.column < this.width) this.line.append(s, 0, (int) Math.min(s.length(), this.width - this.column));
+			this.column += s.length();
+		}
+
+		private void repeat(char c, long n) {
+			for (long k = Math.min(n, this.width - this.column); k > 0; k--) this.line.append(c);
+			this.column += n;
+		}
+
+		private void pad(long to) { this.repeat(' ', to - this.column); }
+
+		private void end() throws IOException {
+			this.pad(this.width);
+			this.out.append(this.line).append(System.lineSeparator());
+			this.line.setLength(0);
+			this.column = 0;
 		}
 	}
 
 	/* Vertical Print Tree */
 
-	public void verticalPrint() { this.verticalPrint(this.root, false, ""); }
+	public void verticalPrint() {
+		try {
+			this.verticalPrint(System.out, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
 	public void verticalPrint(Node<V, D> node, boolean isLeft, String prefix) {
-		if (this.notNull(node)) {
-			String d = null;
-			try { d = node.data.toString(); } catch (Exception e) {}
-			String s = "[ " + node.value.toString() + ((d == null) ? "" : (" | " + d)) + " : " + ((node.colour == Colour.BLACK) ? "B" : "R") + " ]";
-			System.out.println(prefix + (isLeft ? "|-- " : "\\-- ") + s);
-			this.verticalPrint(node.left, true, prefix + (isLeft ? "|   " : "    "));
-			this.verticalPrint(node.right, false, prefix + (isLeft ? "|   " : "    "));
+		try {
+			this.verticalRender(System.out, node, isLeft, prefix, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void verticalPrint(Appendable out, int maxDepth) throws IOException {
+		long stamp = this.lock.readLock();
+		try {
+			this.verticalRender(out, this.root, false, "", maxDepth);
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	// Pre order on an explicit stack. The prefix is one buffer cut back to the popped node's depth, which
+	// works because everything above that depth still belongs to the node's ancestors.
+
+	private void verticalRender(Appendable out, Node<V, D> node, boolean isLeft, String prefix, int maxDepth) throws IOException {
+		if (this.isNull(node) || (maxDepth <= 0)) return;
+
+		ArrayDeque<Node<V, D>> stack = new ArrayDeque<Node<V, D>>();
+		ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+		StringBuilder indent = new StringBuilder(prefix), line = new StringBuilder();
+		stack.push(node);
+		depths.push(0);
+
+		while (!stack.isEmpty()) {
+			Node<V, D> n = stack.pop();
+			int depth = depths.pop();
+			boolean left = (depth == 0) ? isLeft : (n == n.parent.left);
+
+			indent.setLength(prefix.length() + (depth * 4));
+			line.setLength(0);
+			line.append(indent).append(left ? "|-- " : "\\-- ").append("[ ").append(this.label(n)).append(" ]");
+			out.append(line).append(System.lineSeparator());
+			indent.append(left ? "|   " : "    ");
+
+			if ((depth + 1) < maxDepth) {
+				if (this.notNull(n.right)) {
+					stack.push(n.right);
+					depths.push(depth + 1);
+				}
+				if (this.notNull(n.left)) {
+					stack.push(n.left);
+					depths.push(depth + 1);
+				}
+			}
 		}
 	}
 
@@ -718,6 +1717,30 @@ public class RedBlackTree<V extends Comparable<V>, D> {
 
 	private boolean noData(Node<V, D> node) { return ((node == null) || node.noData()); }
 
+	/* Comparisons */
+
+	// Every compareTo the tree makes goes through here, optimistic and locked readers included. They run
+	// side by side, so the count is a LongAdder they can all add to without losing increments.
+
+	private int compare(V a, V b) {
+		this.comparisons.increment();
+		return a.compareTo(b);
+	}
+
+	public long comparisons() { return this.comparisons.sum(); }
+
+	public void resetComparisons() { this.comparisons.reset(); }
+
+	/* Size */
+
+	public int size() { return this.size(this.root); }
+
+	private int size(Node<V, D> at) { return (this.isNull(at) ? 0 : at.size); }
+
+	private void updateSize(Node<V, D> at) {
+		if (this.notNull(at)) at.size = 1 + this.size(at.left) + this.size(at.right);
+	}
+
 	/* Height */
 
 	public int height() { return this.height(this.root); }
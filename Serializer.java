@@ -0,0 +1,48 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Turns keys or data into bytes for a snapshot and back. write gets a buffered stream, read gets the
+// mapped snapshot positioned at the value and has to leave it just past what write wrote.
+
+public interface Serializer<T> {
+
+	void write(DataOutput out, T value) throws IOException;
+
+	T read(ByteBuffer in);
+
+	Serializer<Integer> INTEGER = new Serializer<Integer>() {
+		public void write(DataOutput out, Integer value) throws IOException { out.writeInt(value); }
+
+		public Integer read(ByteBuffer in) { return in.getInt(); }
+	};
+
+	Serializer<Long> LONG = new Serializer<Long>() {
+		public void write(DataOutput out, Long value) throws IOException { out.writeLong(value); }
+
+		public Long read(ByteBuffer in) { return in.getLong(); }
+	};
+
+	Serializer<Double> DOUBLE = new Serializer<Double>() {
+		public void write(DataOutput out, Double value) throws IOException { out.writeDouble(value); }
+
+		public Double read(ByteBuffer in) { return in.getDouble(); }
+	};
+
+	// Length in bytes, then UTF-8.
+
+	Serializer<String> STRING = new Serializer<String>() {
+		public void write(DataOutput out, String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		public String read(ByteBuffer in) {
+			byte[] bytes = new byte[in.getInt()];
+			in.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+}
@@ -0,0 +1,1129 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TreeBenchmark {
+
+	/*
+		##########
+		# Main
+		##########
+	*/
+
+	// Usage: java TreeBenchmark [suite | scaling | comparisons | primitive | layout | reads | concurrent | bulk | heapify | arity | heaps | parallel | snapshot | disk | wal | persistent | batch] [max size] [budget seconds]
+
+	public static void main(String... args) {
+		String mode = (args.length > 0) ? args[0] : "suite";
+		int max = (args.length > 1) ? Integer.parseInt(args[1]) : 10000000;
+		long budget = (args.length > 2) ? Long.parseLong(args[2]) : 30;
+
+		if (mode.equals("suite")) TreeBenchmark.suite(max, budget * 1000000000L);
+		else if (mode.equals("scaling")) TreeBenchmark.avlScaling(max);
+		else if (mode.equals("comparisons")) TreeBenchmark.comparisons(max);
+		else if (mode.equals("primitive")) TreeBenchmark.primitive(max);
+		else if (mode.equals("layout")) TreeBenchmark.layout(max);
+		else if (mode.equals("reads")) TreeBenchmark.reads(max);
+		else if (mode.equals("concurrent")) TreeBenchmark.concurrent(max);
+		else if (mode.equals("bulk")) TreeBenchmark.bulk(max);
+		else if (mode.equals("heapify")) TreeBenchmark.heapify(max);
+		else if (mode.equals("arity")) TreeBenchmark.arity(max);
+		else if (mode.equals("heaps")) TreeBenchmark.heaps(max);
+		else if (mode.equals("parallel")) TreeBenchmark.parallel(max);
+		else if (mode.equals("snapshot")) TreeBenchmark.snapshot(max);
+		else if (mode.equals("disk")) TreeBenchmark.disk(max);
+		else if (mode.equals("wal")) TreeBenchmark.wal(max);
+		else if (mode.equals("persistent")) TreeBenchmark.persistent(max);
+		else if (mode.equals("batch")) TreeBenchmark.batch(max);
+		else System.out.println("Unknown mode " + mode);
+	}
+
+	/*
+		##########
+		# Suite
+		##########
+	*/
+
+	// Every structure against every key distribution at 1K, 10K, ... up to max entries.
+	// Each cell inserts the keys, looks up a sample, traverses, then removes or extracts everything.
+	// Once a cell goes over the budget the larger sizes of that structure and distribution are skipped,
+	// which keeps the degenerate cases (sorted input into BinarySearchTree, linear heap scans) bounded.
+
+	private static final String[] DISTRIBUTIONS = { "uniform", "sorted", "reverse", "zipfian" };
+	private static final String[] SUBJECTS = { "AVLTree", "RedBlackTree", "BinarySearchTree", "TreeMap", "MinHeapTree", "MaxHeapTree", "PriorityQueue" };
+	private static final int LOOKUPS = 100000, HEAP_LOOKUPS = 1000;
+
+	public static void suite(int max, long budget) {
+		// Warm up every code path once before measuring
+		for (String subject : TreeBenchmark.SUBJECTS)
+			for (int w = 0; w < 5; w++) TreeBenchmark.run(subject, TreeBenchmark.keys("uniform", 10000, w));
+
+		for (String distribution : TreeBenchmark.DISTRIBUTIONS) {
+			System.out.println("\n---------- " + distribution + " ----------\n");
+			System.out.println(String.format("%-18s %10s %12s %12s %12s %12s", "Structure", "Size", "Insert", "Has", "Traverse", "Remove"));
+
+			boolean[] skip = new boolean[TreeBenchmark.SUBJECTS.length];
+			for (int n = 1000; n <= max; n *= 10) {
+				Integer[] keys = TreeBenchmark.keys(distribution, n, n);
+				for (int j = 0; j < TreeBenchmark.SUBJECTS.length; j++) {
+					String subject = TreeBenchmark.SUBJECTS[j];
+					if (skip[j]) {
+						System.out.println(String.format("%-18s %10d %12s", subject, n, "skipped"));
+						continue;
+					}
+					long[] took = null;
+					try {
+						took = TreeBenchmark.run(subject, keys);
+					} catch (StackOverflowError e) {
+						System.out.println(String.format("%-18s %10d %12s", subject, n, "failed, stack overflow"));
+						skip[j] = true;
+						continue;
+					}
+					int lookups = Math.min(n, subject.endsWith("Heap") || subject.endsWith("HeapTree") || subject.equals("PriorityQueue") ? TreeBenchmark.HEAP_LOOKUPS : TreeBenchmark.LOOKUPS);
+					System.out.println(String.format(
+						"%-18s %10d %9d ns %9d ns %9d ns %9d ns", subject, n,
+						took[0] / n, took[1] / lookups, took[2] / n, took[3] / n
+					));
+					if ((took[0] + took[1] + took[2] + took[3]) > budget) skip[j] = true;
+				}
+			}
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	// Returns the nanoseconds spent inserting, looking up, traversing and removing the keys.
+
+	private static long[] run(String subject, Integer[] keys) {
+		boolean heap = subject.endsWith("HeapTree") || subject.equals("PriorityQueue");
+		int lookups = Math.min(keys.length, heap ? TreeBenchmark.HEAP_LOOKUPS : TreeBenchmark.LOOKUPS);
+		long[] took = new long[4];
+		long sink = 0, start = 0;
+
+		if (subject.equals("AVLTree")) {
+			AVLTree<Integer, Integer> tree = new AVLTree<Integer, Integer>();
+			start = System.nanoTime();
+			for (Integer k : keys) tree.insert(k, k);
+			took[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) if (tree.has(keys[i])) sink++;
+			took[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			sink += tree.inOrder().length();
+			took[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Integer k : keys) tree.remove(k);
+			took[3] = System.nanoTime() - start;
+		} else if (subject.equals("RedBlackTree")) {
+			RedBlackTree<Integer, Integer> tree = new RedBlackTree<Integer, Integer>();
+			start = System.nanoTime();
+			for (Integer k : keys) tree.insert(k, k);
+			took[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) if (tree.has(keys[i])) sink++;
+			took[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			sink += tree.inOrder().length();
+			took[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Integer k : keys) tree.remove(k);
+			took[3] = System.nanoTime() - start;
+		} else if (subject.equals("BinarySearchTree")) {
+			BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<Integer, Integer>();
+			start = System.nanoTime();
+			for (Integer k : keys) tree.insert(k, k);
+			took[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) if (tree.has(keys[i])) sink++;
+			took[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			sink += tree.inOrder().length();
+			took[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Integer k : keys) tree.remove(k);
+			took[3] = System.nanoTime() - start;
+		} else if (subject.equals("TreeMap")) {
+			TreeMap<Integer, Integer> tree = new TreeMap<Integer, Integer>();
+			start = System.nanoTime();
+			for (Integer k : keys) tree.put(k, k);
+			took[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) if (tree.containsKey(keys[i])) sink++;
+			took[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Map.Entry<Integer, Integer> e : tree.entrySet()) sink += e.getKey();
+			took[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Integer k : keys) tree.remove(k);
+			took[3] = System.nanoTime() - start;
+		} else if (subject.equals("MinHeapTree")) {
+			MinHeapTree<Integer, Integer> tree = new MinHeapTree<Integer, Integer>();
+			start = System.nanoTime();
+			for (Integer k : keys) tree.insert(k, k);
+			took[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) if (tree.has(keys[i])) sink++;
+			took[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			sink += tree.inOrder().length();
+			took[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			while (tree.notEmpty()) if (tree.extractMin() != null) sink++;
+			took[3] = System.nanoTime() - start;
+		} else if (subject.equals("MaxHeapTree")) {
+			MaxHeapTree<Integer, Integer> tree = new MaxHeapTree<Integer, Integer>();
+			start = System.nanoTime();
+			for (Integer k : keys) tree.insert(k, k);
+			took[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) if (tree.has(keys[i])) sink++;
+			took[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			sink += tree.inOrder().length();
+			took[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			while (tree.notEmpty()) if (tree.extractMax() != null) sink++;
+			took[3] = System.nanoTime() - start;
+		} else if (subject.equals("PriorityQueue")) {
+			PriorityQueue<Integer> queue = new PriorityQueue<Integer>();
+			start = System.nanoTime();
+			for (Integer k : keys) queue.offer(k);
+			took[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) if (queue.contains(keys[i])) sink++;
+			took[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Iterator<Integer> it = queue.iterator(); it.hasNext(); ) sink += it.next();
+			took[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			while (!queue.isEmpty()) sink += queue.poll();
+			took[3] = System.nanoTime() - start;
+		}
+
+		if (sink == 42) System.out.print("");
+		return took;
+	}
+
+	/*
+		######################
+		# AVL Tree Scaling
+		######################
+	*/
+
+	// Inserts then removes a shuffled run of keys, reporting the cost per operation of each decade.
+	// Logarithmic operations show up as a near constant increase per row.
+
+	public static void avlScaling(int max) {
+		Integer[] keys = TreeBenchmark.shuffled(max, 42);
+		AVLTree<Integer, Integer> tree = new AVLTree<Integer, Integer>();
+
+		System.out.println("\n---------- AVL Tree Insert ----------\n");
+		int from = 0;
+		for (int n = 1000; n <= max; n *= 10) {
+			long start = System.nanoTime();
+			for (int i = from; i < n; i++) tree.insert(keys[i], keys[i]);
+			long took = System.nanoTime() - start;
+			System.out.println("Size " + n + " | Height " + tree.height() + " -> " + (took / (n - from)) + " ns/op");
+			from = n;
+		}
+
+		System.out.println("\n---------- AVL Tree Remove ----------\n");
+		for (int n = from; n > 1000; n /= 10) {
+			long start = System.nanoTime();
+			for (int i = n - 1; i >= (n / 10); i--) tree.remove(keys[i]);
+			long took = System.nanoTime() - start;
+			System.out.println("Size " + n + " | Height " + tree.height() + " -> " + (took / (n - (n / 10))) + " ns/op");
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		################
+		# Comparisons
+		################
+	*/
+
+	// Counts the compareTo calls made per insert and remove against log2 of the size.
+	// With reference based fix-ups this stays at one descent, about log2(n) plus a small constant.
+
+	public static void comparisons(int max) {
+		Integer[] keys = TreeBenchmark.shuffled(max, 7);
+		AVLTree<Integer, Integer> avl = new AVLTree<Integer, Integer>();
+		RedBlackTree<Integer, Integer> rb = new RedBlackTree<Integer, Integer>();
+
+		System.out.println("\n---------- Comparisons per Operation ----------\n");
+		int from = 0;
+		for (int n = 1000; n <= max; n *= 10) {
+			avl.resetComparisons();
+			rb.resetComparisons();
+			for (int i = from; i < n; i++) {
+				avl.insert(keys[i], null);
+				rb.insert(keys[i], null);
+			}
+			double log = Math.log(n) / Math.log(2);
+			System.out.println("Size " + n + " | log2 " + String.format("%.1f", log) + " -> Insert AVL " + String.format("%.1f", avl.comparisons() / (double) (n - from)) + ", Red Black " + String.format("%.1f", rb.comparisons() / (double) (n - from)));
+
+			avl.resetComparisons();
+			rb.resetComparisons();
+			for (int i = from; i < n; i++) {
+				avl.remove(Integer.valueOf(keys[i]));
+				rb.remove(Integer.valueOf(keys[i]));
+			}
+			System.out.println("Size " + n + " | log2 " + String.format("%.1f", log) + " -> Remove AVL " + String.format("%.1f", avl.comparisons() / (double) (n - from)) + ", Red Black " + String.format("%.1f", rb.comparisons() / (double) (n - from)));
+			for (int i = from; i < n; i++) {
+				avl.insert(keys[i], null);
+				rb.insert(keys[i], null);
+			}
+			from = n;
+		}
+		System.out.println("\n-----------------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Primitive
+		###############
+	*/
+
+	// Boxed against primitive keys over the same shuffled run: insert everything, then look up fresh boxes.
+
+	public static void primitive(int max) {
+		for (int round = 0; round < 2; round++) {
+			System.out.println("\n---------- Boxed and Primitive Keys" + ((round == 0) ? " (warm up)" : "") + " ----------\n");
+			for (int n = 1000; n <= max; n *= 10) {
+				Integer[] keys = TreeBenchmark.shuffled(n, n);
+				int[] ints = new int[n];
+				for (int i = 0; i < n; i++) ints[i] = keys[i];
+				long sink = 0, start = 0, boxed = 0, primitive = 0;
+
+				AVLTree<Integer, Integer> avl = new AVLTree<Integer, Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) avl.insert(ints[i], null);
+				for (int i = 0; i < n; i++) if (avl.has(ints[i])) sink++;
+				boxed = System.nanoTime() - start;
+
+				IntAVLTree<Integer> intAvl = new IntAVLTree<Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) intAvl.insert(ints[i], null);
+				for (int i = 0; i < n; i++) if (intAvl.has(ints[i])) sink++;
+				primitive = System.nanoTime() - start;
+				System.out.println("Size " + n + " | AVLTree " + (boxed / n) + " ns/op -> IntAVLTree " + (primitive / n) + " ns/op");
+
+				RedBlackTree<Long, Integer> rb = new RedBlackTree<Long, Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) rb.insert((long) ints[i], null);
+				for (int i = 0; i < n; i++) if (rb.has((long) ints[i])) sink++;
+				boxed = System.nanoTime() - start;
+
+				LongRedBlackTree<Integer> longRb = new LongRedBlackTree<Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) longRb.insert((long) ints[i], null);
+				for (int i = 0; i < n; i++) if (longRb.has((long) ints[i])) sink++;
+				primitive = System.nanoTime() - start;
+				System.out.println("Size " + n + " | RedBlackTree " + (boxed / n) + " ns/op -> LongRedBlackTree " + (primitive / n) + " ns/op");
+
+				if (sink == 42) System.out.print("");
+			}
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Layout
+		###############
+	*/
+
+	// Node objects against the array backed node pool: time per insert, has and remove, and retained heap.
+
+	public static void layout(int max) {
+		Integer[] keys = TreeBenchmark.shuffled(max, 11);
+		for (int round = 0; round < 2; round++) {
+			System.out.println("\n---------- Node Layout" + ((round == 0) ? " (warm up)" : "") + " ----------\n");
+			for (int n = 1000; n <= max; n *= 10) {
+				long sink = 0, start = 0, used = 0;
+
+				used = TreeBenchmark.usedMemory();
+				RedBlackTree<Integer, Integer> objects = new RedBlackTree<Integer, Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) objects.insert(keys[i], keys[i]);
+				long insert = System.nanoTime() - start;
+				used = TreeBenchmark.usedMemory() - used;
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) if (objects.has(keys[i])) sink++;
+				long has = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) objects.remove(keys[i]);
+				long remove = System.nanoTime() - start;
+				System.out.println(String.format("%-18s %10d | Insert %5d ns | Has %5d ns | Remove %5d ns | %4d bytes/entry", "RedBlackTree", n, insert / n, has / n, remove / n, used / n));
+				objects = null;
+
+				used = TreeBenchmark.usedMemory();
+				ArrayRedBlackTree<Integer, Integer> arrays = new ArrayRedBlackTree<Integer, Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) arrays.insert(keys[i], keys[i]);
+				insert = System.nanoTime() - start;
+				used = TreeBenchmark.usedMemory() - used;
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) if (arrays.has(keys[i])) sink++;
+				has = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) arrays.remove(keys[i]);
+				remove = System.nanoTime() - start;
+				System.out.println(String.format("%-18s %10d | Insert %5d ns | Has %5d ns | Remove %5d ns | %4d bytes/entry", "ArrayRedBlackTree", n, insert / n, has / n, remove / n, used / n));
+
+				if (sink == 42) System.out.print("");
+			}
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/*
+		###############
+		# Reads
+		###############
+	*/
+
+	// Read mostly throughput (95% has, 5% insert or remove) on a tree of max keys at 1 to 32 threads.
+
+	public static void reads(int max) {
+		final Integer[] keys = TreeBenchmark.shuffled(max, 13);
+		final AVLTree<Integer, Integer> avl = new AVLTree<Integer, Integer>();
+		final RedBlackTree<Integer, Integer> rb = new RedBlackTree<Integer, Integer>();
+		for (int i = 0; i < max; i += 2) {
+			avl.insert(keys[i], keys[i]);
+			rb.insert(keys[i], keys[i]);
+		}
+
+		System.out.println("\n---------- Read Mostly Throughput ----------\n");
+		for (int threads = 1; threads <= 32; threads *= 2) {
+			long a = TreeBenchmark.readMostly(threads, keys, avl, null),
+					 r = TreeBenchmark.readMostly(threads, keys, null, rb);
+			System.out.println(String.format("Threads %2d | AVLTree %,12d ops/s | RedBlackTree %,12d ops/s", threads, a, r));
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	private static long readMostly(int threads, final Integer[] keys, final AVLTree<Integer, Integer> avl, final RedBlackTree<Integer, Integer> rb) {
+		final AtomicLong operations = new AtomicLong();
+		final long end = System.nanoTime() + 2000000000L;
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					Random random = new Random(seed);
+					long ops = 0;
+					while ((ops & 1023) != 0 || System.nanoTime() < end) {
+						Integer k = keys[random.nextInt(keys.length)];
+						int p = random.nextInt(100);
+						if (avl != null) {
+							if (p < 95) avl.has(k);
+							else if (p < 98) avl.insert(k, k);
+							else avl.remove(k);
+						} else {
+							if (p < 95) rb.has(k);
+							else if (p < 98) rb.insert(k, k);
+							else rb.remove(k);
+						}
+						ops++;
+					}
+					operations.addAndGet(ops);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			try { worker.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		}
+		return operations.get() / 2;
+	}
+
+	/*
+		###############
+		# Concurrent
+		###############
+	*/
+
+	// Write heavy throughput (50% has, 25% insert, 25% remove) over max keys at 1 to 64 threads,
+	// ConcurrentAVLTree against ConcurrentSkipListMap and the single writer AVLTree.
+
+	private static final String[] CONCURRENT_SUBJECTS = { "ConcurrentAVLTree", "ConcurrentSkipListMap", "AVLTree" };
+
+	public static void concurrent(int max) {
+		final Integer[] keys = TreeBenchmark.shuffled(max, 17);
+
+		System.out.println("\n---------- Concurrent Throughput ----------\n");
+		for (int threads = 1; threads <= 64; threads *= 2) {
+			StringBuilder line = new StringBuilder(String.format("Threads %2d", threads));
+			for (String subject : CONCURRENT_SUBJECTS)
+				line.append(String.format(" | %s %,12d ops/s", subject, TreeBenchmark.writeHeavy(subject, threads, keys)));
+			System.out.println(line);
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	private static long writeHeavy(String subject, int threads, final Integer[] keys) {
+		final ConcurrentAVLTree<Integer, Integer> cavl = subject.equals("ConcurrentAVLTree") ? new ConcurrentAVLTree<Integer, Integer>() : null;
+		final ConcurrentSkipListMap<Integer, Integer> skip = subject.equals("ConcurrentSkipListMap") ? new ConcurrentSkipListMap<Integer, Integer>() : null;
+		final AVLTree<Integer, Integer> avl = subject.equals("AVLTree") ? new AVLTree<Integer, Integer>() : null;
+		for (int i = 0; i < keys.length; i += 2) {
+			if (cavl != null) cavl.insert(keys[i], keys[i]);
+			else if (skip != null) skip.put(keys[i], keys[i]);
+			else avl.insert(keys[i], keys[i]);
+		}
+
+		final AtomicLong operations = new AtomicLong();
+		final long end = System.nanoTime() + 2000000000L;
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					Random random = new Random(seed);
+					long ops = 0;
+					while ((ops & 1023) != 0 || System.nanoTime() < end) {
+						Integer k = keys[random.nextInt(keys.length)];
+						int p = random.nextInt(4);
+						if (cavl != null) {
+							if (p < 2) cavl.has(k);
+							else if (p < 3) cavl.insert(k, k);
+							else cavl.remove(k);
+						} else if (skip != null) {
+							if (p < 2) skip.containsKey(k);
+							else if (p < 3) skip.put(k, k);
+							else skip.remove(k);
+						} else {
+							if (p < 2) avl.has(k);
+							else if (p < 3) avl.insert(k, k);
+							else avl.remove(k);
+						}
+						ops++;
+					}
+					operations.addAndGet(ops);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			try { worker.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		}
+		return operations.get() / 2;
+	}
+
+	/*
+		###############
+		# Bulk Build
+		###############
+	*/
+
+	// fromSorted against inserting the same sorted keys one at a time, at 1K up to max keys.
+	// BinarySearchTree is only built in bulk, since sorted inserts make it a linked list.
+
+	public static void bulk(int max) {
+		System.out.println("\n---------- Bulk Build From Sorted ----------\n");
+		for (int n = 1000; n <= max; n *= 10) {
+			Integer[] keys = TreeBenchmark.keys("sorted", n, 0);
+
+			long start = System.nanoTime();
+			AVLTree<Integer, Integer> avl = new AVLTree<Integer, Integer>();
+			for (int i = 0; i < n; i++) avl.insert(keys[i], keys[i]);
+			long avlInsert = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			AVLTree.fromSorted(keys, keys);
+			long avlBulk = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			RedBlackTree<Integer, Integer> rb = new RedBlackTree<Integer, Integer>();
+			for (int i = 0; i < n; i++) rb.insert(keys[i], keys[i]);
+			long rbInsert = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			RedBlackTree.fromSorted(keys, keys);
+			long rbBulk = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			BinarySearchTree.fromSorted(keys, keys);
+			long bstBulk = System.nanoTime() - start;
+
+			System.out.println(String.format("Size %,11d | AVLTree insert %,7d ms, bulk %,6d ms | RedBlackTree insert %,7d ms, bulk %,6d ms | BinarySearchTree bulk %,6d ms",
+				n, avlInsert / 1000000, avlBulk / 1000000, rbInsert / 1000000, rbBulk / 1000000, bstBulk / 1000000));
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Heapify
+		###############
+	*/
+
+	// addAll against inserting one at a time, then the cost of removing (cancelling) a tenth of
+	// the keys from the middle of the heap.
+
+	public static void heapify(int max) {
+		System.out.println("\n---------- Heap Bulk Load ----------\n");
+		for (int n = 1000; n <= max; n *= 10) {
+			Integer[] keys = TreeBenchmark.shuffled(n, 23);
+
+			long start = System.nanoTime();
+			MinHeapTree<Integer, Integer> single = new MinHeapTree<Integer, Integer>();
+			for (int i = 0; i < n; i++) single.insert(keys[i], keys[i]);
+			long one = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			MinHeapTree<Integer, Integer> heap = new MinHeapTree<Integer, Integer>();
+			heap.addAll(keys, keys);
+			long all = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			new PriorityQueue<Integer>(Arrays.asList(keys));
+			long pq = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < n; i += 10) heap.remove(keys[i]);
+			long cancel = (System.nanoTime() - start) / ((n + 9) / 10);
+
+			System.out.println(String.format("Size %,11d | MinHeapTree insert %,d ms, addAll %,d ms, remove %,d ns/op | PriorityQueue %,d ms", n, one / 1000000, all / 1000000, cancel, pq / 1000000));
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Arity
+		###############
+	*/
+
+	// MinHeapTree at 2, 4, 8 and 16 children per node, at 1M, 5M, 10M and 50M keys up to max.
+	// Insert heavy inserts every key and extracts a quarter, extract heavy loads every key with addAll
+	// and extracts them all. 50M keys needs a heap of around 16 GB (-Xmx16g).
+
+	private static final int[] ARITIES = { 2, 4, 8, 16 };
+	private static final int[] ARITY_SIZES = { 1000000, 5000000, 10000000, 50000000 };
+
+	public static void arity(int max) {
+		System.out.println("\n---------- Heap Arity ----------\n");
+		for (int n : ARITY_SIZES) {
+			if (n > max) break;
+			Integer[] keys = TreeBenchmark.shuffled(n, 29);
+			for (int arity : ARITIES) {
+				MinHeapTree<Integer, Integer> heap = MinHeapTree.withArity(arity);
+				long start = System.nanoTime();
+				for (int i = 0; i < n; i++) heap.insert(keys[i], keys[i]);
+				for (int i = 0; i < (n / 4); i++) heap.extractMin();
+				long insertHeavy = (System.nanoTime() - start) / (n + (n / 4));
+
+				heap = MinHeapTree.withArity(arity);
+				start = System.nanoTime();
+				heap.addAll(keys, keys);
+				while (heap.notEmpty()) heap.extractMin();
+				long extractHeavy = (System.nanoTime() - start) / (2L * n);
+
+				System.out.println(String.format("Size %,11d | Arity %2d | Insert heavy %,6d ns/op | Extract heavy %,6d ns/op", n, arity, insertHeavy, extractHeavy));
+			}
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		################
+		# Primitive Heaps
+		################
+	*/
+
+	// Inserts n priorities with data and extracts them all, MinHeapTree against LongMinHeap, DoubleMinHeap
+	// and PriorityQueue. The first round only warms up the JIT.
+
+	public static void heaps(int max) {
+		for (int round = 0; round < 2; round++) {
+			System.out.println("\n---------- Boxed and Primitive Heaps" + ((round == 0) ? " (warm up)" : "") + " ----------\n");
+			for (int n = 1000; n <= max; n *= 10) {
+				Integer[] keys = TreeBenchmark.shuffled(n, n + 1);
+				long sink = 0, start = 0;
+
+				MinHeapTree<Integer, Integer> tree = new MinHeapTree<Integer, Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) tree.insert(keys[i], keys[i]);
+				while (tree.notEmpty()) sink += tree.extractMin();
+				long boxed = System.nanoTime() - start;
+
+				LongMinHeap<Integer> longs = new LongMinHeap<Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) longs.insert(keys[i], keys[i]);
+				while (longs.notEmpty()) sink += longs.extractMin();
+				long primitiveLong = System.nanoTime() - start;
+
+				DoubleMinHeap<Integer> doubles = new DoubleMinHeap<Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) doubles.insert(keys[i], keys[i]);
+				while (doubles.notEmpty()) sink += doubles.extractMin();
+				long primitiveDouble = System.nanoTime() - start;
+
+				PriorityQueue<Integer> queue = new PriorityQueue<Integer>();
+				start = System.nanoTime();
+				for (int i = 0; i < n; i++) queue.add(keys[i]);
+				while (!queue.isEmpty()) sink += queue.poll();
+				long pq = System.nanoTime() - start;
+
+				System.out.println(String.format("Size %,11d | MinHeapTree %,5d ns/op | LongMinHeap %,5d ns/op | DoubleMinHeap %,5d ns/op | PriorityQueue %,5d ns/op",
+					n, boxed / n, primitiveLong / n, primitiveDouble / n, pq / n));
+				if (sink == 42) System.out.print("");
+			}
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Parallel
+		###############
+	*/
+
+	// Sum, filter and count over parallelStream() of a RedBlackTree of max keys, each run in a
+	// ForkJoinPool of 1 to 32 threads. Best of three runs. The stream is SIZED, so count() alone would
+	// skip the walk, and the count runs behind a filter.
+
+	public static void parallel(int max) {
+		Integer[] keys = new Integer[max];
+		for (int i = 0; i < max; i++) keys[i] = i;
+		final RedBlackTree<Integer, Integer> tree = RedBlackTree.fromSorted(keys, keys);
+		keys = null;
+
+		System.out.println("\n---------- Parallel Streams ----------\n");
+		for (int threads = 1; threads <= 32; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long sum = Long.MAX_VALUE, filter = Long.MAX_VALUE, count = Long.MAX_VALUE, sink = 0;
+			try {
+				for (int run = 0; run < 3; run++) {
+					long start = System.nanoTime();
+					sink += pool.submit(() -> tree.parallelStream().mapToLong(e -> e.getValue()).sum()).get();
+					sum = Math.min(sum, System.nanoTime() - start);
+
+					start = System.nanoTime();
+					sink += pool.submit(() -> tree.parallelStream().filter(e -> (e.getKey() % 7) == 0).mapToLong(e -> e.getValue()).sum()).get();
+					filter = Math.min(filter, System.nanoTime() - start);
+
+					start = System.nanoTime();
+					sink += pool.submit(() -> tree.parallelStream().filter(e -> e.getValue() != null).count()).get();
+					count = Math.min(count, System.nanoTime() - start);
+				}
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			} finally {
+				pool.shutdown();
+			}
+			System.out.println(String.format("Threads %2d | sum %,6d ms | filter %,6d ms | count %,6d ms", threads, sum / 1000000, filter / 1000000, count / 1000000));
+			if (sink == 42) System.out.print("");
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Snapshot
+		###############
+	*/
+
+	// Rebuilding a RedBlackTree and an AVLTree of uniform keys by insert, against writing a snapshot of
+	// each and loading it back, at 1K up to max keys.
+
+	public static void snapshot(int max) {
+		System.out.println("\n---------- Snapshot Reload ----------\n");
+		try {
+			Path file = Files.createTempFile("tree", ".snapshot");
+			try {
+				for (int n = 1000; n <= max; n *= 10) {
+					Integer[] keys = TreeBenchmark.keys("uniform", n, n);
+
+					long start = System.nanoTime();
+					RedBlackTree<Integer, Integer> rb = new RedBlackTree<Integer, Integer>();
+					for (int i = 0; i < n; i++) rb.insert(keys[i], keys[i]);
+					long rbInsert = System.nanoTime() - start;
+
+					start = System.nanoTime();
+					rb.writeSnapshot(file, Serializer.INTEGER, Serializer.INTEGER);
+					long rbWrite = System.nanoTime() - start;
+					rb = null;
+
+					start = System.nanoTime();
+					RedBlackTree.loadSnapshot(file, Serializer.INTEGER, Serializer.INTEGER);
+					long rbLoad = System.nanoTime() - start;
+
+					start = System.nanoTime();
+					AVLTree<Integer, Integer> avl = new AVLTree<Integer, Integer>();
+					for (int i = 0; i < n; i++) avl.insert(keys[i], keys[i]);
+					long avlInsert = System.nanoTime() - start;
+
+					start = System.nanoTime();
+					avl.writeSnapshot(file, Serializer.INTEGER, Serializer.INTEGER);
+					long avlWrite = System.nanoTime() - start;
+					avl = null;
+
+					start = System.nanoTime();
+					AVLTree.loadSnapshot(file, Serializer.INTEGER, Serializer.INTEGER);
+					long avlLoad = System.nanoTime() - start;
+
+					System.out.println(String.format("Size %,11d | RedBlackTree insert %,7d ms, write %,6d ms, load %,6d ms | AVLTree insert %,7d ms, write %,6d ms, load %,6d ms | %,d bytes",
+						n, rbInsert / 1000000, rbWrite / 1000000, rbLoad / 1000000, avlInsert / 1000000, avlWrite / 1000000, avlLoad / 1000000, Files.size(file)));
+				}
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Disk
+		###############
+	*/
+
+	// Inserts max Long keys one at a time, then runs point lookups and 100 key range scans, on a
+	// DiskBPlusTree and then on RedBlackTree and AVLTree with the same keys, order and lookups. At a size
+	// that fits the heap the three are timed side by side. With a heap around a tenth of what the in-heap
+	// trees need, e.g. java -Xmx1g TreeBenchmark disk 100000000, those report that they don't fit.
+
+	private static final int DISK_LOOKUPS = 100000, DISK_RANGES = 10000, DISK_RANGE = 100;
+
+	public static void disk(int max) {
+		System.out.println("\n---------- Disk B+ Tree ----------\n");
+		Random random = new Random(max);
+		long[] lookups = new long[DISK_LOOKUPS];
+		for (int i = 0; i < lookups.length; i++) lookups[i] = random.nextInt(max);
+
+		try {
+			Path file = Files.createTempFile("tree", ".bptree");
+			try (DiskBPlusTree<Long, Long> disk = new DiskBPlusTree<Long, Long>(file, Serializer.LONG, Serializer.LONG, 4096, 4096)) {
+				long start = System.nanoTime();
+				for (long i = 0; i < max; i++) disk.insert(i, i);
+				disk.flush();
+				long build = System.nanoTime() - start, sink = 0;
+
+				start = System.nanoTime();
+				for (long key : lookups) sink += disk.get(key);
+				long point = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < DISK_RANGES; i++)
+					for (Map.Entry<Long, Long> e : disk.range(lookups[i], true, lookups[i] + DISK_RANGE, false)) sink += e.getValue();
+				long range = System.nanoTime() - start;
+
+				System.out.println(String.format("%-16s %,11d keys | build %,8d ms | point %,7d ns | range %,7d ns | %,d pages of 4 KB, %,d KB file%s",
+					"DiskBPlusTree", max, build / 1000000, point / DISK_LOOKUPS, range / DISK_RANGES, disk.pages(), Files.size(file) / 1024, (sink == 42) ? " " : ""));
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		for (String subject : new String[] { "RedBlackTree", "AVLTree" }) {
+			try {
+				RedBlackTree<Long, Long> rb = subject.equals("RedBlackTree") ? new RedBlackTree<Long, Long>() : null;
+				AVLTree<Long, Long> avl = subject.equals("AVLTree") ? new AVLTree<Long, Long>() : null;
+				long start = System.nanoTime();
+				for (long i = 0; i < max; i++) {
+					if (rb != null) rb.insert(i, i);
+					else avl.insert(i, i);
+				}
+				long build = System.nanoTime() - start, sink = 0;
+
+				start = System.nanoTime();
+				for (long key : lookups) sink += (rb != null) ? rb.get(key) : avl.get(key);
+				long point = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < DISK_RANGES; i++) {
+					Iterable<Map.Entry<Long, Long>> entries = (rb != null) ? rb.range(lookups[i], true, lookups[i] + DISK_RANGE, false) : avl.range(lookups[i], true, lookups[i] + DISK_RANGE, false);
+					for (Map.Entry<Long, Long> e : entries) sink += e.getValue();
+				}
+				long range = System.nanoTime() - start;
+
+				System.out.println(String.format("%-16s %,11d keys | build %,8d ms | point %,7d ns | range %,7d ns%s",
+					subject, max, build / 1000000, point / DISK_LOOKUPS, range / DISK_RANGES, (sink == 42) ? " " : ""));
+			} catch (OutOfMemoryError e) {
+				System.out.println(String.format("%-16s %,11d keys | does not fit in the heap", subject, max));
+			}
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Write Ahead Log
+		###############
+	*/
+
+	// Durable inserts through a WriteAheadLog with fsync batches of 1, 16 and 256 records, by 1, 16 and
+	// 256 writer threads sharing max inserts. A batch only fills when enough writers wait on it together,
+	// otherwise the flush interval of 2 ms ends it.
+
+	public static void wal(int max) {
+		System.out.println("\n---------- Write Ahead Log ----------\n");
+		for (int batch : new int[] { 1, 16, 256 }) {
+			for (int threads : new int[] { 1, 16, 256 }) {
+				try {
+					Path dir = Files.createTempDirectory("wal");
+					Path file = dir.resolve("tree.log");
+					try (WriteAheadLog<Integer, Integer> log = new WriteAheadLog<Integer, Integer>(file, Serializer.INTEGER, Serializer.INTEGER, batch, 2)) {
+						final int each = Math.max(1, max / threads);
+						Thread[] writers = new Thread[threads];
+						long start = System.nanoTime();
+						for (int t = 0; t < threads; t++) {
+							final int offset = t * each;
+							writers[t] = new Thread(() -> {
+								for (int i = 0; i < each; i++) log.insert(offset + i, i);
+							});
+							writers[t].start();
+						}
+						for (Thread writer : writers) writer.join();
+						long took = System.nanoTime() - start;
+
+						long ops = (long) each * threads;
+						System.out.println(String.format("Batch %3d | Threads %3d | %,10d inserts/s | %,7d fsyncs, %,6.1f records each",
+							batch, threads, (ops * 1000000000L) / took, log.syncs(), (double) ops / Math.max(1, log.syncs())));
+					} finally {
+						Files.deleteIfExists(file);
+						Files.deleteIfExists(dir);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Persistent
+		###############
+	*/
+
+	// One writer inserting and removing over max keys while one reporting thread sums the values of a
+	// consistent view, for 2 seconds. A RedBlackTree reporter copies the tree holding the monitor the
+	// writer also takes. A PersistentRedBlackTree reporter takes snapshot() and never holds up the writer.
+
+	public static void persistent(int max) {
+		final Integer[] keys = TreeBenchmark.shuffled(max, 29);
+
+		System.out.println("\n---------- Persistent Snapshots ----------\n");
+		for (String subject : new String[] { "RedBlackTree", "PersistentRedBlackTree" }) {
+			final RedBlackTree<Integer, Integer> rb = subject.equals("RedBlackTree") ? new RedBlackTree<Integer, Integer>() : null;
+			final PersistentRedBlackTree<Integer, Integer> prb = subject.equals("PersistentRedBlackTree") ? new PersistentRedBlackTree<Integer, Integer>() : null;
+			for (int i = 0; i < max; i += 2) {
+				if (rb != null) rb.insert(keys[i], keys[i]);
+				else prb.insert(keys[i], keys[i]);
+			}
+
+			final AtomicLong writes = new AtomicLong(), reports = new AtomicLong(), viewTime = new AtomicLong();
+			final long end = System.nanoTime() + 2000000000L;
+
+			Thread writer = new Thread(() -> {
+				Random random = new Random(31);
+				long ops = 0;
+				while ((ops & 1023) != 0 || System.nanoTime() < end) {
+					Integer k = keys[random.nextInt(keys.length)];
+					boolean insert = random.nextBoolean();
+					if (rb != null) {
+						synchronized (rb) {
+							if (insert) rb.insert(k, k);
+							else rb.remove(k);
+						}
+					} else if (insert) prb.insert(k, k);
+					else prb.remove(k);
+					ops++;
+				}
+				writes.addAndGet(ops);
+			});
+			Thread reporter = new Thread(() -> {
+				long sink = 0;
+				while (System.nanoTime() < end) {
+					long start = System.nanoTime();
+					Iterable<Map.Entry<Integer, Integer>> view;
+					if (rb != null) {
+						synchronized (rb) {
+							Integer[] k = new Integer[rb.size()], d = new Integer[k.length];
+							int n = 0;
+							for (Map.Entry<Integer, Integer> e : rb) {
+								k[n] = e.getKey();
+								d[n++] = e.getValue();
+							}
+							view = RedBlackTree.fromSorted(k, d);
+						}
+					} else view = prb.snapshot();
+					viewTime.addAndGet(System.nanoTime() - start);
+
+					for (Map.Entry<Integer, Integer> e : view) sink += e.getValue();
+					reports.incrementAndGet();
+				}
+				if (sink == 42) System.out.print("");
+			});
+
+			writer.start();
+			reporter.start();
+			try {
+				writer.join();
+				reporter.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			System.out.println(String.format("%-22s | writes %,10d ops/s | reports %,5d | view %,12d ns each",
+				subject, writes.get() / 2, reports.get(), viewTime.get() / Math.max(1, reports.get())));
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		###############
+		# Batch Insert
+		###############
+	*/
+
+	// Sorted batches into a tree of max even keys, per key insert against insertAll. Spread batches are
+	// odd keys from across the whole range: ten of 10K, one of max / 4 and one of max. Appended batches
+	// are ten of 10K running on past the largest key. Best of five runs, each into a fresh tree.
+	// Ten spread batches of 10K take the same per key path as insert, so they are expected to tie.
+	// Scapegoat trees then take max / 10 appended batches of 10 keys, checking their height after each.
+
+	public static void batch(int max) {
+		Integer[] keys = new Integer[max];
+		for (int i = 0; i < max; i++) keys[i] = 2 * i;
+
+		System.out.println("\n---------- Sorted Batch Insert ----------\n");
+		for (String subject : new String[] { "AVLTree", "RedBlackTree" }) {
+			for (int shape = 0; shape < 4; shape++) {
+				int size = (shape == 1) ? (max / 4) : ((shape == 2) ? max : 10000), batches = ((shape == 1) || (shape == 2)) ? 1 : 10;
+				boolean appended = shape == 3;
+				long single = Long.MAX_VALUE, all = Long.MAX_VALUE;
+
+				for (int run = 0; run < 10; run++) {
+					boolean bulk = (run & 1) == 1;
+					AVLTree<Integer, Integer> avl = subject.equals("AVLTree") ? AVLTree.fromSorted(keys, keys) : null;
+					RedBlackTree<Integer, Integer> rb = subject.equals("RedBlackTree") ? RedBlackTree.fromSorted(keys, keys) : null;
+					Random random = new Random(run / 2);
+
+					long took = 0;
+					for (int b = 0; b < batches; b++) {
+						Integer[] batch = new Integer[size];
+						for (int i = 0; i < size; i++) batch[i] = appended ? (2 * (max + (b * size) + i)) : ((2 * random.nextInt(max)) + 1);
+						Arrays.sort(batch);
+
+						long start = System.nanoTime();
+						if (bulk) {
+							if (avl != null) avl.insertAll(batch, batch);
+							else rb.insertAll(batch, batch);
+						} else {
+							for (int i = 0; i < size; i++) {
+								if (avl != null) avl.insert(batch[i], batch[i]);
+								else rb.insert(batch[i], batch[i]);
+							}
+						}
+						took += System.nanoTime() - start;
+					}
+					if (bulk) all = Math.min(all, took);
+					else single = Math.min(single, took);
+				}
+
+				long n = (long) size * batches;
+				System.out.println(String.format("%-12s | %-8s %2d x %,11d | insert %,11d keys/s | insertAll %,11d keys/s | %4.1fx",
+					subject, appended ? "appended" : "spread", batches, size, (n * 1000000000L) / single, (n * 1000000000L) / all, (double) single / all));
+			}
+		}
+
+		// Monotonic IDs arriving in micro batches, appended to a scapegoat tree. The height is checked
+		// against log base 1/alpha of n after every batch, and a tree past it stops the run.
+		for (double alpha : new double[] { 0.55, 0.7, 0.9 }) {
+			BinarySearchTree<Integer, Integer> tree = BinarySearchTree.withScapegoat(alpha);
+			int batches = Math.max(1, max / 10), highest = 0;
+			long took = 0;
+			for (int b = 0; b < batches; b++) {
+				Integer[] batch = new Integer[10];
+				for (int i = 0; i < batch.length; i++) batch[i] = (b * batch.length) + i;
+				long start = System.nanoTime();
+				tree.insertAll(batch, null);
+				took += System.nanoTime() - start;
+
+				int depth = tree.height() - 1, bound = (int) Math.floor(Math.log(tree.size()) / Math.log(1 / alpha));
+				if (depth > bound) throw new IllegalStateException("scapegoat tree at alpha " + alpha + " is " + depth + " deep after " + tree.size() + " keys, bound " + bound);
+				highest = Math.max(highest, depth);
+			}
+			System.out.println(String.format("Scapegoat %.2f | appended %,6d x 10 | insertAll %,11d keys/s | depth %3d, bound %3d",
+				alpha, batches, ((long) tree.size() * 1000000000L) / took, highest, (int) Math.floor(Math.log(tree.size()) / Math.log(1 / alpha))));
+		}
+		System.out.println("\n-------------------------------------\n");
+	}
+
+	/*
+		##########
+		# Keys
+		##########
+	*/
+
+	private static Integer[] keys(String distribution, int n, long seed) {
+		if (distribution.equals("sorted") || distribution.equals("reverse")) {
+			Integer[] keys = new Integer[n];
+			for (int i = 0; i < n; i++) keys[i] = distribution.equals("sorted") ? i : (n - 1 - i);
+			return keys;
+		}
+		if (distribution.equals("zipfian")) return TreeBenchmark.zipfian(n, 0.99, seed);
+		return TreeBenchmark.shuffled(n, seed);
+	}
+
+	// Zipfian draws over [0, n) as described by Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+	// The ranks are scattered over the key space so the hot keys are not all neighbours.
+
+	private static Integer[] zipfian(int n, double theta, long seed) {
+		double zetan = 0, zeta2 = 1 + Math.pow(0.5, theta);
+		for (int i = 1; i <= n; i++) zetan += 1 / Math.pow(i, theta);
+		double alpha = 1 / (1 - theta),
+					 eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - (zeta2 / zetan));
+
+		Random random = new Random(seed);
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			double u = random.nextDouble(), uz = u * zetan;
+			long rank = (uz < 1) ? 0 : ((uz < zeta2) ? 1 : (long) (n * Math.pow((eta * u) - eta + 1, alpha)));
+			keys[i] = (int) (((Math.min(rank, n - 1)) * 2654435761L) % n);
+		}
+		return keys;
+	}
+
+	private static Integer[] shuffled(int n, long seed) {
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++) keys[i] = i;
+		Random random = new Random(seed);
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			Integer t = keys[i];
+			keys[i] = keys[j];
+			keys[j] = t;
+		}
+		return keys;
+	}
+}
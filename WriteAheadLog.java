@@ -0,0 +1,370 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Makes a RedBlackTree survive a crash. Every insert and remove is applied to the tree and appended to a
+// log file, and returns once the log has been forced to disk. Writers that arrive together share one
+// fsync: a flusher thread forces the log once batchSize records are waiting, or once the oldest has
+// waited flushInterval milliseconds. Opening replays the last checkpoint and then the log into a fresh
+// tree, and checkpoint() snapshots the tree and truncates the log.
+//
+// A write reaches the tree before its record reaches the disk, so readers can see a write that a crash
+// would still lose. If forcing the log ever fails the log is poisoned: the waiting writers and every
+// later write or checkpoint throw with that failure, since the tree may now hold writes the log doesn't.
+
+public class WriteAheadLog<V extends Comparable<V>, D> implements Closeable {
+
+	// A record is its payload length, the CRC32 of the payload, then the payload: an operation byte
+	// followed by the key and data of an insert, or the key count and keys of a remove. Replay stops
+	// at the first record that is cut short or fails its CRC, which is where a crash tore the tail.
+
+	private static final int INSERT = 1, REMOVE = 2, RECORD_HEADER = 8;
+
+	private final Path log, snapshot;
+	private final FileChannel channel;
+	private final Serializer<V> keys;
+	private final Serializer<D> data;
+	private final int batchSize;
+	private final long flushInterval;
+	private final RedBlackTree<V, D> tree;
+
+	private final Buffer record = new Buffer();
+	private final DataOutputStream recordOut = new DataOutputStream(this.record);
+	private final CRC32 crc = new CRC32();
+	private Buffer pending = new Buffer(), writing = new Buffer();
+
+	// appended counts records handed to the log, durable those forced to disk. Both only grow.
+	private long appended = 0, durable = 0, firstWaiting = 0, syncs = 0;
+	private boolean closed = false, checkpointing = false;
+	private IOException failure = null;
+	private final Thread flusher;
+
+	public WriteAheadLog(Path log, Serializer<V> keys, Serializer<D> data) throws IOException { this(log, keys, data, 64, 2); }
+
+	public WriteAheadLog(Path log, Serializer<V> keys, Serializer<D> data, int batchSize, long flushInterval) throws IOException {
+		if (batchSize < 1) throw new IllegalArgumentException("batch size must be at least 1");
+		if (flushInterval < 0) throw new IllegalArgumentException("flush interval can't be negative");
+
+		this.log = log;
+		this.snapshot = log.resolveSibling(log.getFileName() + ".snapshot");
+		this.keys = keys;
+		this.data = data;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.tree = Files.exists(this.snapshot) ? RedBlackTree.loadSnapshot(this.snapshot, keys, data) : new RedBlackTree<V, D>();
+		this.channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+		try {
+			this.channel.truncate(this.replay());
+			this.channel.position(this.channel.size());
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+
+		this.flusher = new Thread(this::flushLoop, "WriteAheadLog " + log.getFileName());
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/*
+		##########
+		# Tree
+		##########
+	*/
+
+	// Reads go straight to the tree and see writes still waiting on their fsync. Writes made on tree()
+	// directly are not logged.
+
+	public RedBlackTree<V, D> tree() { return this.tree; }
+
+	public boolean has(V... values) { return this.tree.has(values); }
+
+	public D get(V value) { return this.tree.get(value); }
+
+	public int size() { return this.tree.size(); }
+
+	// Number of times the flusher has forced the log, to see how well writers are being batched.
+
+	public synchronized long syncs() { return this.syncs; }
+
+	/*
+		##########
+		# Insert
+		##########
+	*/
+
+	public boolean insert(V value, D data) {
+		if ((data != null) && (this.data == null)) throw new IllegalArgumentException("log has no data serializer");
+		boolean _return;
+		long sequence;
+		synchronized (this) {
+			this.enter();
+			try {
+				this.recordOut.writeByte(INSERT);
+				this.keys.write(this.recordOut, value);
+				this.recordOut.writeByte((data == null) ? 0 : 1);
+				if (data != null) this.data.write(this.recordOut, data);
+				_return = this.tree.insert(value, data);
+				sequence = this.append();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				this.record.reset();
+			}
+		}
+		this.await(sequence);
+		return _return;
+	}
+
+	/*
+		##########
+		# Remove
+		##########
+	*/
+
+	public boolean remove(V... values) {
+		boolean _return;
+		long sequence;
+		synchronized (this) {
+			this.enter();
+			try {
+				this.recordOut.writeByte(REMOVE);
+				this.recordOut.writeInt(values.length);
+				for (int i = 0; i < values.length; i++) this.keys.write(this.recordOut, values[i]);
+				_return = this.tree.remove(values);
+				sequence = this.append();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				this.record.reset();
+			}
+		}
+		this.await(sequence);
+		return _return;
+	}
+
+	/*
+		###############
+		# Group Commit
+		###############
+	*/
+
+	// Frames the record just encoded into the pending batch. Records are encoded before the tree is touched,
+	// so a serializer that throws leaves both the tree and the log as they were, and the caller resets the
+	// record either way.
+
+	private long append() {
+		this.crc.reset();
+		this.crc.update(this.record.buffer(), 0, this.record.size());
+		this.pending.writeInt(this.record.size());
+		this.pending.writeInt((int) this.crc.getValue());
+		this.pending.write(this.record.buffer(), 0, this.record.size());
+
+		boolean first = this.appended == this.durable;
+		if (first) this.firstWaiting = System.nanoTime();
+		this.appended++;
+
+		// The first record of a batch starts the flusher's interval, a full batch ends it
+		if (first || ((this.appended - this.durable) >= this.batchSize)) this.notifyAll();
+		return this.appended;
+	}
+
+	private synchronized void await(long sequence) {
+		boolean interrupted = false;
+		while ((this.durable < sequence) && (this.failure == null)) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (this.durable < sequence) throw new UncheckedIOException("log could not be written", this.failure);
+	}
+
+	// Waits for a full batch, the interval, a checkpoint or close, swaps the batch out, and writes and
+	// forces it without holding the lock, so writers keep filling the next batch during the fsync.
+
+	private void flushLoop() {
+		while (true) {
+			long upTo;
+			Buffer batch;
+			synchronized (this) {
+				while (!this.closed && ((this.appended == this.durable) || (!this.checkpointing && ((this.appended - this.durable) < this.batchSize) && (this.waited() < this.flushInterval)))) {
+					try {
+						if (this.appended == this.durable) this.wait();
+						else this.wait(Math.max(1, this.flushInterval - this.waited()));
+					} catch (InterruptedException e) {}
+				}
+				if (this.appended == this.durable) return;
+
+				upTo = this.appended;
+				batch = this.pending;
+				this.pending = this.writing;
+				this.writing = batch;
+			}
+
+			IOException failed = null;
+			try {
+				ByteBuffer out = ByteBuffer.wrap(batch.buffer(), 0, batch.size());
+				while (out.hasRemaining()) this.channel.write(out);
+				this.channel.force(false);
+			} catch (IOException e) {
+				failed = e;
+			}
+			batch.reset();
+
+			synchronized (this) {
+				if (failed != null) {
+					this.failure = failed;
+					this.closed = true;
+				} else {
+					this.durable = upTo;
+					this.syncs++;
+					if (this.appended > this.durable) this.firstWaiting = System.nanoTime();
+				}
+				this.notifyAll();
+				if (failed != null) return;
+			}
+		}
+	}
+
+	private long waited() { return (System.nanoTime() - this.firstWaiting) / 1000000; }
+
+	/*
+		##############
+		# Checkpoint
+		##############
+	*/
+
+	// Snapshots the tree next to the log and empties the log. New writers wait until it is done, and the
+	// log is only cut once the flusher has nothing in flight and writeSnapshot has forced the snapshot and
+	// its directory, so the log is never the only copy lost. A crash between the two steps only replays
+	// records the snapshot already holds, which changes nothing.
+
+	public synchronized void checkpoint() throws IOException {
+		if (this.failure != null) throw this.failure;
+		this.enter();
+		this.checkpointing = true;
+		try {
+			this.notifyAll();
+			while ((this.durable < this.appended) && (this.failure == null)) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("checkpoint interrupted", e);
+				}
+			}
+			if (this.failure != null) throw this.failure;
+
+			this.tree.writeSnapshot(this.snapshot, this.keys, this.data);
+			this.channel.truncate(0);
+			this.channel.position(0);
+			this.channel.force(true);
+		} finally {
+			this.checkpointing = false;
+			this.notifyAll();
+		}
+	}
+
+	/* Replay */
+
+	// Applies every whole record in the log to the tree and returns where the last one ends.
+
+	private long replay() throws IOException {
+		long size = this.channel.size();
+		if (size == 0) return 0;
+		if (size > Integer.MAX_VALUE) throw new IOException("log is too large to replay, checkpoint more often: " + this.log);
+
+		ByteBuffer in = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		CRC32 crc = new CRC32();
+		while (in.remaining() >= RECORD_HEADER) {
+			int start = in.position(), length = in.getInt(), sum = in.getInt();
+			if ((length <= 0) || (length > in.remaining())) return start;
+
+			ByteBuffer payload = in.slice(in.position(), length);
+			crc.reset();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != sum) return start;
+
+			int op = payload.get();
+			if (op == INSERT) {
+				V value = this.keys.read(payload);
+				this.tree.insert(value, (payload.get() == 1) ? this.data.read(payload) : null);
+			} else if (op == REMOVE) {
+				for (int i = payload.getInt(); i > 0; i--) this.removeOne(this.keys.read(payload));
+			} else return start;
+			in.position(start + RECORD_HEADER + length);
+		}
+		return in.position();
+	}
+
+	// Passing one key to the varargs remove builds a V[], which the compiler can't check, and the warning
+	// stays scoped to this call instead of the whole replay.
+
+	@SuppressWarnings("unchecked")
+	private void removeOne(V value) { this.tree.remove(value); }
+
+	/*
+		##########
+		# Close
+		##########
+	*/
+
+	// Forces whatever is still waiting and stops the flusher.
+
+	public void close() throws IOException {
+		synchronized (this) {
+			if (this.closed && (this.failure == null) && !this.channel.isOpen()) return;
+			this.closed = true;
+			this.notifyAll();
+		}
+		try {
+			this.flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.channel.close();
+		if (this.failure != null) throw this.failure;
+	}
+
+	// Called holding the lock before a write. Waits out a checkpoint, and refuses once the log is closed or
+	// poisoned.
+
+	private void enter() {
+		boolean interrupted = false;
+		while (this.checkpointing && !this.closed) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (this.failure != null) throw new IllegalStateException("log is poisoned, an earlier write could not be forced", this.failure);
+		if (this.closed) throw new IllegalStateException("log is closed");
+	}
+
+	/* Buffer */
+
+	private static class Buffer extends ByteArrayOutputStream {
+		private byte[] buffer() { return this.buf; }
+
+		private void writeInt(int v) {
+			this.write(v >>> 24);
+			this.write(v >>> 16);
+			this.write(v >>> 8);
+			this.write(v);
+		}
+	}
+}